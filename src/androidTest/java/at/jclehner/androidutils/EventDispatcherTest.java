@@ -0,0 +1,180 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.androidutils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import android.test.AndroidTestCase;
+
+public class EventDispatcherTest extends AndroidTestCase
+{
+	private static final EventDispatcher.Handler<Receiver, String> ON_EVENT =
+			new EventDispatcher.Handler<Receiver, String>() {
+
+		@Override
+		public void dispatch(Receiver receiver, String arg) {
+			receiver.onEvent(arg);
+		}
+	};
+
+	private final List<String> mLog = new ArrayList<String>();
+
+	public void testPost()
+	{
+		final EventDispatcher<Receiver> dispatcher = new EventDispatcher<Receiver>();
+		final Receiver a = new Receiver("a");
+		final Receiver b = new Receiver("b");
+
+		dispatcher.register(a);
+		dispatcher.register(b);
+		// registering twice has no effect
+		dispatcher.register(a);
+
+		dispatcher.post(ON_EVENT, "foo");
+		assertLog("a:foo", "b:foo");
+
+		dispatcher.unregister(a);
+		dispatcher.post(ON_EVENT, "bar");
+		assertLog("b:bar");
+
+		dispatcher.unregister(b);
+		assertTrue(dispatcher.isEmpty());
+	}
+
+	public void testPostByName()
+	{
+		final EventDispatcher<Object> dispatcher = new EventDispatcher<Object>();
+		final Receiver a = new Receiver("a");
+		final Object b = new Object();
+
+		dispatcher.register(a);
+		dispatcher.register(b);
+
+		// the second time, the methods are looked up in the cache
+		for(int i = 0; i != 2; ++i)
+		{
+			dispatcher.post("onEvent", "foo");
+			assertLog("a:foo");
+
+			// the method doesn't exist in either class
+			dispatcher.post("onOtherEvent", "foo");
+			assertLog();
+		}
+	}
+
+	public void testCollectedReceiversArePruned()
+	{
+		final EventDispatcher<Receiver> dispatcher = new EventDispatcher<Receiver>();
+		final Receiver a = new Receiver("a");
+		final Receiver b = new Receiver("b");
+
+		dispatcher.register(a);
+		dispatcher.register(b);
+
+		// don't rely on the garbage collector
+		dispatcher.clearReference(b);
+
+		dispatcher.post(ON_EVENT, "foo");
+		assertLog("a:foo");
+
+		dispatcher.post("onEvent", "bar");
+		assertLog("a:bar");
+
+		assertFalse(dispatcher.isEmpty());
+		dispatcher.unregister(a);
+		assertTrue(dispatcher.isEmpty());
+	}
+
+	public void testRegisterDuringDispatch()
+	{
+		final EventDispatcher<Receiver> dispatcher = new EventDispatcher<Receiver>();
+		final Receiver b = new Receiver("b");
+		final Receiver a = new Receiver("a") {
+
+			@Override
+			public void onEvent(String arg)
+			{
+				super.onEvent(arg);
+				dispatcher.unregister(this);
+				dispatcher.register(b);
+			}
+		};
+
+		dispatcher.register(a);
+
+		// receivers are copied on write, so changes don't affect an ongoing dispatch
+		dispatcher.post(ON_EVENT, "foo");
+		assertLog("a:foo");
+
+		dispatcher.post(ON_EVENT, "bar");
+		assertLog("b:bar");
+	}
+
+	public void testUnregisterDuringDispatch()
+	{
+		final EventDispatcher<Receiver> dispatcher = new EventDispatcher<Receiver>();
+		final Receiver b = new Receiver("b");
+		final Receiver c = new Receiver("c");
+		final Receiver a = new Receiver("a") {
+
+			@Override
+			public void onEvent(String arg)
+			{
+				super.onEvent(arg);
+				dispatcher.unregister(b);
+			}
+		};
+
+		dispatcher.register(a);
+		dispatcher.register(b);
+		dispatcher.register(c);
+
+		dispatcher.post(ON_EVENT, "foo");
+		assertLog("a:foo", "b:foo", "c:foo");
+
+		dispatcher.post(ON_EVENT, "bar");
+		assertLog("a:bar", "c:bar");
+	}
+
+	private void assertLog(String... expected)
+	{
+		final List<String> log = new ArrayList<String>(mLog);
+		mLog.clear();
+
+		assertEquals(Arrays.asList(expected), log);
+	}
+
+	public class Receiver
+	{
+		private final String mName;
+
+		Receiver(String name) {
+			mName = name;
+		}
+
+		public void onEvent(String arg) {
+			mLog.add(mName + ":" + arg);
+		}
+	}
+}
@@ -0,0 +1,186 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import android.test.AndroidTestCase;
+import at.jclehner.rxdroid.Fraction;
+
+public class CacheImageTest extends AndroidTestCase
+{
+	private static final Class<?>[] CLASSES = { Drug.class, DoseEvent.class, Patient.class };
+	private static final int WINDOW_START = 12345;
+
+	private File mFile;
+	private File mDbFile;
+	private CacheImage mImage;
+	private TimeZone mDefaultTimeZone;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+
+		mFile = new File(getContext().getCacheDir(), "test.img");
+		mDbFile = new File(getContext().getCacheDir(), "test.db");
+		writeDbFile("foo");
+
+		mImage = new CacheImage(mFile, mDbFile);
+		mDefaultTimeZone = TimeZone.getDefault();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		mFile.delete();
+		mDbFile.delete();
+		TimeZone.setDefault(mDefaultTimeZone);
+
+		super.tearDown();
+	}
+
+	public void testRoundTrip()
+	{
+		final List<List<? extends Entry>> expected = createEntries();
+		mImage.write(CLASSES, expected, WINDOW_START);
+
+		final CacheImage.Contents contents = mImage.read(CLASSES);
+		assertNotNull(contents);
+		assertEquals(WINDOW_START, contents.doseEventWindowStart);
+
+		final List<List<? extends Entry>> actual = contents.entries;
+		assertEquals(expected, actual);
+
+		final Drug drug = (Drug) actual.get(0).get(0);
+		assertEquals(1, drug.getId());
+		assertEquals(Patient.DEFAULT_PATIENT_ID, drug.getPatientId());
+
+		final DoseEvent event = (DoseEvent) actual.get(1).get(0);
+		assertEquals(2, event.getId());
+		assertEquals(drug.getId(), event.getDrugId());
+		assertEquals(((DoseEvent) expected.get(1).get(0)).getEpochDay(), event.getEpochDay());
+	}
+
+	public void testPendingEntriesAreNotWritten()
+	{
+		final List<List<? extends Entry>> entries = createEntries();
+		entries.get(1).get(0).id = -1;
+
+		mImage.write(CLASSES, entries, WINDOW_START);
+		assertFalse(mFile.exists());
+	}
+
+	public void testStaleImageIsIgnored() throws Exception
+	{
+		mImage.write(CLASSES, createEntries(), WINDOW_START);
+		writeDbFile("foobar");
+
+		assertNull(mImage.read(CLASSES));
+		assertFalse(mFile.exists());
+	}
+
+	public void testImageFromOtherTimezoneIsIgnored()
+	{
+		TimeZone.setDefault(TimeZone.getTimeZone("Europe/Vienna"));
+		mImage.write(CLASSES, createEntries(), WINDOW_START);
+		assertNotNull(mImage.read(CLASSES));
+
+		mImage.write(CLASSES, createEntries(), WINDOW_START);
+		TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+
+		assertNull(mImage.read(CLASSES));
+		assertFalse(mFile.exists());
+	}
+
+	public void testImageFromZoneWithSameOffsetIsIgnored()
+	{
+		TimeZone.setDefault(TimeZone.getTimeZone("Europe/Vienna"));
+		mImage.write(CLASSES, createEntries(), WINDOW_START);
+		TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"));
+
+		// the offsets are the same, but the DST rules might not be
+		assertNull(mImage.read(CLASSES));
+	}
+
+	public void testCorruptImageIsIgnored() throws Exception
+	{
+		mImage.write(CLASSES, createEntries(), WINDOW_START);
+
+		final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+		file.seek(file.length() - 1);
+		final int b = file.read();
+		file.seek(file.length() - 1);
+		file.write(b ^ 0xff);
+		file.close();
+
+		assertNull(mImage.read(CLASSES));
+	}
+
+	public void testInvalidate()
+	{
+		mImage.write(CLASSES, createEntries(), WINDOW_START);
+		assertTrue(mFile.exists());
+
+		mImage.invalidate();
+		assertFalse(mFile.exists());
+		assertNull(mImage.read(CLASSES));
+	}
+
+	private void writeDbFile(String contents) throws Exception
+	{
+		final RandomAccessFile file = new RandomAccessFile(mDbFile, "rw");
+		file.setLength(0);
+		file.write(contents.getBytes("UTF-8"));
+		file.close();
+	}
+
+	private static List<List<? extends Entry>> createEntries()
+	{
+		final Patient patient = new Patient();
+
+		final Drug drug = new Drug();
+		drug.id = 1;
+		drug.setName("Foobar");
+		drug.setPatient(patient);
+		drug.setRefillSize(30);
+		drug.setCurrentSupply(new Fraction(21, 1, 2));
+		drug.setDose(Drug.TIME_MORNING, new Fraction(1, 2));
+		drug.setComment("Täglich");
+
+		final DoseEvent event = new DoseEvent(drug, new Date(86400000L), Drug.TIME_MORNING, new Fraction(1, 2));
+		event.id = 2;
+
+		final List<List<? extends Entry>> entries = new ArrayList<List<? extends Entry>>();
+		entries.add(new ArrayList<Drug>(Arrays.asList(drug)));
+		entries.add(new ArrayList<DoseEvent>(Arrays.asList(event)));
+		entries.add(new ArrayList<Patient>(Arrays.asList(patient)));
+
+		return entries;
+	}
+}
@@ -0,0 +1,353 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.test.AndroidTestCase;
+import at.jclehner.rxdroid.Fraction;
+import at.jclehner.rxdroid.util.EpochDay;
+
+/**
+ * Tests {@link Database}, using an {@link InMemoryStorageEngine}.
+ */
+public class DatabaseTest extends AndroidTestCase
+{
+	private InMemoryStorageEngine mEngine;
+	private int mToday;
+	private Drug mDrug;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+
+		mEngine = new InMemoryStorageEngine();
+		Database.setStorageEngine(mEngine);
+		Database.reload(getContext());
+
+		mToday = EpochDay.today();
+
+		mDrug = new Drug();
+		mDrug.setName("Foobar");
+		Database.create(mDrug);
+		// the events' drug ID must be valid
+		Database.flush();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		Database.flush();
+		Database.setStorageEngine(null);
+		Database.reload(getContext());
+
+		super.tearDown();
+	}
+
+	public void testDeleteDoseEventsBefore()
+	{
+		// not cached, see DoseEventHistory
+		createDoseEvent(mToday - 100);
+		final DoseEvent oldEvent = createDoseEvent(mToday - 10);
+		final DoseEvent event = createDoseEvent(mToday - 5);
+
+		// loads the history page
+		assertEquals(1, findDoseEvents(mToday - 100).size());
+		assertEquals(1, findDoseEvents(mToday - 10).size());
+		assertEquals(3, Database.countDoseEvents(mDrug.id, null, null));
+
+		final Database.PruneResult result = Database.deleteDoseEventsBefore(EpochDay.toDate(mToday - 7));
+		assertEquals(2, result.getCount());
+		assertEquals(EpochDay.toDate(mToday - 100), result.getOldestDate());
+		assertEquals(EpochDay.toDate(mToday - 10), result.getNewestDate());
+
+		// cache
+		assertEquals(toIds(event), toIds(Database.getAll(DoseEvent.class)));
+		assertNull(Database.find(DoseEvent.class, oldEvent.id));
+
+		// index
+		assertTrue(findDoseEvents(mToday - 10).isEmpty());
+		assertEquals(toIds(event), toIds(Database.getDoseEventIndex().find(mDrug.id, null, null)));
+
+		// history
+		assertTrue(findDoseEvents(mToday - 100).isEmpty());
+		assertEquals(1, Database.countDoseEvents(mDrug.id, null, null));
+	}
+
+	public void testDeleteDoseEventsBeforeWithoutMatches()
+	{
+		createDoseEvent(mToday);
+
+		final Database.PruneResult result = Database.deleteDoseEventsBefore(EpochDay.toDate(mToday - 7));
+		assertEquals(0, result.getCount());
+		assertNull(result.getNewestDate());
+		assertEquals(1, Database.countAll(DoseEvent.class));
+	}
+
+	public void testDeleteDoseEventsBeforeKeepsIndexConsistent() throws Exception
+	{
+		final DoseEvent event = createDoseEvent(mToday);
+
+		final Database.Batch batch = Database.batch();
+		for(int i = 0; i != 500; ++i)
+			batch.create(newDoseEvent(mToday - 8 - i % 20));
+
+		batch.commit();
+
+		final DoseEventIndex index = Database.getDoseEventIndex();
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final AtomicInteger badReads = new AtomicInteger();
+
+		final Thread reader = new Thread() {
+
+			@Override
+			public void run()
+			{
+				while(!done.get())
+				{
+					if(index.countOnDay(mDrug.id, mToday, Drug.TIME_MORNING) != 1)
+						badReads.incrementAndGet();
+				}
+			}
+		};
+
+		reader.start();
+
+		assertEquals(500, Database.deleteDoseEventsBefore(EpochDay.toDate(mToday - 7)).getCount());
+
+		done.set(true);
+		reader.join();
+
+		assertEquals(0, badReads.get());
+		assertEquals(toIds(event), toIds(index.find(mDrug.id, null, null)));
+		assertTrue(index.find(mDrug.id, EpochDay.toDate(mToday - 8), null).isEmpty());
+	}
+
+	public void testBatchIsAppliedAtomically() throws Exception
+	{
+		final int batchSize = 50;
+		final int batchCount = 20;
+
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final AtomicInteger badSnapshots = new AtomicInteger();
+
+		final Thread reader = new Thread() {
+
+			@Override
+			public void run()
+			{
+				while(!done.get())
+				{
+					if(Database.getSnapshot(DoseEvent.class).size() % batchSize != 0)
+						badSnapshots.incrementAndGet();
+				}
+			}
+		};
+
+		reader.start();
+
+		for(int i = 0; i != batchCount; ++i)
+		{
+			final Database.Batch batch = Database.batch();
+			for(int k = 0; k != batchSize; ++k)
+				batch.create(newDoseEvent(mToday - k % 10));
+
+			batch.commit();
+			assertEquals((i + 1) * batchSize, Database.countAll(DoseEvent.class));
+		}
+
+		done.set(true);
+		reader.join();
+
+		assertEquals(0, badSnapshots.get());
+
+		Database.flush();
+		assertEquals(batchCount * batchSize, mEngine.queryForAll(DoseEvent.class).size());
+		assertEquals(batchCount * batchSize, Database.countDoseEvents(mDrug.id, null, null));
+	}
+
+	public void testFailedBatchChangesNothing()
+	{
+		final Listener listener = new Listener();
+		Database.registerEventListener(listener);
+
+		final Drug virtualDrug = new Drug();
+		virtualDrug.id = Database.ID_VIRTUAL_ENTRY;
+
+		final Snapshot<DoseEvent> before = Database.getSnapshot(DoseEvent.class);
+		final Database.Batch batch = Database.batch()
+				.create(newDoseEvent(mToday))
+				.update(virtualDrug);
+
+		try
+		{
+			batch.commit();
+			fail("Expected an IllegalArgumentException");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// expected
+		}
+
+		assertSame(before, Database.getSnapshot(DoseEvent.class));
+		assertEquals(0, listener.batches);
+
+		Database.flush();
+		assertTrue(mEngine.queryForAll(DoseEvent.class).isEmpty());
+
+		Database.unregisterEventListener(listener);
+	}
+
+	public void testBatchNotifiesListenersOnce()
+	{
+		final DoseEvent deletedEvent = createDoseEvent(mToday - 1);
+		final DoseEvent created1 = newDoseEvent(mToday);
+		final DoseEvent created2 = newDoseEvent(mToday);
+
+		final Listener listener = new Listener() {
+
+			@Override
+			public void onEntriesChanged(Database.Changes changes, int flags)
+			{
+				// everything must have been applied before listeners are notified
+				final List<DoseEvent> events = Database.getAll(DoseEvent.class);
+				if(!containsIdentical(events, created1) || !containsIdentical(events, created2)
+						|| containsIdentical(events, deletedEvent))
+				{
+					fail("Listener was notified before the batch was applied");
+				}
+
+				super.onEntriesChanged(changes, flags);
+			}
+		};
+
+		Database.registerEventListener(listener);
+
+		mDrug.setRefillSize(10);
+
+		Database.batch()
+				.create(created1)
+				.create(created2)
+				.update(mDrug)
+				.updateCurrentSupply(mDrug)
+				.delete(deletedEvent)
+				.commit();
+
+		assertEquals(1, listener.batches);
+		assertEquals(2, listener.created);
+		// the supply update is part of the full update
+		assertEquals(1, listener.updated);
+		assertEquals(1, listener.deleted);
+
+		Database.batch(Database.FLAG_DONT_NOTIFY_LISTENERS)
+				.create(newDoseEvent(mToday))
+				.commit();
+
+		assertEquals(1, listener.batches);
+		assertEquals(2, listener.created);
+
+		Database.unregisterEventListener(listener);
+	}
+
+	private DoseEvent newDoseEvent(int day) {
+		return new DoseEvent(mDrug, EpochDay.toDate(day), Drug.TIME_MORNING, Fraction.ZERO);
+	}
+
+	private DoseEvent createDoseEvent(int day)
+	{
+		final DoseEvent event = newDoseEvent(day);
+		Database.create(event);
+		return event;
+	}
+
+	private List<DoseEvent> findDoseEvents(int day) {
+		return Database.findDoseEvents(mDrug.id, EpochDay.toDate(day), null);
+	}
+
+	private static boolean containsIdentical(List<? extends Entry> entries, Entry entry)
+	{
+		for(Entry e : entries)
+		{
+			if(e == entry)
+				return true;
+		}
+
+		return false;
+	}
+
+	private static Set<Integer> toIds(DoseEvent... events)
+	{
+		final List<DoseEvent> list = new ArrayList<DoseEvent>();
+		for(DoseEvent event : events)
+			list.add(event);
+
+		return toIds(list);
+	}
+
+	private static Set<Integer> toIds(List<? extends Entry> entries)
+	{
+		// flushed, so that all IDs are valid
+		Database.flush();
+
+		final Set<Integer> ids = new HashSet<Integer>();
+		for(Entry entry : entries)
+			ids.add(entry.id);
+
+		return ids;
+	}
+
+	private static class Listener extends Database.EmptyOnChangeListener
+	{
+		int batches = 0;
+		int created = 0;
+		int updated = 0;
+		int deleted = 0;
+
+		@Override
+		public void onEntryCreated(Entry entry, int flags) {
+			++created;
+		}
+
+		@Override
+		public void onEntryUpdated(Entry entry, int flags) {
+			++updated;
+		}
+
+		@Override
+		public void onEntryDeleted(Entry entry, int flags) {
+			++deleted;
+		}
+
+		@Override
+		public void onEntriesChanged(Database.Changes changes, int flags)
+		{
+			++batches;
+			super.onEntriesChanged(changes, flags);
+		}
+	}
+}
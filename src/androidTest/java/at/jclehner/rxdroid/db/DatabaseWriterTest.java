@@ -0,0 +1,364 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.test.AndroidTestCase;
+
+public class DatabaseWriterTest extends AndroidTestCase
+{
+	private static final int THREADS = 4;
+	private static final int OPS_PER_THREAD = 500;
+
+	// Each operation is a type (C: create, U: update, S: supply update, D: delete),
+	// followed by the index of an entry in mEntries. Entries 0 to 2 don't have an
+	// ID yet; 3 and 4 are different instances with the same ID.
+	private static final String[][] COALESCE_CASES = {
+		// input                 expected
+		{ "C0 U0",               "C0" },
+		{ "C0 S0",               "C0" },
+		{ "C0 U0 U0",            "C0" },
+		{ "C0 D0",               "" },
+		{ "C0 U0 D0",            "" },
+		{ "C0 S0 U0 D0",         "" },
+		{ "U3 U3",               "U3" },
+		{ "U3 U4",               "U4" },
+		{ "U3 D3",               "D3" },
+		{ "U3 U4 D3",            "D3" },
+		{ "U3 S3",               "U3" },
+		{ "U3 S4",               "U4" },
+		{ "S3 U3",               "U3" },
+		{ "S3 S4",               "S4" },
+		{ "S3 D3",               "D3" },
+		// different entries are never coalesced
+		{ "C0 C1 U0 D1",         "C0" },
+		{ "C0 U1",               "C0 U1" },
+		{ "U3 U5 U3",            "U5 U3" },
+		{ "U5 D3 C2",            "U5 D3 C2" },
+		{ "",                    "" },
+	};
+
+	private Entry[] mEntries;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+
+		mEntries = new Entry[] {
+				newPatient(-1), newPatient(-1), newPatient(-1),
+				newPatient(10), newPatient(10), newPatient(11)
+		};
+	}
+
+	public void testCoalesce()
+	{
+		for(String[] c : COALESCE_CASES)
+		{
+			final List<DatabaseWriter.Operation> batch = parseOperations(c[0]);
+			final int inputSize = batch.size();
+			final int saved = DatabaseWriter.coalesce(batch);
+
+			assertEquals(c[0], c[1], toString(batch));
+			assertEquals(c[0], inputSize - batch.size(), saved);
+		}
+	}
+
+	public void testCoalesceKeepsCache()
+	{
+		final EntryCache<Patient> cache = new EntryCache<Patient>(Collections.<Patient>emptyList());
+		final List<DatabaseWriter.Operation> batch = new ArrayList<DatabaseWriter.Operation>();
+
+		batch.add(new DatabaseWriter.Operation(DbOperation.CREATE, mEntries[0], cache));
+		batch.add(new DatabaseWriter.Operation(DbOperation.UPDATE, mEntries[0], null));
+
+		DatabaseWriter.coalesce(batch);
+		assertEquals(1, batch.size());
+		// required for EntryCache.onIdAssigned()
+		assertSame(cache, batch.get(0).cache);
+	}
+
+	public void testOperationsAreExecutedInSubmissionOrder() throws Exception
+	{
+		final RecordingExecutor executor = new RecordingExecutor(0);
+		// smaller than the number of operations, so that submit() has to block
+		final DatabaseWriter writer = new DatabaseWriter(executor, 64);
+
+		final List<Entry> submitted = new ArrayList<Entry>();
+		final AtomicInteger nextId = new AtomicInteger(1);
+		final CountDownLatch start = new CountDownLatch(1);
+		final Thread[] threads = new Thread[THREADS];
+
+		for(int i = 0; i != THREADS; ++i)
+		{
+			threads[i] = new Thread() {
+
+				@Override
+				public void run()
+				{
+					awaitQuietly(start);
+
+					for(int k = 0; k != OPS_PER_THREAD; ++k)
+					{
+						// the lock ensures that the recorded order is the submission order
+						synchronized(submitted)
+						{
+							final Entry entry = newPatient(nextId.getAndIncrement());
+							submitted.add(entry);
+							writer.submit(new DatabaseWriter.Operation(DbOperation.CREATE, entry, null));
+						}
+					}
+				}
+			};
+
+			threads[i].start();
+		}
+
+		start.countDown();
+
+		for(Thread thread : threads)
+			thread.join();
+
+		writer.flush();
+
+		assertFalse(writer.hasPendingOperations());
+		assertEquals(THREADS * OPS_PER_THREAD, submitted.size());
+		assertEquals(submitted, executor.getExecutedEntries());
+		// no two operations were on the same entry, so nothing was coalesced
+		assertEquals(0, writer.getSavedWriteCount());
+	}
+
+	public void testGroupsAreExecutedInOneBatch()
+	{
+		final RecordingExecutor executor = new RecordingExecutor(0);
+		final DatabaseWriter writer = new DatabaseWriter(executor, 4);
+
+		final List<DatabaseWriter.Operation> group = new ArrayList<DatabaseWriter.Operation>();
+		for(int i = 1; i <= DatabaseWriter.MAX_BATCH_SIZE; ++i)
+			group.add(new DatabaseWriter.Operation(DbOperation.UPDATE, newPatient(i), null));
+
+		writer.submitAll(group);
+		writer.flush();
+
+		assertEquals(1, executor.getBatchCount());
+		assertEquals(group.size(), executor.getExecutedEntries().size());
+	}
+
+	public void testFlushWaitsForAllSubmittedOperations() throws Exception
+	{
+		// slow enough that the operations are still pending when flush() is called
+		final RecordingExecutor executor = new RecordingExecutor(50);
+		final DatabaseWriter writer = new DatabaseWriter(executor, 16);
+		final int count = 10;
+
+		for(int i = 1; i <= count; ++i)
+			writer.submit(new DatabaseWriter.Operation(DbOperation.CREATE, newPatient(i), null));
+
+		assertTrue(writer.hasPendingOperations());
+
+		final Thread[] threads = new Thread[THREADS];
+		final AtomicInteger failures = new AtomicInteger();
+
+		for(int i = 0; i != THREADS; ++i)
+		{
+			threads[i] = new Thread() {
+
+				@Override
+				public void run()
+				{
+					writer.flush();
+
+					if(executor.getExecutedEntries().size() != count)
+						failures.incrementAndGet();
+				}
+			};
+
+			threads[i].start();
+		}
+
+		writer.flush();
+		assertEquals(count, executor.getExecutedEntries().size());
+		assertFalse(writer.hasPendingOperations());
+
+		for(Thread thread : threads)
+			thread.join();
+
+		assertEquals(0, failures.get());
+	}
+
+	public void testFlushFromWriterThreadDoesNotBlock()
+	{
+		final AtomicInteger executed = new AtomicInteger();
+		final DatabaseWriter[] writer = new DatabaseWriter[1];
+
+		writer[0] = new DatabaseWriter(new DatabaseWriter.BatchExecutor() {
+
+			@Override
+			public void execute(List<DatabaseWriter.Operation> batch)
+			{
+				// would deadlock if flush() waited for the current batch
+				writer[0].flush();
+				executed.addAndGet(batch.size());
+			}
+
+			@Override
+			public void onIdle() {}
+
+		}, 16);
+
+		writer[0].submit(new DatabaseWriter.Operation(DbOperation.CREATE, newPatient(1), null));
+		writer[0].flush();
+
+		assertEquals(1, executed.get());
+	}
+
+	private List<DatabaseWriter.Operation> parseOperations(String str)
+	{
+		final List<DatabaseWriter.Operation> ops = new ArrayList<DatabaseWriter.Operation>();
+
+		for(String op : str.split(" "))
+		{
+			if(op.length() == 0)
+				continue;
+
+			final DbOperation type;
+
+			switch(op.charAt(0))
+			{
+				case 'C':
+					type = DbOperation.CREATE;
+					break;
+
+				case 'U':
+					type = DbOperation.UPDATE;
+					break;
+
+				case 'S':
+					type = DbOperation.UPDATE_SUPPLY;
+					break;
+
+				case 'D':
+					type = DbOperation.DELETE;
+					break;
+
+				default:
+					throw new IllegalArgumentException(op);
+			}
+
+			ops.add(new DatabaseWriter.Operation(type, mEntries[Integer.parseInt(op.substring(1))], null));
+		}
+
+		return ops;
+	}
+
+	private String toString(List<DatabaseWriter.Operation> ops)
+	{
+		final StringBuilder sb = new StringBuilder();
+
+		for(DatabaseWriter.Operation op : ops)
+		{
+			if(sb.length() != 0)
+				sb.append(' ');
+
+			sb.append("CUSD".charAt(Arrays.asList(DbOperation.CREATE, DbOperation.UPDATE,
+					DbOperation.UPDATE_SUPPLY, DbOperation.DELETE).indexOf(op.type)));
+			sb.append(indexOfIdentical(op.entry));
+		}
+
+		return sb.toString();
+	}
+
+	private int indexOfIdentical(Entry entry)
+	{
+		for(int i = 0; i != mEntries.length; ++i)
+		{
+			if(mEntries[i] == entry)
+				return i;
+		}
+
+		return -1;
+	}
+
+	private static Patient newPatient(int id)
+	{
+		final Patient patient = new Patient();
+		patient.id = id;
+		// Patient.equals() only compares names
+		patient.setName("Patient " + id);
+		return patient;
+	}
+
+	private static void awaitQuietly(CountDownLatch latch)
+	{
+		try
+		{
+			latch.await();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static class RecordingExecutor implements DatabaseWriter.BatchExecutor
+	{
+		private final long mDelayMillis;
+		private final List<Entry> mExecuted = Collections.synchronizedList(new ArrayList<Entry>());
+		private final AtomicInteger mBatchCount = new AtomicInteger();
+
+		RecordingExecutor(long delayMillis) {
+			mDelayMillis = delayMillis;
+		}
+
+		@Override
+		public void execute(List<DatabaseWriter.Operation> batch) throws Exception
+		{
+			if(mDelayMillis != 0)
+				Thread.sleep(mDelayMillis);
+
+			for(DatabaseWriter.Operation op : batch)
+				mExecuted.add(op.entry);
+
+			mBatchCount.incrementAndGet();
+		}
+
+		@Override
+		public void onIdle() {}
+
+		List<Entry> getExecutedEntries()
+		{
+			synchronized(mExecuted) {
+				return new ArrayList<Entry>(mExecuted);
+			}
+		}
+
+		int getBatchCount() {
+			return mBatchCount.get();
+		}
+	}
+}
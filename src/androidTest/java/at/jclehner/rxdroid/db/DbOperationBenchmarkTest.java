@@ -0,0 +1,119 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.lang.reflect.Method;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+import at.jclehner.androidutils.Reflect;
+import at.jclehner.rxdroid.util.Util;
+
+import com.j256.ormlite.dao.BaseDaoImpl;
+
+/**
+ * Compares the cost of dispatching a database operation using reflection
+ * (as previously done by {@link Database}) with the {@link DbOperation} table.
+ * <p>
+ * Only the lookup is measured; the DAO itself is not called.
+ */
+public class DbOperationBenchmarkTest extends AndroidTestCase
+{
+	private static final String TAG = DbOperationBenchmarkTest.class.getSimpleName();
+
+	private static final int ITERATIONS = 10000;
+	private static final String[] METHOD_NAMES = { "create", "update", "delete" };
+
+	private final Entry[] mEntries = { new Drug(), new DoseEvent(), new Patient() };
+
+	public void testDispatchCost() throws Exception
+	{
+		// warm up
+		runReflective(ITERATIONS / 10);
+		runTyped(ITERATIONS / 10);
+
+		long begin = System.nanoTime();
+		final int reflectiveCount = runReflective(ITERATIONS);
+		final long reflectiveNanos = System.nanoTime() - begin;
+
+		begin = System.nanoTime();
+		final int typedCount = runTyped(ITERATIONS);
+		final long typedNanos = System.nanoTime() - begin;
+
+		assertEquals(reflectiveCount, typedCount);
+
+		Log.i(TAG, "Reflective: " + (reflectiveNanos / reflectiveCount) + "ns/op, typed: "
+				+ (typedNanos / typedCount) + "ns/op");
+	}
+
+	private int runReflective(int iterations) throws Exception
+	{
+		int count = 0;
+
+		for(int i = 0; i != iterations; ++i)
+		{
+			for(Entry entry : mEntries)
+			{
+				for(String methodName : METHOD_NAMES)
+				{
+					final Class<?> clazz = entry.getClass();
+					final Method callback = Reflect.getMethod(clazz, "on" + Util.capitalize(methodName), clazz);
+					if(callback != null)
+						Reflect.invokeMethod(callback, null, entry);
+
+					final Method daoMethod = BaseDaoImpl.class.getMethod(methodName, Object.class);
+					final String eventName = "onEntry" + Character.toUpperCase(methodName.charAt(0))
+							+ methodName.substring(1) + "d";
+
+					if(daoMethod != null && eventName != null)
+						++count;
+				}
+			}
+		}
+
+		return count;
+	}
+
+	private int runTyped(int iterations)
+	{
+		int count = 0;
+
+		for(int i = 0; i != iterations; ++i)
+		{
+			for(Entry entry : mEntries)
+			{
+				for(DbOperation op : DbOperation.values())
+				{
+					runCallback(op, entry);
+					++count;
+				}
+			}
+		}
+
+		return count;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <E extends Entry> void runCallback(DbOperation op, E entry) {
+		op.runCallback(EntryCallbacks.get((Class<E>) entry.getClass()), entry);
+	}
+}
@@ -0,0 +1,194 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+import at.jclehner.rxdroid.Fraction;
+import at.jclehner.rxdroid.util.DateTime;
+
+/**
+ * Checks that {@link DoseCalendar} agrees with the uncompiled schedule, and
+ * compares the cost of a lookup.
+ */
+public class DoseCalendarTest extends AndroidTestCase
+{
+	private static final String TAG = DoseCalendarTest.class.getSimpleName();
+
+	private static final Date ORIGIN = DateTime.date(2014, Calendar.MARCH, 3);
+	private static final int DAYS = 2 * 365;
+	private static final int ITERATIONS = 20;
+
+	private Date[] mDates;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+
+		// includes both DST transitions of two years
+		mDates = new Date[DAYS];
+		for(int i = 0; i != DAYS; ++i)
+			mDates[i] = DateTime.add(ORIGIN, Calendar.DAY_OF_MONTH, i - 60);
+	}
+
+	public void testDaily() {
+		checkDrug(newDrug(Drug.REPEAT_DAILY, 0));
+	}
+
+	public void testEveryNDays()
+	{
+		checkDrug(newDrug(Drug.REPEAT_EVERY_N_DAYS, 2));
+		checkDrug(newDrug(Drug.REPEAT_EVERY_N_DAYS, 3));
+		checkDrug(newDrug(Drug.REPEAT_EVERY_N_DAYS, 100));
+	}
+
+	public void testWeekdays()
+	{
+		for(long weekdays = 1; weekdays <= 0x7f; weekdays += 9)
+			checkDrug(newDrug(Drug.REPEAT_WEEKDAYS, weekdays));
+	}
+
+	public void test21_7() {
+		checkDrug(newDrug(Drug.REPEAT_21_7, 0));
+	}
+
+	public void testBounds()
+	{
+		final Drug drug = newDrug(Drug.REPEAT_EVERY_N_DAYS, 2);
+		drug.setLastScheduleUpdateDate(DateTime.add(ORIGIN, Calendar.DAY_OF_MONTH, 10));
+		drug.setScheduleEndDate(DateTime.fromDateFields(DateTime.add(ORIGIN, Calendar.DAY_OF_MONTH, 100)));
+		checkDrug(drug);
+	}
+
+	public void testInvalidation()
+	{
+		final Drug drug = newDrug(Drug.REPEAT_EVERY_N_DAYS, 2);
+		final Date date = DateTime.add(ORIGIN, Calendar.DAY_OF_MONTH, 3);
+		assertFalse(drug.hasDoseOnDate(date));
+
+		drug.setRepeatArg(3);
+		drug.setLastScheduleUpdateDate(null);
+		assertTrue(drug.hasDoseOnDate(date));
+
+		drug.setScheduleEndDate(DateTime.fromDateFields(ORIGIN));
+		assertFalse(drug.hasDoseOnDate(date));
+	}
+
+	public void testDatesNotAtMidnight()
+	{
+		final Drug drug = newDrug(Drug.REPEAT_21_7, 0);
+		drug.setScheduleEndDate(DateTime.fromDateFields(DateTime.add(ORIGIN, Calendar.DAY_OF_MONTH, 5)));
+
+		for(Date date : mDates)
+		{
+			final Date noon = DateTime.add(date, Calendar.HOUR_OF_DAY, 12);
+			assertEquals(drug.hasDoseOnDateUncompiled(noon), drug.hasDoseOnDate(noon));
+		}
+	}
+
+	public void testLookupCost()
+	{
+		final Drug[] drugs = {
+			newDrug(Drug.REPEAT_DAILY, 0),
+			newDrug(Drug.REPEAT_EVERY_N_DAYS, 3),
+			newDrug(Drug.REPEAT_WEEKDAYS, 0x15),
+			newDrug(Drug.REPEAT_21_7, 0)
+		};
+
+		for(Drug drug : drugs)
+		{
+			// warm up
+			runUncompiled(drug, 1);
+			runCompiled(drug, 1);
+
+			long begin = System.nanoTime();
+			final int uncompiledCount = runUncompiled(drug, ITERATIONS);
+			final long uncompiledNanos = System.nanoTime() - begin;
+
+			begin = System.nanoTime();
+			final int compiledCount = runCompiled(drug, ITERATIONS);
+			final long compiledNanos = System.nanoTime() - begin;
+
+			assertEquals(uncompiledCount, compiledCount);
+
+			final int lookups = ITERATIONS * DAYS;
+			Log.i(TAG, "repeatMode=" + drug.getRepeatMode() + ": uncompiled: " + (uncompiledNanos / lookups)
+					+ "ns/op, compiled: " + (compiledNanos / lookups) + "ns/op");
+		}
+	}
+
+	private void checkDrug(Drug drug)
+	{
+		for(Date date : mDates)
+		{
+			assertEquals("repeatMode=" + drug.getRepeatMode() + ", repeatArg=" + drug.getRepeatArg()
+					+ ", date=" + date, drug.hasDoseOnDateUncompiled(date), drug.hasDoseOnDate(date));
+		}
+	}
+
+	private int runUncompiled(Drug drug, int iterations)
+	{
+		int count = 0;
+
+		for(int i = 0; i != iterations; ++i)
+		{
+			for(Date date : mDates)
+			{
+				if(drug.hasDoseOnDateUncompiled(date))
+					++count;
+			}
+		}
+
+		return count;
+	}
+
+	private int runCompiled(Drug drug, int iterations)
+	{
+		int count = 0;
+
+		for(int i = 0; i != iterations; ++i)
+		{
+			for(Date date : mDates)
+			{
+				if(drug.hasDoseOnDate(date))
+					++count;
+			}
+		}
+
+		return count;
+	}
+
+	private static Drug newDrug(int repeatMode, long repeatArg)
+	{
+		final Drug drug = new Drug();
+		drug.setRepeatMode(repeatMode);
+		drug.setRepeatArg(repeatArg);
+		drug.setRepeatOrigin(ORIGIN);
+		drug.setDose(Drug.TIME_MORNING, new Fraction(1, 2));
+		drug.setLastScheduleUpdateDate(null);
+		return drug;
+	}
+}
@@ -0,0 +1,130 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import android.test.AndroidTestCase;
+import at.jclehner.rxdroid.Fraction;
+import at.jclehner.rxdroid.util.DateTime;
+
+public class DoseEventHistoryTest extends AndroidTestCase
+{
+	private static final Date WINDOW_START_DATE = DateTime.date(2014, Calendar.JUNE, 1);
+
+	private final List<DoseEvent> mEvents = new ArrayList<DoseEvent>();
+	private int mLoadCount;
+
+	private Drug mDrug;
+	private DoseEventHistory mHistory;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+
+		mDrug = new Drug();
+		mDrug.id = 1;
+
+		mEvents.clear();
+		mLoadCount = 0;
+
+		mHistory = new DoseEventHistory(new DoseEventHistory.Loader() {
+
+			@Override
+			public List<DoseEvent> load(int drugId, int beginDay, int endDay)
+			{
+				++mLoadCount;
+
+				final List<DoseEvent> events = new ArrayList<DoseEvent>();
+				for(DoseEvent event : mEvents)
+				{
+					final int day = event.getEpochDay();
+					if(event.getDrugId() == drugId && day >= beginDay && day < endDay)
+						events.add(event);
+				}
+
+				return events;
+			}
+		});
+
+		mHistory.setWindowStart(DateTime.toEpochDay(WINDOW_START_DATE));
+	}
+
+	public void testWindow()
+	{
+		final int windowStart = mHistory.getWindowStart();
+		assertTrue(mHistory.isInWindow(windowStart));
+		assertFalse(mHistory.isInWindow(windowStart - 1));
+	}
+
+	public void testPagesAreCached()
+	{
+		final Date date = daysBeforeWindow(1);
+		mEvents.add(newEvent(date));
+
+		assertEquals(1, getPage(date).count(mDrug.id, date, null));
+		assertEquals(1, getPage(date).count(mDrug.id, date, null));
+		assertEquals(1, mLoadCount);
+
+		mHistory.clear();
+		getPage(date);
+		assertEquals(2, mLoadCount);
+	}
+
+	public void testLoadedPagesAreUpdated()
+	{
+		final Date date = daysBeforeWindow(3);
+		assertEquals(0, getPage(date).count(mDrug.id, date, null));
+
+		final DoseEvent event = newEvent(date);
+		mHistory.add(event);
+		assertEquals(1, getPage(date).count(mDrug.id, date, Drug.TIME_MORNING));
+
+		mHistory.remove(event);
+		assertEquals(0, getPage(date).count(mDrug.id, date, null));
+		assertEquals(1, mLoadCount);
+	}
+
+	public void testPageDoesNotOverlapWindow()
+	{
+		mEvents.add(newEvent(WINDOW_START_DATE));
+
+		final Date date = daysBeforeWindow(1);
+		assertEquals(0, getPage(date).count(mDrug.id, null, null));
+	}
+
+	private DoseEventIndex getPage(Date date) {
+		return mHistory.getPage(mDrug.id, DateTime.toEpochDay(date));
+	}
+
+	private DoseEvent newEvent(Date date) {
+		return new DoseEvent(mDrug, date, Drug.TIME_MORNING, new Fraction(1));
+	}
+
+	private static Date daysBeforeWindow(int days) {
+		return DateTime.add(WINDOW_START_DATE, Calendar.DAY_OF_MONTH, -days);
+	}
+}
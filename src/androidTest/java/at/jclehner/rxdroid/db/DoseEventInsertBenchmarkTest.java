@@ -0,0 +1,165 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.io.File;
+import java.util.Date;
+import java.util.concurrent.Callable;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import at.jclehner.rxdroid.Fraction;
+
+import com.j256.ormlite.android.AndroidConnectionSource;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.misc.TransactionManager;
+import com.j256.ormlite.table.TableUtils;
+
+/**
+ * Compares inserting {@link DoseEvent}s using ORMLite with inserting them
+ * using {@link CompiledStatements}.
+ */
+public class DoseEventInsertBenchmarkTest extends AndroidTestCase
+{
+	private static final String TAG = DoseEventInsertBenchmarkTest.class.getSimpleName();
+
+	private static final int[] COUNTS = { 1, 100, 10000 };
+
+	private File mFile;
+	private SQLiteDatabase mDb;
+	private AndroidConnectionSource mConnectionSource;
+	private Dao<DoseEvent, Integer> mDao;
+	private Drug mDrug;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+
+		mFile = getContext().getDatabasePath("insert_benchmark.db");
+		mFile.getParentFile().mkdirs();
+		mFile.delete();
+
+		mDb = SQLiteDatabase.openOrCreateDatabase(mFile, null);
+		mConnectionSource = new AndroidConnectionSource(mDb);
+		TableUtils.createTable(mConnectionSource, DoseEvent.class);
+		mDao = DaoManager.createDao(mConnectionSource, DoseEvent.class);
+
+		// only the drug's ID is written
+		mDrug = new Drug();
+		mDrug.id = 1;
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		DaoManager.clearCache();
+		mConnectionSource.close();
+		mDb.close();
+		mFile.delete();
+
+		super.tearDown();
+	}
+
+	public void testInsertCost() throws Exception
+	{
+		// warm up
+		insertWithDao(100);
+		insertWithStatements(100);
+
+		for(int count : COUNTS)
+		{
+			final long daoNanos = insertWithDao(count);
+			final long statementNanos = insertWithStatements(count);
+
+			Log.i(TAG, count + " inserts: ORMLite: " + (daoNanos / count) + "ns/op, compiled: "
+					+ (statementNanos / count) + "ns/op");
+		}
+	}
+
+	public void testStatementsMatchDao() throws Exception
+	{
+		final DoseEvent expected = newDoseEvent(0);
+		mDao.create(expected);
+
+		final DoseEvent inserted = newDoseEvent(0);
+		final CompiledStatements statements = new CompiledStatements(mDb);
+		statements.insert(inserted);
+		statements.close();
+
+		assertTrue(inserted.id != 0 && inserted.id != expected.id);
+
+		final DoseEvent actual = mDao.queryForId(inserted.id);
+		assertEquals(expected.getDrugId(), actual.getDrugId());
+		assertEquals(expected.getDate(), actual.getDate());
+		assertEquals(expected.getEpochDay(), actual.getEpochDay());
+		assertEquals(expected.getDoseTime(), actual.getDoseTime());
+		assertEquals(expected.getDose(), actual.getDose());
+	}
+
+	private long insertWithDao(final int count) throws Exception
+	{
+		final long begin = System.nanoTime();
+
+		TransactionManager.callInTransaction(mConnectionSource, new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception
+			{
+				for(int i = 0; i != count; ++i)
+					mDao.create(newDoseEvent(i));
+
+				return null;
+			}
+		});
+
+		return System.nanoTime() - begin;
+	}
+
+	private long insertWithStatements(final int count) throws Exception
+	{
+		final long begin = System.nanoTime();
+
+		TransactionManager.callInTransaction(mConnectionSource, new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception
+			{
+				final CompiledStatements statements = new CompiledStatements(mDb);
+
+				for(int i = 0; i != count; ++i)
+					statements.insert(newDoseEvent(i));
+
+				statements.close();
+				return null;
+			}
+		});
+
+		return System.nanoTime() - begin;
+	}
+
+	private DoseEvent newDoseEvent(int i) {
+		return new DoseEvent(mDrug, new Date(i * 86400000L), i % Drug.TIME_INVALID, new Fraction(i % 4, 2));
+	}
+}
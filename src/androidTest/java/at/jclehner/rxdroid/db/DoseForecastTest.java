@@ -0,0 +1,198 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import android.test.AndroidTestCase;
+import at.jclehner.rxdroid.Fraction;
+import at.jclehner.rxdroid.util.DateTime;
+
+/**
+ * Checks {@link DoseForecast} against {@link Entries#getTotalDoseInTimePeriod_dumb(Drug, Date, Date, boolean)},
+ * using randomly generated schedules and time periods.
+ */
+public class DoseForecastTest extends AndroidTestCase
+{
+	private static final Date ORIGIN = DateTime.date(2014, Calendar.MARCH, 3);
+	private static final int DRUGS_PER_MODE = 40;
+	private static final int PERIODS_PER_DRUG = 10;
+
+	private static final Fraction[] DOSES = {
+		Fraction.ZERO, new Fraction(1), new Fraction(1, 2), new Fraction(3, 4), new Fraction(2)
+	};
+
+	private static final int[] SCHEDULE_REPEAT_MODES = {
+		Schedule.REPEAT_DAILY,
+		Schedule.REPEAT_EVERY_N_DAYS,
+		Schedule.REPEAT_WEEKDAYS,
+		Schedule.REPEAT_DAILY_WITH_PAUSE
+	};
+
+	// fixed, so that failures can be reproduced
+	private final Random mRandom = new Random(0x5eed);
+
+	public void testDaily() {
+		checkRepeatMode(Drug.REPEAT_DAILY);
+	}
+
+	public void testEveryNDays() {
+		checkRepeatMode(Drug.REPEAT_EVERY_N_DAYS);
+	}
+
+	public void testWeekdays() {
+		checkRepeatMode(Drug.REPEAT_WEEKDAYS);
+	}
+
+	public void test21_7() {
+		checkRepeatMode(Drug.REPEAT_21_7);
+	}
+
+	public void testCustom() {
+		checkRepeatMode(Drug.REPEAT_CUSTOM);
+	}
+
+	public void testEmptyPeriod()
+	{
+		final Drug drug = newDrug(Drug.REPEAT_DAILY);
+		assertEquals(Fraction.ZERO, DoseForecast.getTotalDose(drug, ORIGIN, ORIGIN));
+		assertEquals(Fraction.ZERO, DoseForecast.getTotalDose(drug, ORIGIN, addDays(ORIGIN, -10)));
+	}
+
+	private void checkRepeatMode(int repeatMode)
+	{
+		for(int i = 0; i != DRUGS_PER_MODE; ++i)
+		{
+			final Drug drug = newDrug(repeatMode);
+
+			for(int k = 0; k != PERIODS_PER_DRUG; ++k)
+			{
+				final Date begin = addDays(ORIGIN, mRandom.nextInt(200) - 100);
+				Date end = addDays(begin, mRandom.nextInt(500));
+				if(mRandom.nextBoolean())
+					end = DateTime.add(end, Calendar.MINUTE, mRandom.nextInt(24 * 60));
+
+				final Fraction expected = Entries.getTotalDoseInTimePeriod_dumb(drug, begin, end, false);
+				final Fraction actual = DoseForecast.getTotalDose(drug, begin, end);
+
+				assertNotNull(actual);
+				assertEquals("repeatMode=" + repeatMode + ", repeatArg=" + drug.getRepeatArg()
+						+ ", begin=" + begin + ", end=" + end, expected, actual);
+			}
+		}
+	}
+
+	private Drug newDrug(int repeatMode)
+	{
+		final Drug drug = new Drug();
+		drug.setRepeatMode(repeatMode);
+
+		switch(repeatMode)
+		{
+			case Drug.REPEAT_EVERY_N_DAYS:
+				drug.setRepeatArg(2 + mRandom.nextInt(30));
+				break;
+
+			case Drug.REPEAT_WEEKDAYS:
+				drug.setRepeatArg(1 + mRandom.nextInt(0x7f));
+				break;
+
+			case Drug.REPEAT_CUSTOM:
+				drug.setSchedules(newSchedules());
+				break;
+		}
+
+		drug.setRepeatOrigin(addDays(ORIGIN, mRandom.nextInt(60) - 30));
+
+		for(int doseTime = Drug.TIME_MORNING; doseTime != Drug.TIME_INVALID; ++doseTime)
+			drug.setDose(doseTime, randomDose());
+
+		drug.setLastScheduleUpdateDate(mRandom.nextBoolean() ? null : addDays(ORIGIN, mRandom.nextInt(100) - 50));
+
+		if(mRandom.nextInt(4) == 0)
+			drug.setScheduleEndDate(DateTime.fromDateFields(addDays(ORIGIN, mRandom.nextInt(300))));
+
+		return drug;
+	}
+
+	private List<Schedule> newSchedules()
+	{
+		final List<Schedule> schedules = new ArrayList<Schedule>();
+		final int count = 1 + mRandom.nextInt(3);
+
+		for(int i = 0; i != count; ++i)
+		{
+			final Schedule schedule = new Schedule();
+			final Date begin = addDays(ORIGIN, mRandom.nextInt(300) - 150);
+			schedule.setBegin(begin);
+
+			if(mRandom.nextBoolean())
+				schedule.setEnd(addDays(begin, mRandom.nextInt(200)));
+
+			final int repeatMode = SCHEDULE_REPEAT_MODES[mRandom.nextInt(SCHEDULE_REPEAT_MODES.length)];
+			schedule.setRepeatMode(repeatMode);
+
+			switch(repeatMode)
+			{
+				case Schedule.REPEAT_EVERY_N_DAYS:
+					schedule.setRepeatArg(1 + mRandom.nextInt(10));
+					break;
+
+				case Schedule.REPEAT_WEEKDAYS:
+					schedule.setRepeatArg(mRandom.nextInt(0x80));
+					break;
+
+				case Schedule.REPEAT_DAILY_WITH_PAUSE:
+					final int cycleLength = 2 + mRandom.nextInt(30);
+					schedule.setRepeatArg(cycleLength << 16 | mRandom.nextInt(cycleLength));
+					break;
+			}
+
+			for(int doseTime = Schedule.TIME_MORNING; doseTime != Schedule.TIME_INVALID; ++doseTime)
+				schedule.setDose(doseTime, randomDose());
+
+			if(mRandom.nextBoolean())
+			{
+				final Fraction[] doses = { randomDose(), randomDose(), randomDose(), randomDose() };
+				schedule.setScheduleParts(new SchedulePart[] {
+						new SchedulePart(mRandom.nextInt(0x80), doses)
+				});
+			}
+
+			schedules.add(schedule);
+		}
+
+		return schedules;
+	}
+
+	private Fraction randomDose() {
+		return DOSES[mRandom.nextInt(DOSES.length)];
+	}
+
+	private static Date addDays(Date date, int days) {
+		return DateTime.add(date, Calendar.DAY_OF_MONTH, days);
+	}
+}
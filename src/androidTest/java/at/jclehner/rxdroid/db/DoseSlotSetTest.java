@@ -0,0 +1,179 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import android.test.AndroidTestCase;
+import at.jclehner.rxdroid.Fraction;
+import at.jclehner.rxdroid.util.DateTime;
+
+/**
+ * Checks the missed-dose detection of {@link DoseSlotSet} and {@link DoseEventIndex}
+ * against counting the events of each slot.
+ */
+public class DoseSlotSetTest extends AndroidTestCase
+{
+	private static final Date ORIGIN = DateTime.date(2014, Calendar.MARCH, 3);
+	private static final int DAYS = 120;
+	private static final int ITERATIONS = 50;
+
+	public void testSetAndClear()
+	{
+		final DoseSlotSet slots = new DoseSlotSet();
+		final int[] days = { Integer.MIN_VALUE / 8, -257, -17, -16, -1, 0, 15, 16, 255, 256, 16000 };
+
+		for(int day : days)
+		{
+			for(int doseTime : Schedule.DOSE_TIMES)
+			{
+				assertFalse(slots.get(day, doseTime));
+				slots.set(day, doseTime);
+				assertTrue(slots.get(day, doseTime));
+			}
+		}
+
+		for(int day : days)
+		{
+			slots.clear(day, Schedule.TIME_NOON);
+			assertFalse(slots.get(day, Schedule.TIME_NOON));
+			assertTrue(slots.get(day, Schedule.TIME_MORNING));
+			assertTrue(slots.get(day, Schedule.TIME_EVENING));
+			assertFalse(slots.get(day + 1000, Schedule.TIME_MORNING));
+		}
+	}
+
+	public void testRandomEvents()
+	{
+		final Random random = new Random(0x5107);
+
+		for(int i = 0; i != ITERATIONS; ++i)
+		{
+			final Drug drug = newRandomDrug(random, i + 1);
+			final DoseEventIndex index = new DoseEventIndex();
+			final List<DoseEvent> events = new ArrayList<DoseEvent>();
+
+			for(int day = 0; day != DAYS; ++day)
+			{
+				final Date date = DateTime.add(ORIGIN, Calendar.DAY_OF_MONTH, day);
+
+				for(int doseTime : Schedule.DOSE_TIMES)
+				{
+					// some doses are missed, some are taken twice
+					final int count = random.nextInt(8) == 0 ? 0 : 1 + random.nextInt(2);
+					for(int k = 0; k != count; ++k)
+					{
+						final DoseEvent event = new DoseEvent(drug, date, doseTime, new Fraction(1, 2));
+						event.id = events.size() + 1;
+						events.add(event);
+						index.add(event);
+					}
+				}
+			}
+
+			// removing some events may leave their slots empty
+			for(int k = 0; k != events.size() / 10; ++k)
+				index.remove(events.get(random.nextInt(events.size())));
+
+			checkIndex(drug, index, random);
+		}
+	}
+
+	public void testNoEvents()
+	{
+		final Drug drug = newDrug(Drug.REPEAT_WEEKDAYS, 0x7f, 1);
+		final DoseEventIndex index = new DoseEventIndex();
+		final int day = DateTime.toEpochDay(ORIGIN);
+
+		assertTrue(index.hasMissingDoses(drug.id, drug.getDoseCalendar(), 1, day, day + 6));
+		assertFalse(index.hasMissingDoses(drug.id, drug.getDoseCalendar(), 1, day - 7, day - 1));
+	}
+
+	private void checkIndex(Drug drug, DoseEventIndex index, Random random)
+	{
+		final DoseCalendar calendar = drug.getDoseCalendar();
+		assertTrue(calendar.isPeriodic());
+
+		final int originDay = DateTime.toEpochDay(ORIGIN);
+
+		int doseMask = 0;
+		for(int doseTime : Schedule.DOSE_TIMES)
+		{
+			if(!drug.getDose(doseTime).isZero())
+				doseMask |= 1 << doseTime;
+		}
+
+		for(int k = 0; k != 200; ++k)
+		{
+			final int beginDay = originDay - 10 + random.nextInt(DAYS + 20);
+			final int endDay = beginDay + random.nextInt(40);
+
+			assertEquals("repeatMode=" + drug.getRepeatMode() + ", repeatArg=" + drug.getRepeatArg()
+					+ ", days=[" + beginDay + ", " + endDay + "]",
+					hasMissingDosesByCounting(drug, index, beginDay, endDay),
+					index.hasMissingDoses(drug.id, calendar, doseMask, beginDay, endDay));
+		}
+	}
+
+	private static boolean hasMissingDosesByCounting(Drug drug, DoseEventIndex index, int beginDay, int endDay)
+	{
+		final int originDay = DateTime.toEpochDay(ORIGIN);
+
+		for(int day = beginDay; day <= endDay; ++day)
+		{
+			final Date date = DateTime.add(ORIGIN, Calendar.DAY_OF_MONTH, day - originDay);
+
+			for(int doseTime : Schedule.DOSE_TIMES)
+			{
+				if(!drug.getDose(doseTime, date).isZero() && index.count(drug.id, date, doseTime) == 0)
+					return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static Drug newRandomDrug(Random random, int id)
+	{
+		if(random.nextBoolean())
+			return newDrug(Drug.REPEAT_EVERY_N_DAYS, 1 + random.nextInt(10), id);
+
+		return newDrug(Drug.REPEAT_WEEKDAYS, 1 + random.nextInt(0x7f), id);
+	}
+
+	private static Drug newDrug(int repeatMode, long repeatArg, int id)
+	{
+		final Drug drug = new Drug();
+		drug.id = id;
+		drug.setRepeatMode(repeatMode);
+		drug.setRepeatArg(repeatArg);
+		drug.setRepeatOrigin(DateTime.add(ORIGIN, Calendar.DAY_OF_MONTH, 5));
+		drug.setDose(Drug.TIME_MORNING, new Fraction(1, 2));
+		drug.setDose(Drug.TIME_EVENING, new Fraction(1, 2));
+		drug.setLastScheduleUpdateDate(null);
+		return drug;
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import android.test.AndroidTestCase;
+
+public class EntryCacheTest extends AndroidTestCase
+{
+	private Patient mPatient1;
+	private Patient mPatient2;
+	private EntryCache<Patient> mCache;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+
+		mPatient1 = newPatient(1, "foo");
+		mPatient2 = newPatient(2, "bar");
+		mCache = new EntryCache<Patient>(Arrays.asList(mPatient1, mPatient2));
+	}
+
+	public void testFind()
+	{
+		assertSame(mPatient1, mCache.find(1));
+		assertSame(mPatient2, mCache.find(2));
+		assertNull(mCache.find(3));
+
+		final Patient patient = newPatient(3, "baz");
+		mCache.add(patient);
+		assertSame(patient, mCache.find(3));
+
+		mCache.remove(mPatient1);
+		assertNull(mCache.find(1));
+	}
+
+	public void testReplaceSameInstanceBumpsGeneration()
+	{
+		final Snapshot<Patient> before = mCache.list();
+
+		mPatient1.setName("foobar");
+		assertSame(mPatient1, mCache.replace(mPatient1));
+
+		final Snapshot<Patient> after = mCache.list();
+		assertNotSame(before, after);
+		assertTrue(after.getGeneration() > before.getGeneration());
+		assertSame(mPatient1, after.find(1));
+	}
+
+	public void testReplaceOtherInstance()
+	{
+		final Snapshot<Patient> before = mCache.list();
+		final Patient patient = newPatient(1, "foobar");
+
+		assertSame(mPatient1, mCache.replace(patient));
+		assertTrue(mCache.list().getGeneration() > before.getGeneration());
+		assertSame(patient, mCache.find(1));
+		assertTrue(mCache.list().contains(patient));
+
+		// the old snapshot is not affected
+		assertSame(mPatient1, before.find(1));
+	}
+
+	public void testReplaceUnknownEntryThrows()
+	{
+		try
+		{
+			mCache.replace(newPatient(3, "baz"));
+			fail("Expected an IllegalStateException");
+		}
+		catch(IllegalStateException e)
+		{
+			// expected
+		}
+
+		assertNull(mCache.find(3));
+	}
+
+	public void testPendingEntry()
+	{
+		final Patient patient = newPatient(-1, "baz");
+		mCache.add(patient);
+		assertEquals(3, mCache.size());
+
+		final long generation = mCache.list().getGeneration();
+		mCache.replace(patient);
+		assertTrue(mCache.list().getGeneration() > generation);
+
+		patient.id = 3;
+		mCache.onIdAssigned(patient);
+		assertSame(patient, mCache.find(3));
+	}
+
+	public void testDeferredUpdates()
+	{
+		final Snapshot<Patient> before = mCache.list();
+
+		mCache.beginUpdate();
+		mCache.replace(mPatient1);
+		mCache.remove(mPatient2);
+		assertSame(before, mCache.list());
+		mCache.endUpdate();
+
+		final Snapshot<Patient> after = mCache.list();
+		assertTrue(after.getGeneration() > before.getGeneration());
+		assertEquals(new ArrayList<Patient>(Arrays.asList(mPatient1)), new ArrayList<Patient>(after));
+		assertNull(mCache.find(2));
+	}
+
+	private static Patient newPatient(int id, String name)
+	{
+		final Patient patient = new Patient();
+		patient.id = id;
+		patient.setName(name);
+		return patient;
+	}
+}
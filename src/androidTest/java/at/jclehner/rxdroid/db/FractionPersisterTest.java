@@ -0,0 +1,43 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import android.test.AndroidTestCase;
+import at.jclehner.rxdroid.Fraction;
+
+public class FractionPersisterTest extends AndroidTestCase
+{
+	public void testPackUnpack()
+	{
+		final String[] values = { "0", "1", "-3", "1/2", "-1/2", "3 1/4", "-2 2/3", "2147483647" };
+
+		for(String value : values)
+		{
+			final Fraction f = Fraction.valueOf(value);
+			assertEquals(value, f, FractionPersister.unpack(FractionPersister.pack(f)));
+		}
+	}
+
+	public void testZeroIsShared() {
+		assertSame(Fraction.ZERO, FractionPersister.unpack(FractionPersister.pack(new Fraction(0, 5))));
+	}
+}
@@ -0,0 +1,212 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import at.jclehner.rxdroid.Fraction;
+
+import com.j256.ormlite.android.AndroidConnectionSource;
+import com.j256.ormlite.table.TableUtils;
+
+/**
+ * Measures the latency of reads while another thread is writing, with and
+ * without {@link DatabaseHelper#enableHighThroughputMode(SQLiteDatabase)}.
+ */
+public class HighThroughputModeBenchmarkTest extends AndroidTestCase
+{
+	private static final String TAG = HighThroughputModeBenchmarkTest.class.getSimpleName();
+
+	private static final int READS = 500;
+	private static final int INSERTS_PER_TRANSACTION = 50;
+	private static final int DRUG_COUNT = 10;
+
+	private File mFile;
+	private SQLiteDatabase mDb;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+
+		mFile = getContext().getDatabasePath("throughput_benchmark.db");
+		mFile.getParentFile().mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		if(mDb != null)
+			mDb.close();
+
+		deleteDatabase();
+
+		super.tearDown();
+	}
+
+	public void testDefaultMode() throws Exception
+	{
+		openDatabase(false);
+		measureReadLatency("default");
+	}
+
+	public void testHighThroughputMode() throws Exception
+	{
+		final boolean isWalEnabled = openDatabase(true);
+		measureReadLatency(isWalEnabled ? "high-throughput" : "high-throughput (no WAL)");
+	}
+
+	private boolean openDatabase(boolean highThroughput) throws Exception
+	{
+		deleteDatabase();
+		mDb = SQLiteDatabase.openOrCreateDatabase(mFile, null);
+
+		final boolean isWalEnabled = highThroughput && DatabaseHelper.enableHighThroughputMode(mDb);
+
+		final AndroidConnectionSource cs = new AndroidConnectionSource(mDb);
+		TableUtils.createTable(cs, DoseEvent.class);
+
+		// start out with some history
+		insert(new CompiledStatements(mDb), 2000);
+
+		return isWalEnabled;
+	}
+
+	private void deleteDatabase()
+	{
+		// SQLiteDatabase.deleteDatabase() requires Jelly Bean
+		for(String suffix : new String[] { "", "-journal", "-wal", "-shm" })
+			new File(mFile.getPath() + suffix).delete();
+	}
+
+	private void measureReadLatency(String mode) throws Exception
+	{
+		final Writer writer = new Writer();
+		writer.start();
+
+		final long[] latencies = new long[READS];
+
+		try
+		{
+			for(int i = 0; i != READS; ++i)
+			{
+				final long begin = System.nanoTime();
+
+				final Cursor c = mDb.rawQuery("SELECT COUNT(*) FROM [dose_events] WHERE [drug_id]=? AND [day]=?",
+						new String[] { Integer.toString(i % DRUG_COUNT + 1), Integer.toString(i % 100) });
+
+				try
+				{
+					assertTrue(c.moveToFirst());
+				}
+				finally
+				{
+					c.close();
+				}
+
+				latencies[i] = System.nanoTime() - begin;
+			}
+		}
+		finally
+		{
+			writer.finish();
+		}
+
+		Arrays.sort(latencies);
+
+		Log.i(TAG, mode + ": " + READS + " reads while " + writer.getInsertCount() + " rows were written; latency: "
+				+ "median=" + (latencies[READS / 2] / 1000) + "us, "
+				+ "p95=" + (latencies[READS * 95 / 100] / 1000) + "us, "
+				+ "max=" + (latencies[READS - 1] / 1000) + "us");
+	}
+
+	private void insert(CompiledStatements statements, int count)
+	{
+		final Drug drug = new Drug();
+
+		mDb.beginTransaction();
+
+		try
+		{
+			for(int i = 0; i != count; ++i)
+			{
+				drug.id = i % DRUG_COUNT + 1;
+				statements.insert(new DoseEvent(drug, new Date(i * 3600000L), i % Drug.TIME_INVALID, new Fraction(1)));
+			}
+
+			mDb.setTransactionSuccessful();
+		}
+		finally
+		{
+			mDb.endTransaction();
+		}
+	}
+
+	private class Writer extends Thread
+	{
+		private volatile boolean mFinished = false;
+		private volatile int mInsertCount = 0;
+		private volatile Throwable mError;
+
+		@Override
+		public void run()
+		{
+			final CompiledStatements statements = new CompiledStatements(mDb);
+
+			try
+			{
+				while(!mFinished)
+				{
+					insert(statements, INSERTS_PER_TRANSACTION);
+					mInsertCount += INSERTS_PER_TRANSACTION;
+				}
+			}
+			catch(Throwable t)
+			{
+				mError = t;
+			}
+			finally
+			{
+				statements.close();
+			}
+		}
+
+		void finish() throws Exception
+		{
+			mFinished = true;
+			join();
+
+			if(mError != null)
+				throw new Exception(mError);
+		}
+
+		int getInsertCount() {
+			return mInsertCount;
+		}
+	}
+}
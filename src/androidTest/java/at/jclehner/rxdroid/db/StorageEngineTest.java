@@ -0,0 +1,231 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import at.jclehner.rxdroid.Fraction;
+import at.jclehner.rxdroid.util.DateTime;
+
+import com.j256.ormlite.android.AndroidConnectionSource;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.table.TableUtils;
+
+/**
+ * Runs the same checks against each {@link StorageEngine}, and compares
+ * their performance.
+ */
+public class StorageEngineTest extends AndroidTestCase
+{
+	private static final String TAG = StorageEngineTest.class.getSimpleName();
+
+	private static final Date FIRST_DATE = DateTime.date(2014, Calendar.JANUARY, 1);
+	private static final int BENCHMARK_DAYS = 365;
+
+	private File mFile;
+	private SQLiteDatabase mDb;
+	private AndroidConnectionSource mConnectionSource;
+
+	private Drug mDrug1;
+	private Drug mDrug2;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+
+		mFile = getContext().getDatabasePath("storage_engine_test.db");
+		mFile.getParentFile().mkdirs();
+		mFile.delete();
+
+		mDb = SQLiteDatabase.openOrCreateDatabase(mFile, null);
+		mConnectionSource = new AndroidConnectionSource(mDb);
+		TableUtils.createTable(mConnectionSource, DoseEvent.class);
+
+		// only the drugs' IDs are written
+		mDrug1 = new Drug();
+		mDrug1.id = 1;
+		mDrug2 = new Drug();
+		mDrug2.id = 2;
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		DaoManager.clearCache();
+		mConnectionSource.close();
+		mDb.close();
+		mFile.delete();
+
+		super.tearDown();
+	}
+
+	public void testInMemoryEngine() throws Exception {
+		checkEngine(new InMemoryStorageEngine());
+	}
+
+	public void testOrmLiteEngine() throws Exception {
+		checkEngine(new OrmLiteStorageEngine(mConnectionSource));
+	}
+
+	public void testSQLiteEngine() throws Exception {
+		checkEngine(new SQLiteStorageEngine(mDb, mConnectionSource));
+	}
+
+	public void testEngineCost() throws Exception
+	{
+		final StorageEngine[] engines = {
+			new InMemoryStorageEngine(),
+			new OrmLiteStorageEngine(mConnectionSource),
+			new SQLiteStorageEngine(mDb, mConnectionSource)
+		};
+
+		for(StorageEngine engine : engines)
+		{
+			TableUtils.clearTable(mConnectionSource, DoseEvent.class);
+
+			final List<DatabaseWriter.Operation> batch = new ArrayList<DatabaseWriter.Operation>();
+			for(int i = 0; i != BENCHMARK_DAYS; ++i)
+				batch.add(newOperation(DbOperation.CREATE, newDoseEvent(mDrug1, i)));
+
+			long begin = System.nanoTime();
+			engine.write(batch);
+			final long writeNanos = System.nanoTime() - begin;
+
+			final int firstDay = DateTime.toEpochDay(FIRST_DATE);
+
+			begin = System.nanoTime();
+			for(int i = 0; i < BENCHMARK_DAYS; i += DoseEventHistory.PAGE_DAYS)
+				engine.queryDoseEvents(mDrug1.id, firstDay + i, firstDay + i + DoseEventHistory.PAGE_DAYS);
+			final long queryNanos = System.nanoTime() - begin;
+
+			begin = System.nanoTime();
+			engine.queryForAll(DoseEvent.class);
+			final long loadNanos = System.nanoTime() - begin;
+
+			Log.i(TAG, engine.getClass().getSimpleName() + ": write: " + (writeNanos / BENCHMARK_DAYS)
+					+ "ns/event, page queries: " + (queryNanos / 1000) + "us, load all: "
+					+ (loadNanos / 1000) + "us");
+
+			engine.close();
+		}
+	}
+
+	private void checkEngine(final StorageEngine engine) throws Exception
+	{
+		final DoseEvent event1 = newDoseEvent(mDrug1, 0);
+		final DoseEvent event2 = newDoseEvent(mDrug1, 10);
+		final DoseEvent event3 = newDoseEvent(mDrug2, 10);
+
+		engine.write(newBatch(DbOperation.CREATE, event1, event2, event3));
+
+		assertTrue(event1.id > 0 && event2.id > 0 && event3.id > 0);
+		assertTrue(event1.id != event2.id && event2.id != event3.id);
+		assertEquals(3, engine.queryForAll(DoseEvent.class).size());
+
+		final DoseEvent loaded = engine.queryForId(DoseEvent.class, event2.id);
+		assertNotNull(loaded);
+		assertEquals(event2.getDrugId(), loaded.getDrugId());
+		assertEquals(event2.getDate(), loaded.getDate());
+		assertEquals(event2.getEpochDay(), loaded.getEpochDay());
+		assertEquals(event2.getDoseTime(), loaded.getDoseTime());
+		assertEquals(event2.getDose(), loaded.getDose());
+
+		final int firstDay = DateTime.toEpochDay(FIRST_DATE);
+
+		assertEquals(1, engine.queryDoseEvents(null, firstDay, firstDay + 10).size());
+		assertEquals(3, engine.queryDoseEvents(null, firstDay, firstDay + 11).size());
+		assertEquals(1, engine.queryDoseEvents(mDrug2.id, firstDay, firstDay + 11).size());
+		assertEquals(0, engine.queryDoseEvents(mDrug2.id, firstDay + 11, Integer.MAX_VALUE).size());
+
+		event2.setDose(new Fraction(3, 4));
+		engine.write(newBatch(DbOperation.UPDATE, event2));
+		assertEquals(new Fraction(3, 4), engine.queryForId(DoseEvent.class, event2.id).getDose());
+
+		try
+		{
+			engine.callInTransaction(new Callable<Void>() {
+
+				@Override
+				public Void call() throws Exception
+				{
+					engine.write(newBatch(DbOperation.CREATE, newDoseEvent(mDrug2, 20)));
+					throw new IllegalStateException();
+				}
+			});
+
+			fail("Expected an SQLException");
+		}
+		catch(SQLException e)
+		{
+			// expected
+		}
+
+		assertEquals(3, engine.queryForAll(DoseEvent.class).size());
+
+		Database.PruneResult result = engine.deleteDoseEventsBefore(FIRST_DATE);
+		assertEquals(0, result.getCount());
+		assertNull(result.getOldestDate());
+		assertNull(result.getNewestDate());
+
+		result = engine.deleteDoseEventsBefore(DateTime.add(FIRST_DATE, Calendar.DAY_OF_MONTH, 1));
+		assertEquals(1, result.getCount());
+		assertEquals(firstDay, DateTime.toEpochDay(result.getOldestDate()));
+		assertEquals(firstDay, DateTime.toEpochDay(result.getNewestDate()));
+		assertNull(engine.queryForId(DoseEvent.class, event1.id));
+
+		engine.write(newBatch(DbOperation.DELETE, event2));
+		assertEquals(1, engine.deleteByIds(DoseEvent.class, Collections.singletonList(event3.id)));
+		assertTrue(engine.queryForAll(DoseEvent.class).isEmpty());
+
+		engine.close();
+	}
+
+	private DoseEvent newDoseEvent(Drug drug, int day)
+	{
+		final Date date = DateTime.add(FIRST_DATE, Calendar.DAY_OF_MONTH, day);
+		return new DoseEvent(drug, date, day % Drug.TIME_INVALID, new Fraction(1, 2));
+	}
+
+	private static List<DatabaseWriter.Operation> newBatch(DbOperation type, DoseEvent... events)
+	{
+		final List<DatabaseWriter.Operation> batch = new ArrayList<DatabaseWriter.Operation>();
+		for(DoseEvent event : events)
+			batch.add(newOperation(type, event));
+
+		return batch;
+	}
+
+	private static DatabaseWriter.Operation newOperation(DbOperation type, DoseEvent event) {
+		return new DatabaseWriter.Operation(type, event, null);
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import android.test.AndroidTestCase;
+import at.jclehner.rxdroid.util.Constants;
+import at.jclehner.rxdroid.util.DateTime;
+import at.jclehner.rxdroid.util.EpochDay;
+
+public class EpochDayTest extends AndroidTestCase
+{
+	// includes zones with DST transitions at midnight
+	private static final String[] TIME_ZONES = {
+		"UTC", "Europe/Vienna", "America/Sao_Paulo", "America/Santiago", "Asia/Tehran"
+	};
+
+	// 1950-01-01 to 2037-12-31
+	private static final int FIRST_DAY = -7305;
+	private static final int LAST_DAY = 24837;
+
+	private TimeZone mDefaultTimeZone;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		mDefaultTimeZone = TimeZone.getDefault();
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		setTimeZone(mDefaultTimeZone);
+		super.tearDown();
+	}
+
+	public void testToMillis()
+	{
+		for(String id : TIME_ZONES)
+		{
+			final TimeZone tz = TimeZone.getTimeZone(id);
+			setTimeZone(tz);
+
+			for(int day = FIRST_DAY; day <= LAST_DAY; ++day)
+			{
+				final long millis = EpochDay.toMillis(day);
+				assertEquals(id + ", day=" + day, day, EpochDay.fromMillis(millis, tz));
+				assertEquals(id + ", day=" + day, day - 1, EpochDay.fromMillis(millis - 1, tz));
+				assertEquals(day, DateTime.toEpochDay(EpochDay.toDate(day)));
+			}
+		}
+	}
+
+	public void testWeekDays()
+	{
+		for(String id : TIME_ZONES)
+		{
+			setTimeZone(TimeZone.getTimeZone(id));
+
+			final Calendar cal = new GregorianCalendar();
+
+			for(int day = FIRST_DAY; day <= LAST_DAY; day += 3)
+			{
+				cal.setTimeInMillis(EpochDay.toMillis(day));
+				assertEquals(cal.get(Calendar.DAY_OF_WEEK), Constants.WEEK_DAYS[EpochDay.getIsoWeekDayIndex(day)]);
+			}
+		}
+	}
+
+	public void testFloorDivAndMod()
+	{
+		final long[][] values = {
+			{ 7, 3, 2, 1 },
+			{ -7, 3, -3, 2 },
+			{ 7, -3, -3, -2 },
+			{ -7, -3, 2, -1 },
+			{ -6, 3, -2, 0 },
+			{ 0, 5, 0, 0 }
+		};
+
+		for(long[] v : values)
+		{
+			assertEquals(v[2], EpochDay.floorDiv(v[0], v[1]));
+			assertEquals(v[3], EpochDay.floorMod(v[0], v[1]));
+		}
+	}
+
+	private static void setTimeZone(TimeZone tz)
+	{
+		TimeZone.setDefault(tz);
+		// DateTime caches the default time zone
+		DateTime.clearDateCache();
+	}
+}
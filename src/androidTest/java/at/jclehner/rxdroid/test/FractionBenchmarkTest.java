@@ -0,0 +1,215 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.test;
+
+import java.util.Random;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+import at.jclehner.rxdroid.Fraction;
+import at.jclehner.rxdroid.Fraction.MutableFraction;
+import at.jclehner.rxdroid.PackedFraction;
+
+/**
+ * Compares the cost of summing up doses, and subtracting them from a
+ * supply, using {@link Fraction}, {@link MutableFraction} and {@link PackedFraction}.
+ * <p>
+ * This is not a JMH benchmark: JMH runs on a desktop JVM, which can't be set up
+ * with the Android Gradle plugin, and whose JIT behaves nothing like Dalvik or ART
+ * anyway. Instead, each loop is run for several rounds on the device, and the
+ * fastest round is reported, so that JIT compilation, class loading and GC pauses
+ * of the first rounds don't skew the results. Every result is stored in a field
+ * and checked against the others, so that no loop can be optimized away.
+ */
+public class FractionBenchmarkTest extends AndroidTestCase
+{
+	private static final String TAG = FractionBenchmarkTest.class.getSimpleName();
+
+	private static final int DOSES = 4 * 365;
+	private static final int ITERATIONS = 50;
+	private static final int ROUNDS = 5;
+
+	private Fraction[] mDoses;
+	private long[] mPackedDoses;
+	private Fraction mSupply;
+
+	// the most recent result of each loop
+	private Object mResult;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+
+		final Random random = new Random(0xd05e);
+		final int[] denominators = { 1, 2, 3, 4, 8 };
+
+		mDoses = new Fraction[DOSES];
+		mPackedDoses = new long[DOSES];
+		mSupply = new Fraction(DOSES * 4);
+
+		for(int i = 0; i != DOSES; ++i)
+		{
+			mDoses[i] = new Fraction(random.nextInt(4), 1 + random.nextInt(3), denominators[random.nextInt(5)]);
+			mPackedDoses[i] = PackedFraction.valueOf(mDoses[i]);
+		}
+	}
+
+	public void testSum()
+	{
+		final long fractionNanos = measure(new Loop() {
+
+			@Override
+			Object run() {
+				return sumFractions();
+			}
+		});
+		final Fraction fractionResult = (Fraction) mResult;
+
+		final long mutableNanos = measure(new Loop() {
+
+			@Override
+			Object run() {
+				return sumMutableFractions();
+			}
+		});
+		assertEquals(fractionResult, mResult);
+
+		final long packedNanos = measure(new Loop() {
+
+			@Override
+			Object run() {
+				return sumPackedFractions();
+			}
+		});
+		assertEquals(fractionResult, PackedFraction.toFraction((Long) mResult));
+
+		Log.i(TAG, "sum: Fraction: " + fractionNanos + "ns/op, MutableFraction: "
+				+ mutableNanos + "ns/op, PackedFraction: " + packedNanos + "ns/op");
+	}
+
+	public void testSupply()
+	{
+		final long fractionNanos = measure(new Loop() {
+
+			@Override
+			Object run() {
+				return subtractFractions(mSupply);
+			}
+		});
+		final Fraction fractionResult = (Fraction) mResult;
+
+		final long packedNanos = measure(new Loop() {
+
+			@Override
+			Object run() {
+				return subtractPackedFractions(mSupply);
+			}
+		});
+		assertEquals(fractionResult, PackedFraction.toFraction((Long) mResult));
+
+		Log.i(TAG, "supply: Fraction: " + fractionNanos + "ns/op, PackedFraction: "
+				+ packedNanos + "ns/op");
+	}
+
+	/**
+	 * Returns the time per operation of the fastest round.
+	 */
+	private long measure(Loop loop)
+	{
+		long best = Long.MAX_VALUE;
+
+		for(int round = 0; round != ROUNDS; ++round)
+		{
+			final long begin = System.nanoTime();
+
+			for(int i = 0; i != ITERATIONS; ++i)
+				mResult = loop.run();
+
+			best = Math.min(best, System.nanoTime() - begin);
+		}
+
+		return best / (ITERATIONS * DOSES);
+	}
+
+	private Fraction sumFractions()
+	{
+		Fraction total = Fraction.ZERO;
+		for(Fraction dose : mDoses)
+			total = total.plus(dose);
+
+		return total;
+	}
+
+	private Fraction sumMutableFractions()
+	{
+		final MutableFraction total = new MutableFraction();
+		for(Fraction dose : mDoses)
+			total.add(dose);
+
+		return total;
+	}
+
+	private long sumPackedFractions()
+	{
+		long total = PackedFraction.ZERO;
+		for(long dose : mPackedDoses)
+			total = PackedFraction.plus(total, dose);
+
+		return total;
+	}
+
+	private Fraction subtractFractions(Fraction supply)
+	{
+		for(Fraction dose : mDoses)
+		{
+			final Fraction newSupply = supply.minus(dose);
+			if(newSupply.isNegative())
+				break;
+
+			supply = newSupply;
+		}
+
+		return supply;
+	}
+
+	private long subtractPackedFractions(Fraction supply)
+	{
+		long packedSupply = PackedFraction.valueOf(supply);
+
+		for(long dose : mPackedDoses)
+		{
+			final long newSupply = PackedFraction.minus(packedSupply, dose);
+			if(PackedFraction.isNegative(newSupply))
+				break;
+
+			packedSupply = newSupply;
+		}
+
+		return packedSupply;
+	}
+
+	private static abstract class Loop
+	{
+		abstract Object run();
+	}
+}
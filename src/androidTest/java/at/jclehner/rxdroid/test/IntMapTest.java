@@ -0,0 +1,111 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import android.test.AndroidTestCase;
+import at.jclehner.rxdroid.util.IntMap;
+
+public class IntMapTest extends AndroidTestCase
+{
+	public void testPutGetRemove()
+	{
+		final IntMap<String> map = new IntMap<String>();
+
+		assertNull(map.put(1, "one"));
+		assertNull(map.put(-1, "minus one"));
+		assertEquals("one", map.put(1, "uno"));
+
+		assertEquals("uno", map.get(1));
+		assertEquals("minus one", map.get(-1));
+		assertNull(map.get(2));
+		assertEquals(2, map.size());
+
+		assertEquals("uno", map.remove(1));
+		assertNull(map.remove(1));
+		assertFalse(map.containsKey(1));
+		assertEquals(1, map.size());
+	}
+
+	public void testValues()
+	{
+		final IntMap<String> map = new IntMap<String>();
+		assertTrue(map.values().isEmpty());
+
+		map.put(1, "one");
+		map.put(2, "two");
+		map.put(3, "three");
+		map.remove(2);
+
+		final List<String> values = map.values();
+		assertEquals(2, values.size());
+		assertTrue(values.contains("one"));
+		assertTrue(values.contains("three"));
+	}
+
+	public void testCopy()
+	{
+		final IntMap<String> map = new IntMap<String>();
+		map.put(1, "one");
+		map.put(2, "two");
+
+		final IntMap<String> copy = new IntMap<String>(map);
+		map.put(3, "three");
+		map.remove(1);
+
+		assertEquals(2, copy.size());
+		assertEquals("one", copy.get(1));
+		assertEquals("two", copy.get(2));
+		assertNull(copy.get(3));
+	}
+
+	public void testAgainstHashMap()
+	{
+		final Random random = new Random(0);
+		final IntMap<Integer> map = new IntMap<Integer>();
+		final HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+
+		for(int i = 0; i != 20000; ++i)
+		{
+			final int key = random.nextInt(1000) - 250;
+
+			switch(random.nextInt(3))
+			{
+				case 0:
+					assertEquals(expected.put(key, i), map.put(key, i));
+					break;
+
+				case 1:
+					assertEquals(expected.remove(key), map.remove(key));
+					break;
+
+				default:
+					assertEquals(expected.get(key), map.get(key));
+			}
+
+			assertEquals(expected.size(), map.size());
+		}
+	}
+}
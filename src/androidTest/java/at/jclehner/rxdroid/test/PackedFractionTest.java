@@ -0,0 +1,181 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import android.test.AndroidTestCase;
+import at.jclehner.rxdroid.Fraction;
+import at.jclehner.rxdroid.PackedFraction;
+
+public class PackedFractionTest extends AndroidTestCase
+{
+	private static final int ITERATIONS = 10000;
+
+	public void testValueOf()
+	{
+		assertEquals(PackedFraction.valueOf(1, 2), PackedFraction.valueOf(2, 4));
+		assertEquals(PackedFraction.valueOf(-1, 2), PackedFraction.valueOf(1, -2));
+		assertEquals(PackedFraction.ZERO, PackedFraction.valueOf(0, 7));
+		assertEquals(PackedFraction.valueOf(5, 4), PackedFraction.valueOf(Fraction.valueOf("1 1/4")));
+		assertEquals(Fraction.valueOf("-21/4"), PackedFraction.toFraction(PackedFraction.valueOf(-42, 8)));
+
+		try
+		{
+			PackedFraction.valueOf(1, 0);
+			fail();
+		}
+		catch(ArithmeticException e)
+		{
+			// expected
+		}
+	}
+
+	public void testArithmetic()
+	{
+		final Random random = new Random(0xf4ac);
+
+		for(int i = 0; i != ITERATIONS; ++i)
+		{
+			final long a = newRandomFraction(random);
+			final long b = newRandomFraction(random);
+
+			assertEquals(a, b, plus(a, b), PackedFraction.plus(a, b));
+			assertEquals(a, b, plus(a, negate(b)), PackedFraction.minus(a, b));
+			assertEquals(a, b, times(a, b), PackedFraction.times(a, b));
+			assertEquals(a, b, negate(a), PackedFraction.negate(a));
+
+			if(!PackedFraction.isZero(b))
+				assertEquals(a, b, times(a, reciprocal(b)), PackedFraction.dividedBy(a, b));
+
+			final int expected = toDouble(a).compareTo(toDouble(b));
+			assertEquals(PackedFraction.toString(a) + " <=> " + PackedFraction.toString(b),
+					expected, PackedFraction.compare(a, b));
+		}
+	}
+
+	public void testCompareDoesNotOverflow()
+	{
+		final Fraction a = new Fraction(Integer.MAX_VALUE - 1, Integer.MAX_VALUE);
+		final Fraction b = new Fraction(Integer.MAX_VALUE - 2, Integer.MAX_VALUE - 1);
+
+		assertEquals(1, a.compareTo(b));
+		assertEquals(-1, b.compareTo(a));
+		assertFalse(a.equals(b));
+	}
+
+	public void testOverflow()
+	{
+		final long[][] operands = {
+			{ PackedFraction.valueOf(Integer.MAX_VALUE), PackedFraction.valueOf(1) },
+			{ PackedFraction.valueOf(1, Integer.MAX_VALUE), PackedFraction.valueOf(1, Integer.MAX_VALUE - 1) },
+		};
+
+		for(long[] o : operands)
+		{
+			try
+			{
+				PackedFraction.plus(o[0], o[1]);
+				fail(PackedFraction.toString(o[0]) + " + " + PackedFraction.toString(o[1]));
+			}
+			catch(ArithmeticException e)
+			{
+				// expected
+			}
+		}
+
+		try
+		{
+			PackedFraction.negate(PackedFraction.valueOf(Integer.MIN_VALUE));
+			fail();
+		}
+		catch(ArithmeticException e)
+		{
+			// expected
+		}
+	}
+
+	public void testTimes()
+	{
+		assertEquals("3/8", new Fraction(1, 2).times(new Fraction(3, 4)).toString(false));
+		assertEquals("3/8", new Fraction(1, 2).mutate().multiplyBy(new Fraction(3, 4)).toString(false));
+		assertEquals("-2/3", new Fraction(1, 3).dividedBy(new Fraction(-1, 2)).toString(false));
+	}
+
+	private static void assertEquals(long a, long b, long expected, long actual)
+	{
+		assertEquals("a=" + PackedFraction.toString(a) + ", b=" + PackedFraction.toString(b) + ": expected "
+				+ PackedFraction.toString(expected) + ", got " + PackedFraction.toString(actual), expected, actual);
+	}
+
+	private static long newRandomFraction(Random random)
+	{
+		final int numerator = random.nextInt(2001) - 1000;
+		final int denominator = 1 + random.nextInt(random.nextBoolean() ? 12 : 1000);
+		return PackedFraction.valueOf(numerator, denominator);
+	}
+
+	// reference implementations, using BigInteger
+
+	private static long plus(long a, long b)
+	{
+		final BigInteger n = num(a).multiply(den(b)).add(num(b).multiply(den(a)));
+		return reduce(n, den(a).multiply(den(b)));
+	}
+
+	private static long times(long a, long b) {
+		return reduce(num(a).multiply(num(b)), den(a).multiply(den(b)));
+	}
+
+	private static long negate(long f) {
+		return reduce(num(f).negate(), den(f));
+	}
+
+	private static long reciprocal(long f) {
+		return reduce(den(f), num(f));
+	}
+
+	private static long reduce(BigInteger n, BigInteger d)
+	{
+		if(d.signum() < 0)
+		{
+			n = n.negate();
+			d = d.negate();
+		}
+
+		final BigInteger gcd = n.gcd(d);
+		return PackedFraction.valueOf(n.divide(gcd).intValue(), d.divide(gcd).intValue());
+	}
+
+	private static BigInteger num(long f) {
+		return BigInteger.valueOf(PackedFraction.numerator(f));
+	}
+
+	private static BigInteger den(long f) {
+		return BigInteger.valueOf(PackedFraction.denominator(f));
+	}
+
+	private static Double toDouble(long f) {
+		return PackedFraction.doubleValue(f);
+	}
+}
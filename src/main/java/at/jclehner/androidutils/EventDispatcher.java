@@ -21,8 +21,11 @@
 
 package at.jclehner.androidutils;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
-import java.util.WeakHashMap;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 import android.util.Log;
 import at.jclehner.rxdroid.util.Util;
@@ -30,6 +33,14 @@ import at.jclehner.rxdroid.util.WrappedCheckedException;
 
 /**
  * Very simple event bus implementation.
+ * <p>
+ * Receivers are only weakly referenced, and kept in a copy-on-write array, so that
+ * posting an event never blocks, and receivers can (un)register themselves from
+ * within an event handler.
+ * <p>
+ * Events can either be posted using a {@link Handler}, which calls the receiver's
+ * method directly, or by method name, in which case the method is resolved using
+ * reflection. Resolved methods are cached per receiver class.
  *
  * @author Joseph Lehner
  *
@@ -37,40 +48,166 @@ import at.jclehner.rxdroid.util.WrappedCheckedException;
  */
 public class EventDispatcher<T>
 {
+	/**
+	 * Delivers an event to a receiver.
+	 *
+	 * @param <T> the receiver type.
+	 * @param <A> the event's argument type.
+	 */
+	public interface Handler<T, A>
+	{
+		void dispatch(T receiver, A arg);
+	}
+
 	private static final String TAG = EventDispatcher.class.getSimpleName();
 	private static final boolean LOGV = false;
 
-	private final WeakHashMap<Object, Void> mReceivers =
-			new WeakHashMap<Object, Void>();
+	// methods resolved by post(String, ...), keyed by receiver class; shared by all instances
+	private static final ConcurrentHashMap<MethodKey, Method> sMethods =
+			new ConcurrentHashMap<MethodKey, Method>();
+	// stands in for methods that don't exist, as ConcurrentHashMap doesn't allow null values
+	private static final Method NO_METHOD;
+
+	static
+	{
+		try
+		{
+			NO_METHOD = EventDispatcher.class.getDeclaredMethod("noSuchMethod");
+		}
+		catch(NoSuchMethodException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static final WeakReference<Object>[] EMPTY = new WeakReference[0];
+
+	private final Executor mExecutor;
 
-	public EventDispatcher() {}
+	@SuppressWarnings("unchecked")
+	private volatile WeakReference<T>[] mReceivers = (WeakReference<T>[]) (Object) EMPTY;
+
+	public EventDispatcher() {
+		this(null);
+	}
+
+	/**
+	 * @param executor the executor used to deliver events. If <code>null</code>,
+	 * 	events are delivered on the thread calling <code>post()</code>.
+	 */
+	public EventDispatcher(Executor executor) {
+		mExecutor = executor;
+	}
 
 	public synchronized void register(T eventHandler)
 	{
-		mReceivers.put(eventHandler, null);
-		//if(LOGV) Log.v(TAG, "register: " + eventHandler.getClass() + " (" + mReceivers.size() + ")");
+		if(indexOf(eventHandler) != -1)
+			return;
+
+		final WeakReference<T>[] receivers = purge(mReceivers, null);
+		final WeakReference<T>[] newReceivers = Arrays.copyOf(receivers, receivers.length + 1);
+		newReceivers[receivers.length] = new WeakReference<T>(eventHandler);
+		mReceivers = newReceivers;
+		//if(LOGV) Log.v(TAG, "register: " + eventHandler.getClass() + " (" + mReceivers.length + ")");
 	}
 
 	public synchronized void unregister(T eventHandler) {
-		mReceivers.remove(eventHandler);
+		mReceivers = purge(mReceivers, eventHandler);
+	}
+
+	/**
+	 * Clears the receiver's reference, as if it had been garbage collected.
+	 * <p>
+	 * Intended for tests only.
+	 */
+	/* package */ synchronized void clearReference(T eventHandler)
+	{
+		final int i = indexOf(eventHandler);
+		if(i != -1)
+			mReceivers[i].clear();
+	}
+
+	/**
+	 * Returns <code>true</code> if there are no receivers left.
+	 */
+	public synchronized boolean isEmpty()
+	{
+		mReceivers = purge(mReceivers, null);
+		return mReceivers.length == 0;
+	}
+
+	/**
+	 * Posts an event to all receivers.
+	 * <p>
+	 * This method does not allocate, unless an executor was specified.
+	 */
+	public <A> void post(final Handler<? super T, A> handler, final A arg)
+	{
+		if(mExecutor == null)
+		{
+			dispatch(handler, arg);
+			return;
+		}
+
+		mExecutor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				dispatch(handler, arg);
+			}
+		});
 	}
 
 	public void post(String eventName, Object... args) {
 		post(eventName, Reflect.getTypes(args), args);
 	}
 
-	public synchronized void post(String eventName, Class<?>[] argTypes, Object... args)
+	public void post(final String eventName, final Class<?>[] argTypes, final Object... args)
 	{
-		if(LOGV) Log.v(TAG, "post: event=" + eventName + ": " + mReceivers.size() + " potential receivers");
+		if(mExecutor == null)
+		{
+			dispatch(eventName, argTypes, args);
+			return;
+		}
 
-		for(Object receiver : mReceivers.keySet())
+		mExecutor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				dispatch(eventName, argTypes, args);
+			}
+		});
+	}
+
+	private <A> void dispatch(Handler<? super T, A> handler, A arg)
+	{
+		// no locking required, as the array itself is never modified
+		final WeakReference<T>[] receivers = mReceivers;
+
+		for(int i = 0; i != receivers.length; ++i)
 		{
-			final Method m = Reflect.getMethod(receiver.getClass(), eventName, argTypes);
+			final T receiver = receivers[i].get();
+			if(receiver != null)
+				handler.dispatch(receiver, arg);
+		}
+	}
+
+	private void dispatch(String eventName, Class<?>[] argTypes, Object[] args)
+	{
+		final WeakReference<T>[] receivers = mReceivers;
+
+		if(LOGV) Log.v(TAG, "post: event=" + eventName + ": " + receivers.length + " potential receivers");
+
+		for(int i = 0; i != receivers.length; ++i)
+		{
+			final Object receiver = receivers[i].get();
+			if(receiver == null)
+				continue;
+
+			final Method m = getMethod(receiver.getClass(), eventName, argTypes);
 			if(m == null)
-			{
-				Log.w(TAG, "  no such method: " + receiver.getClass().getSimpleName() + "." + eventName + Util.arrayToString(argTypes));
 				continue;
-			}
 
 			try
 			{
@@ -83,4 +220,105 @@ public class EventDispatcher<T>
 			}
 		}
 	}
+
+	private int indexOf(T eventHandler)
+	{
+		final WeakReference<T>[] receivers = mReceivers;
+
+		for(int i = 0; i != receivers.length; ++i)
+		{
+			if(receivers[i].get() == eventHandler)
+				return i;
+		}
+
+		return -1;
+	}
+
+	private static Method getMethod(Class<?> clazz, String eventName, Class<?>[] argTypes)
+	{
+		final MethodKey key = new MethodKey(clazz, eventName, argTypes);
+		Method m = sMethods.get(key);
+
+		if(m == null)
+		{
+			m = Reflect.getMethod(clazz, eventName, argTypes);
+			if(m == null)
+			{
+				// only warn once per class
+				Log.w(TAG, "  no such method: " + clazz.getSimpleName() + "." + eventName + Util.arrayToString(argTypes));
+				m = NO_METHOD;
+			}
+
+			sMethods.put(key, m);
+		}
+
+		return m != NO_METHOD ? m : null;
+	}
+
+	/**
+	 * Only used as {@link #NO_METHOD}; never called.
+	 */
+	@SuppressWarnings("unused")
+	private static void noSuchMethod() {}
+
+	/**
+	 * Returns a copy of the array without cleared references, and without <code>eventHandler</code>.
+	 */
+	private static <T> WeakReference<T>[] purge(WeakReference<T>[] receivers, T eventHandler)
+	{
+		int count = 0;
+
+		for(WeakReference<T> ref : receivers)
+		{
+			final T receiver = ref.get();
+			if(receiver != null && receiver != eventHandler)
+				++count;
+		}
+
+		if(count == receivers.length)
+			return receivers;
+
+		@SuppressWarnings("unchecked")
+		final WeakReference<T>[] purged = new WeakReference[count];
+		int i = 0;
+
+		for(WeakReference<T> ref : receivers)
+		{
+			final T receiver = ref.get();
+			if(receiver != null && receiver != eventHandler)
+				purged[i++] = ref;
+		}
+
+		return purged;
+	}
+
+	private static final class MethodKey
+	{
+		private final Class<?> mClass;
+		private final String mName;
+		private final Class<?>[] mArgTypes;
+
+		MethodKey(Class<?> clazz, String name, Class<?>[] argTypes)
+		{
+			mClass = clazz;
+			mName = name;
+			mArgTypes = argTypes;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if(!(o instanceof MethodKey))
+				return false;
+
+			final MethodKey other = (MethodKey) o;
+			return mClass == other.mClass && mName.equals(other.mName)
+					&& Arrays.equals(mArgTypes, other.mArgTypes);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * mClass.hashCode() + mName.hashCode()) + Arrays.hashCode(mArgTypes);
+		}
+	}
 }
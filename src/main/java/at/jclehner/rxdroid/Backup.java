@@ -239,28 +239,34 @@ public class Backup
 			if(!isValid())
 				throw new IllegalStateException("Invalid backup file");
 
-			synchronized(Database.LOCK_DATA)
-			{
-				final String key = Settings.getString(Settings.Keys.BACKUP_KEY, "");
+			// otherwise, the old log might be applied to the restored database
+			Database.checkpoint();
 
-				try
+			synchronized(Database.LOCK_MAINTENANCE)
+			{
+				synchronized(Database.LOCK_DATA)
 				{
-					if(password != null)
-						mZip.setPassword(passwordToKey(password));
+					final String key = Settings.getString(Settings.Keys.BACKUP_KEY, "");
 
-					mZip.extractAll(RxDroid.getPackageInfo().applicationInfo.dataDir);
-				}
-				catch(ZipException e)
-				{
-					final String msg = e.getMessage();
-					if(password != null && msg.toLowerCase(Locale.US).contains("password"))
-						return false;
+					try
+					{
+						if(password != null)
+							mZip.setPassword(passwordToKey(password));
 
-					throw new WrappedCheckedException(e);
-				}
+						mZip.extractAll(RxDroid.getPackageInfo().applicationInfo.dataDir);
+					}
+					catch(ZipException e)
+					{
+						final String msg = e.getMessage();
+						if(password != null && msg.toLowerCase(Locale.US).contains("password"))
+							return false;
 
-				Settings.init(true);
-				Settings.putString(Settings.Keys.BACKUP_KEY, key);
+						throw new WrappedCheckedException(e);
+					}
+
+					Settings.init(true);
+					Settings.putString(Settings.Keys.BACKUP_KEY, key);
+				}
 			}
 
 			NotificationReceiver.rescheduleAlarmsAndUpdateNotification(false);
@@ -308,37 +314,42 @@ public class Backup
 			outFile = makeBackupFilename(sdf.format(new Date()));
 		}
 
-		synchronized(Database.LOCK_DATA)
-		{
-			final ZipFile zip = new ZipFile(outFile);
+		Database.checkpoint();
 
-			for(int i = 0; i != FILES.length; ++i)
+		synchronized(Database.LOCK_MAINTENANCE)
+		{
+			synchronized(Database.LOCK_DATA)
 			{
-				final File file = new File(dataDir, FILES[i]);
-				if(!file.exists())
-					continue;
+				final ZipFile zip = new ZipFile(outFile);
 
-				final ZipParameters zp = new ZipParameters();
-				zp.setRootFolderInZip(new File(FILES[i]).getParent());
-				zp.setCompressionLevel(Zip4jConstants.DEFLATE_LEVEL_NORMAL);
-				zp.setCompressionMethod(Zip4jConstants.COMP_DEFLATE);
-
-				if(!TextUtils.isEmpty(password))
+				for(int i = 0; i != FILES.length; ++i)
 				{
-					zp.setPassword(password);
-					zp.setEncryptionMethod(Zip4jConstants.ENC_METHOD_AES);
-					zp.setAesKeyStrength(Zip4jConstants.AES_STRENGTH_256);
-					zp.setEncryptFiles(true);
-					//zp.setCompressionMethod(Zip4jConstants.COMP_AES_ENC);
-				}
+					final File file = new File(dataDir, FILES[i]);
+					if(!file.exists())
+						continue;
 
-				zip.addFile(file, zp);
-			}
+					final ZipParameters zp = new ZipParameters();
+					zp.setRootFolderInZip(new File(FILES[i]).getParent());
+					zp.setCompressionLevel(Zip4jConstants.DEFLATE_LEVEL_NORMAL);
+					zp.setCompressionMethod(Zip4jConstants.COMP_DEFLATE);
 
-			if(time == -1)
-				time = System.currentTimeMillis();
+					if(!TextUtils.isEmpty(password))
+					{
+						zp.setPassword(password);
+						zp.setEncryptionMethod(Zip4jConstants.ENC_METHOD_AES);
+						zp.setAesKeyStrength(Zip4jConstants.AES_STRENGTH_256);
+						zp.setEncryptFiles(true);
+						//zp.setCompressionMethod(Zip4jConstants.COMP_AES_ENC);
+					}
+
+					zip.addFile(file, zp);
+				}
+
+				if(time == -1)
+					time = System.currentTimeMillis();
 
-			zip.setComment("rxdbak1:" + time + ":DBv" + DatabaseHelper.DB_VERSION);
+				zip.setComment("rxdbak1:" + time + ":DBv" + DatabaseHelper.DB_VERSION);
+			}
 		}
 
 		return outFile;
@@ -200,6 +200,11 @@ public class DoseDialog extends AlertDialog implements OnChangedListener, Databa
 	@Override
 	public void onEntryCreated(Entry entry, int flags) {}
 
+	@Override
+	public void onEntriesChanged(Database.Changes changes, int flags) {
+		changes.dispatchTo(this, flags);
+	}
+
 	@Override
 	public void onEntryDeleted(Entry entry, int flags)
 	{
@@ -296,7 +301,7 @@ public class DoseDialog extends AlertDialog implements OnChangedListener, Databa
 				mDrug.getCurrentSupply().minus(mDose) : Fraction.ZERO;
 
 		mDrug.setCurrentSupply(newSupply.isNegative() ? Fraction.ZERO : newSupply);
-		Database.update(mDrug, Database.FLAG_DONT_NOTIFY_LISTENERS);
+		Database.updateCurrentSupply(mDrug, Database.FLAG_DONT_NOTIFY_LISTENERS);
 
 		DoseEvent intake = new DoseEvent(mDrug, mDate, mDoseTime, mDose);
 		Database.create(intake);
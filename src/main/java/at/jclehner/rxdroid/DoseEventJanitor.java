@@ -23,7 +23,6 @@ package at.jclehner.rxdroid;
 
 import java.util.Calendar;
 import java.util.Date;
-import java.util.List;
 
 import android.util.Log;
 import at.jclehner.rxdroid.Settings.DoseTimeInfo;
@@ -36,6 +35,7 @@ import at.jclehner.rxdroid.db.Patient;
 import at.jclehner.rxdroid.db.Schedule;
 import at.jclehner.rxdroid.util.Constants;
 import at.jclehner.rxdroid.util.DateTime;
+import at.jclehner.rxdroid.util.EpochDay;
 
 public enum DoseEventJanitor implements
 		NotificationReceiver.OnDoseTimeChangeListener,
@@ -67,48 +67,30 @@ public enum DoseEventJanitor implements
 		if(Database.countAll(Patient.class) == 0)
 			Database.create(new Patient(), Database.FLAG_DONT_NOTIFY_LISTENERS);
 
+		final Database.Batch batch = Database.batch(Database.FLAG_DONT_NOTIFY_LISTENERS);
+
 		for(Drug drug : Database.getAll(Drug.class))
-			createAutoDoseEvents(drug);
+			createAutoDoseEvents(batch, drug);
+
+		batch.commit();
 
 		////////////////////////////////////
 
 		final Date today = DateTime.today();
+		final Date oldestPossibleHistoryDate = Settings.getOldestPossibleHistoryDate(today);
+		if(oldestPossibleHistoryDate == null)
+			return;
 
-		final List<DoseEvent> events = Database.getAll(DoseEvent.class);
-//		final ArrayList<Integer> idsToDelete = new ArrayList<Integer>();
-		final int oldIntakeCount = events.size();
-		int deleteCount = 0;
-
-		Date oldest = null, newest = null;
-
-		for(DoseEvent intake : events)
-		{
-			final Date date = intake.getDate();
-
-			if(Settings.isPastMaxHistoryAge(today, date))
-			{
-				if(oldest == null || date.before(oldest))
-					oldest = date;
-
-				if(newest == null || date.after(newest))
-					newest = date;
-
-				++deleteCount;
-				Database.delete(intake, Database.FLAG_DONT_NOTIFY_LISTENERS);
-
-				//intake.getDrug().setLastDosesClearedDate(date);
-
-//				idsToDelete.add(intake.getId());
-			}
-		}
-
-//		Database.deleteByIds(intake.class, idsToDelete);
+		final Database.PruneResult result = Database.deleteDoseEventsBefore(oldestPossibleHistoryDate);
 
-		final int deletedPercentage = (int) (deleteCount == 0 ? 0 : (deleteCount * 100.0) / oldIntakeCount);
+		final Date oldest = result.getOldestDate();
+		Date newest = result.getNewestDate();
 
-		Log.i(TAG, "Deleted " + deleteCount + " entries (~" + deletedPercentage + "%); oldest: " +
+		// Database.countAll() only counts the cached events, so it can't be used to
+		// calculate the percentage of deleted events
+		Log.i(TAG, "Deleted " + result.getCount() + " entries; oldest: " +
 				(oldest == null ? "N/A" : DateTime.toDateString(oldest)) + ", newest: " +
-				(oldest == null ? "N/A" : DateTime.toDateString(newest)));
+				(newest == null ? "N/A" : DateTime.toDateString(newest)));
 
 		if(newest != null)
 		{
@@ -131,56 +113,63 @@ public enum DoseEventJanitor implements
 
 	private static void createDoseEvents(Date date, int doseTime)
 	{
+		final Database.Batch batch = Database.batch(Database.FLAG_DONT_NOTIFY_LISTENERS);
+		final int day = EpochDay.fromDate(date);
+
 		for(Drug drug : Database.getAll(Drug.class))
-			createDoseEvent(drug, date, doseTime);
+			createDoseEvent(batch, drug, day, doseTime);
+
+		batch.commit();
 	}
 
-	private static void createAutoDoseEvents(Drug drug)
+	private static void createAutoDoseEvents(Database.Batch batch, Drug drug)
 	{
 		if(!drug.hasAutoDoseEvents())
 			return;
 
-		Date date = drug.getLastAutoDoseEventCreationDate();
+		final Date date = drug.getLastAutoDoseEventCreationDate();
 		if(date == null)
 			throw new IllegalStateException();
 
 		if(LOGV) Log.v(TAG, "createMissingIntakes: drug=" + drug + ", date=" + date);
 
 		final DoseTimeInfo dtInfo = Settings.getDoseTimeInfo();
+		final int activeDay = EpochDay.fromDate(dtInfo.activeDate());
 
-		while(date.before(dtInfo.activeDate()))
+		for(int day = EpochDay.fromDate(date); day < activeDay; ++day)
 		{
 			for(int doseTime : Constants.DOSE_TIMES)
 			{
-				createDoseEvent(drug, date, doseTime);
+				createDoseEvent(batch, drug, day, doseTime);
 			}
 
-			if(LOGV) Log.v(TAG, "  date=" + date);
-			date = DateTime.add(date, Calendar.DAY_OF_MONTH, 1);
+			if(LOGV) Log.v(TAG, "  day=" + day);
 		}
 
 		for(int doseTime = Schedule.TIME_MORNING; doseTime != dtInfo.nextDoseTime(); ++doseTime)
-			createDoseEvent(drug, dtInfo.activeDate(), doseTime);
+			createDoseEvent(batch, drug, activeDay, doseTime);
 	}
 
-	private static void createDoseEvent(Drug drug, Date date, int doseTime)
+	private static void createDoseEvent(Database.Batch batch, Drug drug, int day, int doseTime)
 	{
 		if(!drug.hasAutoDoseEvents())
 			return;
 
-		final Fraction dose = drug.getDose(doseTime, date);
+		final Fraction dose = drug.getDoseOnDay(doseTime, day);
 		if(dose.isZero())
 			return;
 
-		final Fraction newSupply = drug.getRefillSize() != 0 ?
-				drug.getCurrentSupply().minus(dose) : Fraction.ZERO;
+		final long newSupply = drug.getRefillSize() != 0 ? PackedFraction.minus(
+				PackedFraction.valueOf(drug.getCurrentSupply()), PackedFraction.valueOf(dose)) : PackedFraction.ZERO;
 
-		if(newSupply.isNegative())
+		if(PackedFraction.isNegative(newSupply))
 			return;
 
-		if(Entries.countDoseEvents(drug, date, doseTime) != 0)
+		if(Entries.countDoseEventsOnDay(drug, day, doseTime) != 0)
 			return;
 
+		final Date date = EpochDay.toDate(day);
+
 		if(BuildConfig.DEBUG) Log.v(TAG, "createDoseEvent: drug=" + drug + ", date=" + date + ", doseTime=" + doseTime);
 
 		final DoseEvent intake = new DoseEvent(drug, date, doseTime, dose);
@@ -193,14 +182,14 @@ public enum DoseEventJanitor implements
 			final Date lastAutoIntakeCreationDate = drug.getLastAutoDoseEventCreationDate();
 			if(lastAutoIntakeCreationDate == null)
 				drug.setLastAutoDoseEventCreationDate(DateTime.yesterday());
-			else if(DateTime.diffDays(date, lastAutoIntakeCreationDate) != 1)
-				drug.setLastAutoDoseEventCreationDate(DateTime.add(date, Calendar.DAY_OF_MONTH, -1));
+			else if(EpochDay.fromDate(lastAutoIntakeCreationDate) - day != 1)
+				drug.setLastAutoDoseEventCreationDate(EpochDay.toDate(day - 1));
 		}
 
-		drug.setCurrentSupply(newSupply);
+		drug.setCurrentSupply(PackedFraction.toFraction(newSupply));
 
-		Database.create(intake, Database.FLAG_DONT_NOTIFY_LISTENERS);
-		Database.update(drug, Database.FLAG_DONT_NOTIFY_LISTENERS);
+		batch.create(intake);
+		batch.update(drug);
 	}
 }
 
@@ -92,6 +92,8 @@ public class DoseView extends FrameLayout implements OnChangeListener
 
 	private int mStatus = STATUS_INDETERMINATE;
 
+	private boolean mIsAttached = false;
+
 	public DoseView(Context context) {
 		this(context, null);
 	}
@@ -162,6 +164,9 @@ public class DoseView extends FrameLayout implements OnChangeListener
 
 		mDoseTimeIcon.setImageResource(DOSE_TIME_DRAWABLES[doseTime]);
 		mDoseTime = doseTime;
+
+		if(mIsAttached && mDrug != null)
+			subscribe();
 	}
 
 	public int getDoseTime() {
@@ -194,6 +199,9 @@ public class DoseView extends FrameLayout implements OnChangeListener
 		mDate = date;
 		mDrug = drug;
 
+		if(mIsAttached)
+			subscribe();
+
 		//mDose = getDose();
 
 		mDisplayDose = new MutableFraction();
@@ -284,19 +292,55 @@ public class DoseView extends FrameLayout implements OnChangeListener
 		}
 	}
 
+	@Override
+	public void onEntriesChanged(Database.Changes changes, int flags)
+	{
+		if(mDrug == null || !isAffectedBy(changes.getCreated()) && !isAffectedBy(changes.getUpdated())
+				&& !isAffectedBy(changes.getDeleted()))
+		{
+			return;
+		}
+
+		// Recalculate once, instead of updating the view for each entry
+		final Drug drug = Drug.find(mDrug.getId());
+		if(drug != null)
+			setDoseFromDrugAndDate(mDate, drug);
+	}
+
+	private boolean isAffectedBy(List<Entry> entries)
+	{
+		for(Entry entry : entries)
+		{
+			if(entry instanceof Drug && entry.getId() == mDrug.getId())
+				return true;
+			else if(entry instanceof DoseEvent && isApplicableDoseEvent((DoseEvent) entry))
+				return true;
+		}
+
+		return false;
+	}
+
 	@Override
 	protected void onAttachedToWindow()
 	{
 		super.onAttachedToWindow();
+		mIsAttached = true;
 		if(mDrug != null)
-			Database.registerEventListener(this);
+			subscribe();
 	}
 
 	@Override
 	protected void onDetachedFromWindow()
 	{
 		super.onDetachedFromWindow();
-		Database.unregisterEventListener(this);
+		mIsAttached = false;
+		Database.unsubscribe(this);
+	}
+
+	private void subscribe()
+	{
+		// only be notified of changes to our own drug and dose events
+		Database.subscribe(this, mDrug.getId(), mDate, mDoseTime);
 	}
 
 	private boolean isApplicableDoseEvent(DoseEvent intake)
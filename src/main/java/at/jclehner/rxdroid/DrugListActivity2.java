@@ -1167,18 +1167,21 @@ public class DrugListActivity2 extends AppCompatActivity implements
 					{
 						if(menuItem.getItemId() == R.id.menuitem_remove_dose)
 						{
+							final Database.Batch batch = Database.batch();
 							final Fraction.MutableFraction dose = new Fraction.MutableFraction();
 							for(DoseEvent intake : Entries.findDoseEvents(drug, mDate, doseTime))
 							{
 								dose.add(intake.getDose());
-								Database.delete(intake);
+								batch.delete(intake);
 							}
 
 							if(drug.getRefillSize() != 0)
 							{
 								drug.setCurrentSupply(drug.getCurrentSupply().plus(dose));
-								Database.update(drug);
+								batch.updateCurrentSupply(drug);
 							}
+
+							batch.commit();
 						}
 						else if(menuItem.getItemId() == R.id.menuitem_take)
 						{
@@ -1454,5 +1457,14 @@ public class DrugListActivity2 extends AppCompatActivity implements
 		{
 			reloadLoader();
 		}
+
+		@Override
+		public void onEntriesChanged(Database.Changes changes, int flags)
+		{
+			if(!changes.getUpdated().isEmpty() || changes.contains(Drug.class))
+				reloadLoader();
+			else if(!changes.getCreated().isEmpty())
+				getActivity().invalidateOptionsMenu();
+		}
 	}
 }
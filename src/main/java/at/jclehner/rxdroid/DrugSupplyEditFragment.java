@@ -123,7 +123,7 @@ public class DrugSupplyEditFragment extends DialogFragment
 		{
 			final Drug drug = getDrug();
 			drug.setCurrentSupply(newValue);
-			Database.update(drug);
+			Database.updateCurrentSupply(drug);
 		}
 	};
 }
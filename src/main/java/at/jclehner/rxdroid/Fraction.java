@@ -51,7 +51,7 @@ public class Fraction extends Number implements Comparable<Number>, Parcelable
 		 * @return a reference to this instance
 		 */
 		public MutableFraction add(Fraction other) {
-			return Fraction.add(this, other);
+			return set(PackedFraction.plus(PackedFraction.valueOf(this), PackedFraction.valueOf(other)));
 		}
 
 		/**
@@ -59,7 +59,7 @@ public class Fraction extends Number implements Comparable<Number>, Parcelable
 		 * @return a reference to this object
 		 */
 		public MutableFraction add(int n) {
-			return Fraction.add(this, n);
+			return set(PackedFraction.plus(PackedFraction.valueOf(this), n));
 		}
 
 		/**
@@ -67,7 +67,7 @@ public class Fraction extends Number implements Comparable<Number>, Parcelable
 		 * @return a reference to this instance
 		 */
 		public MutableFraction subtract(Fraction other) {
-			return Fraction.add(this, other.negate());
+			return set(PackedFraction.minus(PackedFraction.valueOf(this), PackedFraction.valueOf(other)));
 		}
 
 		/**
@@ -75,23 +75,30 @@ public class Fraction extends Number implements Comparable<Number>, Parcelable
 		 * @return a reference to this instance
 		 */
 		public MutableFraction subtract(int n) {
-			return Fraction.add(this, -n);
+			return set(PackedFraction.minus(PackedFraction.valueOf(this), PackedFraction.valueOf(n)));
 		}
 
 		public MutableFraction multiplyBy(Fraction other) {
-			return Fraction.multiplyBy(this, other);
+			return set(PackedFraction.times(PackedFraction.valueOf(this), PackedFraction.valueOf(other)));
 		}
 
 		public MutableFraction multiplyBy(int n) {
-			return Fraction.multiplyBy(this, n);
+			return set(PackedFraction.times(PackedFraction.valueOf(this), n));
 		}
 
 		public MutableFraction divideBy(Fraction other) {
-			return Fraction.divideBy(this, other);
+			return set(PackedFraction.dividedBy(PackedFraction.valueOf(this), PackedFraction.valueOf(other)));
 		}
 
 		public MutableFraction divideBy(int n) {
-			return Fraction.divideBy(this, n);
+			return set(PackedFraction.dividedBy(PackedFraction.valueOf(this), PackedFraction.valueOf(n)));
+		}
+
+		private MutableFraction set(long f)
+		{
+			mNumerator = PackedFraction.numerator(f);
+			mDenominator = PackedFraction.denominator(f);
+			return this;
 		}
 	}
 
@@ -173,47 +180,43 @@ public class Fraction extends Number implements Comparable<Number>, Parcelable
 		return new MutableFraction(this);
 	}
 
-	public Fraction plus(final Fraction other)
-	{
-		Fraction result = new Fraction(this);
-		return add(result, other);
+	public Fraction plus(final Fraction other) {
+		return PackedFraction.toFraction(PackedFraction.plus(PackedFraction.valueOf(this), PackedFraction.valueOf(other)));
 	}
 
-	public Fraction plus(int n)
-	{
-		Fraction result = new Fraction(this);
-		return add(result, n);
+	public Fraction plus(int n) {
+		return PackedFraction.toFraction(PackedFraction.plus(PackedFraction.valueOf(this), n));
 	}
 
 	public Fraction minus(final Fraction other) {
-		return plus(other.negate());
+		return PackedFraction.toFraction(PackedFraction.minus(PackedFraction.valueOf(this), PackedFraction.valueOf(other)));
 	}
 
 	public Fraction minus(int n) {
-		return plus(-n);
+		return PackedFraction.toFraction(PackedFraction.minus(PackedFraction.valueOf(this), PackedFraction.valueOf(n)));
 	}
 
 	public Fraction times(Fraction other) {
-		return multiplyBy(new Fraction(this), other);
+		return PackedFraction.toFraction(PackedFraction.times(PackedFraction.valueOf(this), PackedFraction.valueOf(other)));
 	}
 
 	public Fraction times(int n) {
-		return multiplyBy(new Fraction(this), n);
+		return PackedFraction.toFraction(PackedFraction.times(PackedFraction.valueOf(this), n));
 	}
 
 	public Fraction dividedBy(Fraction other) {
-		return divideBy(new Fraction(this), other);
+		return PackedFraction.toFraction(PackedFraction.dividedBy(PackedFraction.valueOf(this), PackedFraction.valueOf(other)));
 	}
 
 	public Fraction dividedBy(int n) {
-		return divideBy(new Fraction(this), n);
+		return PackedFraction.toFraction(PackedFraction.dividedBy(PackedFraction.valueOf(this), PackedFraction.valueOf(n)));
 	}
 
 	/**
 	 * Returns the fraction's negative form.
 	 */
 	public Fraction negate() {
-		return new Fraction(-mNumerator, mDenominator);
+		return PackedFraction.toFraction(PackedFraction.negate(PackedFraction.valueOf(this)));
 	}
 
 	/**
@@ -285,17 +288,7 @@ public class Fraction extends Number implements Comparable<Number>, Parcelable
 			return 0;
 
 		if(other instanceof Fraction)
-		{
-			Fraction otherFraction = (Fraction) other;
-
-			int a = this.mNumerator * otherFraction.mDenominator;
-			int b = otherFraction.mNumerator * this.mDenominator;
-
-			if(a == b)
-				return 0;
-
-			return a < b ? -1 : 1;
-		}
+			return PackedFraction.compare(PackedFraction.valueOf(this), PackedFraction.valueOf((Fraction) other));
 		else
 			return Double.compare(this.doubleValue(), other.doubleValue());
 	}
@@ -453,92 +446,6 @@ public class Fraction extends Number implements Comparable<Number>, Parcelable
 		mDenominator /= divisor;
 	}
 
-	private static <F extends Fraction> F add(F dest, Fraction other)
-	{
-		if(other.mDenominator == 1)
-			return add(dest, other.mNumerator);
-
-		int numerator, denominator;
-
-		if(dest.mDenominator != other.mDenominator)
-		{
-			int lcm = findLCM(dest.mDenominator, other.mDenominator);
-
-			int multThis = lcm / dest.mDenominator;
-			int multOther = lcm / other.mDenominator;
-
-			denominator = lcm;
-			numerator = dest.mNumerator * multThis + other.mNumerator * multOther;
-		}
-		else
-		{
-			numerator = dest.mNumerator + other.mNumerator;
-			denominator = dest.mDenominator;
-		}
-
-		// this reduces the resulting fraction
-		dest.init(0, numerator, denominator);
-
-		return dest;
-	}
-
-	private static <F extends Fraction> F add(F dest, int n)
-	{
-		dest.mNumerator += n * dest.mDenominator;
-		return dest;
-	}
-
-	private static <F extends Fraction> F multiplyBy(F dest, Fraction other)
-	{
-		final int numerator = dest.mNumerator * other.mNumerator;
-		final int denominator = dest.mDenominator * dest.mNumerator;
-
-		dest.init(0, numerator, denominator);
-		return dest;
-	}
-
-	private static <F extends Fraction> F multiplyBy(F dest, int n)
-	{
-		dest.init(0, dest.mNumerator * n, dest.mDenominator);
-		return dest;
-	}
-
-	private static <F extends Fraction> F divideBy(F dest, Fraction other)
-	{
-		final int numerator = dest.mNumerator * other.mDenominator;
-		final int denominator = dest.mDenominator * other.mNumerator;
-
-		dest.init(0, numerator, denominator);
-		return dest;
-	}
-
-	private static <F extends Fraction> F divideBy(F dest, int n)
-	{
-		dest.init(0, dest.mNumerator, dest.mDenominator * n);
-		return dest;
-	}
-
-	/**
-	 * Finds the lowest common multiple of two integers.
-	 */
-	private static int findLCM(int n1, int n2)
-	{
-		int product = n1 * n2;
-
-		do
-		{
-			if(n1 < n2)
-			{
-				int tmp = n1;
-				n1 = n2;
-				n2 = tmp;
-			}
-			n1 = n1 % n2;
-		} while(n1 != 0);
-
-		return product / n2;
-	}
-
 	/**
 	 * Finds the greatest common divisor of two integers.
 	 */
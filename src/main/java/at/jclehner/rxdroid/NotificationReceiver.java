@@ -76,8 +76,6 @@ public class NotificationReceiver extends BroadcastReceiver
 	private static final int LED_ON_MS = 500;
 	private static final int LED_OFF_MS = LED_CYCLE_MS - LED_ON_MS;
 
-	private static final Class<?>[] EVENT_HANDLER_ARG_TYPES = { Date.class, int.class };
-
 	public interface OnDoseTimeChangeListener
 	{
 		void onDoseTimeBegin(Date date, int doseTime);
@@ -207,9 +205,18 @@ public class NotificationReceiver extends BroadcastReceiver
 				{
 
 					final boolean isDoseTimeEnd = intent.getBooleanExtra(EXTRA_IS_DOSE_TIME_END, false);
-					final String eventName = isDoseTimeEnd ? "onDoseTimeEnd" : "onDoseTimeBegin";
 
-					sEventMgr.post(eventName, EVENT_HANDLER_ARG_TYPES, date, doseTime);
+					sEventMgr.post(new EventDispatcher.Handler<OnDoseTimeChangeListener, Date>() {
+
+						@Override
+						public void dispatch(OnDoseTimeChangeListener receiver, Date date)
+						{
+							if(isDoseTimeEnd)
+								receiver.onDoseTimeEnd(date, doseTime);
+							else
+								receiver.onDoseTimeBegin(date, doseTime);
+						}
+					}, date);
 				}
 			}
 
@@ -0,0 +1,193 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid;
+
+/**
+ * Fraction arithmetic on primitive <code>long</code>s.
+ * <p>
+ * A packed fraction stores its numerator in the upper, and its denominator in
+ * the lower 32 bits. Like {@link Fraction}s, packed fractions are always reduced,
+ * and the sign is kept in the numerator, so two packed fractions are equal if,
+ * and only if their values are equal.
+ * <p>
+ * None of these functions allocate memory, except {@link #toFraction(long)}.
+ * Intermediate results are computed using 64 bits; if a reduced result does not
+ * fit into an <code>int</code> numerator and denominator, an {@link ArithmeticException}
+ * is thrown, instead of silently overflowing.
+ *
+ * @author Joseph Lehner
+ */
+public final class PackedFraction
+{
+	public static final long ZERO = valueOf(0);
+
+	private PackedFraction() {}
+
+	public static long valueOf(int integer) {
+		return pack(integer, 1);
+	}
+
+	/**
+	 * Packs a fraction.
+	 *
+	 * @throws ArithmeticException if <code>denominator</code> is zero.
+	 */
+	public static long valueOf(int numerator, int denominator) {
+		return reduce(numerator, denominator);
+	}
+
+	public static long valueOf(Fraction f) {
+		// Fractions are always reduced
+		return pack(f.mNumerator, f.mDenominator);
+	}
+
+	public static Fraction toFraction(long f)
+	{
+		final Fraction result = new Fraction();
+		result.mNumerator = numerator(f);
+		result.mDenominator = denominator(f);
+		return result;
+	}
+
+	public static int numerator(long f) {
+		return (int) (f >> 32);
+	}
+
+	public static int denominator(long f) {
+		return (int) f;
+	}
+
+	public static boolean isZero(long f) {
+		return numerator(f) == 0;
+	}
+
+	public static boolean isNegative(long f) {
+		return numerator(f) < 0;
+	}
+
+	public static long plus(long a, long b)
+	{
+		final long ad = denominator(a);
+		final long bd = denominator(b);
+
+		if(ad == bd)
+			return reduce((long) numerator(a) + numerator(b), ad);
+
+		// using the lowest common denominator keeps the intermediates small
+		final long gcd = findGCD(ad, bd);
+		return reduce(numerator(a) * (bd / gcd) + numerator(b) * (ad / gcd), ad / gcd * bd);
+	}
+
+	public static long plus(long f, int n) {
+		return reduce(numerator(f) + (long) n * denominator(f), denominator(f));
+	}
+
+	public static long minus(long a, long b)
+	{
+		final long ad = denominator(a);
+		final long bd = denominator(b);
+
+		if(ad == bd)
+			return reduce((long) numerator(a) - numerator(b), ad);
+
+		final long gcd = findGCD(ad, bd);
+		return reduce(numerator(a) * (bd / gcd) - numerator(b) * (ad / gcd), ad / gcd * bd);
+	}
+
+	public static long times(long a, long b) {
+		return reduce((long) numerator(a) * numerator(b), (long) denominator(a) * denominator(b));
+	}
+
+	public static long times(long f, int n) {
+		return reduce((long) numerator(f) * n, denominator(f));
+	}
+
+	/**
+	 * @throws ArithmeticException if <code>b</code> is zero.
+	 */
+	public static long dividedBy(long a, long b) {
+		return reduce((long) numerator(a) * denominator(b), (long) denominator(a) * numerator(b));
+	}
+
+	public static long negate(long f) {
+		return reduce(-(long) numerator(f), denominator(f));
+	}
+
+	/**
+	 * Compares two packed fractions.
+	 *
+	 * @return a negative value, zero, or a positive value, if <code>a</code>
+	 * 	is less than, equal to, or greater than <code>b</code>.
+	 */
+	public static int compare(long a, long b)
+	{
+		// can't overflow, as both products are less than 2^62
+		final long x = (long) numerator(a) * denominator(b);
+		final long y = (long) numerator(b) * denominator(a);
+		return x < y ? -1 : (x == y ? 0 : 1);
+	}
+
+	public static double doubleValue(long f) {
+		return (double) numerator(f) / denominator(f);
+	}
+
+	public static String toString(long f) {
+		return numerator(f) + "/" + denominator(f);
+	}
+
+	private static long pack(int numerator, int denominator) {
+		return ((long) numerator << 32) | (denominator & 0xffffffffL);
+	}
+
+	private static long reduce(long numerator, long denominator)
+	{
+		if(denominator == 0)
+			throw new ArithmeticException("Division by zero");
+
+		if(denominator < 0)
+		{
+			numerator = -numerator;
+			denominator = -denominator;
+		}
+
+		final long gcd = findGCD(Math.abs(numerator), denominator);
+		numerator /= gcd;
+		denominator /= gcd;
+
+		if(numerator != (int) numerator || denominator != (int) denominator)
+			throw new ArithmeticException("Overflow: " + numerator + "/" + denominator);
+
+		return pack((int) numerator, (int) denominator);
+	}
+
+	private static long findGCD(long a, long b)
+	{
+		while(b != 0)
+		{
+			final long t = a % b;
+			a = b;
+			b = t;
+		}
+
+		return a;
+	}
+}
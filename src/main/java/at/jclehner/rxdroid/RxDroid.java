@@ -50,7 +50,9 @@ import java.util.WeakHashMap;
 
 import at.jclehner.rxdroid.db.Database;
 import at.jclehner.rxdroid.db.DoseEvent;
+import at.jclehner.rxdroid.db.Drug;
 import at.jclehner.rxdroid.db.Entry;
+import at.jclehner.rxdroid.db.Patient;
 import at.jclehner.rxdroid.util.Components;
 //import at.jclehner.rxdroid.util.EmailIntentSender;
 import at.jclehner.rxdroid.util.WrappedCheckedException;
@@ -314,5 +316,13 @@ public class RxDroid extends Application
 		public void onEntryCreated(Entry entry, int flags) {
 			NotificationReceiver.rescheduleAlarmsAndUpdateNotification(entry instanceof DoseEvent);
 		}
+
+		@Override
+		public void onEntriesChanged(Database.Changes changes, int flags)
+		{
+			final boolean silent = changes.getDeleted().isEmpty() && !changes.contains(Drug.class)
+					&& !changes.contains(Patient.class);
+			NotificationReceiver.rescheduleAlarmsAndUpdateNotification(silent);
+		}
 	};
 }
@@ -104,6 +104,10 @@ public final class Settings
 		public static final String BOOT_COMPLETED_TIMESTAMP = "boot_completed_timestamp";
 		public static final String LAST_NOT_STARTED_WARNING_TIMESTAMP = "last_not_started_timestamp";
 		public static final String BACKUP_KEY = "backup_key";
+		public static final String DB_DELETED_ROWS = "db_deleted_rows";
+		public static final String DB_MAINTENANCE_DATE = "db_maintenance_date";
+		public static final String DB_SIZE_BEFORE_MAINTENANCE = "db_size_before_maintenance";
+		public static final String DB_SIZE_AFTER_MAINTENANCE = "db_size_after_maintenance";
 
 		public static final String DEBUG_FORCE_SPLASH_WARNING = "debug_force_splash_warning";
 	}
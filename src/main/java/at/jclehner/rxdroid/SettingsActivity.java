@@ -222,7 +222,21 @@ public class SettingsActivity extends AppCompatActivity
 			{
 				final long millis = Database.getLoadingTimeMillis();
 				final String str = new Formatter((Locale) null).format("%1.3fs", millis / 1000f).toString();
-				p.setSummary(getString(R.string._msg_db_stats, str));
+				final Date maintenanceDate = Settings.getDate(Settings.Keys.DB_MAINTENANCE_DATE);
+				if(maintenanceDate != null)
+				{
+					final Context context = getActivity();
+					final String before = android.text.format.Formatter.formatShortFileSize(context,
+							Settings.getLong(Settings.Keys.DB_SIZE_BEFORE_MAINTENANCE, 0));
+					final String after = android.text.format.Formatter.formatShortFileSize(context,
+							Settings.getLong(Settings.Keys.DB_SIZE_AFTER_MAINTENANCE, 0));
+
+					p.setSummary(getString(R.string._msg_db_stats, str) + "\n\n" + getString(
+							R.string._msg_db_maintenance_stats, DateTime.toNativeDateAndTime(maintenanceDate),
+							before, after));
+				}
+				else
+					p.setSummary(getString(R.string._msg_db_stats, str));
 			}
 
 			removeDisabledPreferences(getPreferenceScreen());
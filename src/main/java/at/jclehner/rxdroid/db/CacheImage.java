@@ -0,0 +1,501 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.zip.CRC32;
+
+import android.util.Log;
+import at.jclehner.rxdroid.Fraction;
+
+/**
+ * A binary image of the entry cache, used to speed up cold starts.
+ * <p>
+ * Loading all entries through ORMLite is comparatively slow, and since the
+ * process is usually started by an alarm, this happens quite often. Once the
+ * writer has become idle, the contents of the cache are thus written to a file,
+ * which is memory-mapped and read back instead of querying the database
+ * when the process is next started.
+ * <p>
+ * The image is only used if its format version and database version match, if its
+ * checksum is valid, if the database file has not been modified since the image
+ * was written, and if the default timezone has not changed (dates are stored as local
+ * time in the database, but as milliseconds in the image). Additionally, the image
+ * is deleted before any write to the database. In all other cases, {@link #read(Class[])} returns <code>null</code>, and the
+ * entries must be loaded from the database.
+ *
+ * @author Joseph Lehner
+ */
+/* package */ final class CacheImage
+{
+	private static final String TAG = CacheImage.class.getSimpleName();
+
+	/* package */ static final String FILE_NAME = "entries.img";
+
+	private static final int MAGIC = 0x52784369; // "RxCi"
+	private static final int FORMAT_VERSION = 3;
+
+	// magic, format version, db version, db file stamp (4 longs), ...
+	private static final int WINDOW_START_OFFSET = 4 + 4 + 4 + 4 * 8;
+	// ..., window start, payload length, checksum, timezone offset, timezone ID
+	// length; followed by the timezone ID itself
+	private static final int HEADER_SIZE = WINDOW_START_OFFSET + 4 + 4 + 8 + 4 + 4;
+
+	private static final long NULL_DATE = Long.MIN_VALUE;
+	// not a valid packed fraction, as the denominator is zero
+	private static final long NULL_FRACTION = 0;
+
+	private final File mFile;
+	private final File mDbFile;
+	private final File mWalFile;
+
+	// false once we know that there is no image file
+	private volatile boolean mMayExist = true;
+
+	CacheImage(File file, File dbFile)
+	{
+		mFile = file;
+		mDbFile = dbFile;
+		mWalFile = new File(dbFile.getPath() + "-wal");
+	}
+
+	/* package */ static final class Contents
+	{
+		// in the same order as the classes passed to read()
+		final List<List<? extends Entry>> entries;
+		// see DoseEventHistory.getWindowStart()
+		final int doseEventWindowStart;
+
+		Contents(List<List<? extends Entry>> entries, int doseEventWindowStart)
+		{
+			this.entries = entries;
+			this.doseEventWindowStart = doseEventWindowStart;
+		}
+	}
+
+	/**
+	 * Reads the entries of the given classes.
+	 *
+	 * @return the contents, or <code>null</code> if the image is missing, stale or corrupt.
+	 */
+	Contents read(Class<?>[] classes)
+	{
+		if(!mFile.exists())
+		{
+			mMayExist = false;
+			return null;
+		}
+
+		FileInputStream is = null;
+
+		try
+		{
+			is = new FileInputStream(mFile);
+			final FileChannel channel = is.getChannel();
+			final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			final String error = checkHeader(buffer);
+			if(error != null)
+			{
+				Log.i(TAG, "Ignoring image: " + error);
+				invalidate();
+				return null;
+			}
+
+			final int windowStart = buffer.getInt(WINDOW_START_OFFSET);
+
+			final Input in = new Input(buffer);
+			final List<List<? extends Entry>> result = new ArrayList<List<? extends Entry>>(classes.length);
+
+			for(Class<?> clazz : classes)
+			{
+				final int count = in.readInt();
+				final List<Entry> entries = new ArrayList<Entry>(count);
+
+				for(int i = 0; i != count; ++i)
+				{
+					final Entry entry = newEntry(clazz);
+					entry.id = in.readInt();
+					entry.readFrom(in);
+					entries.add(entry);
+				}
+
+				result.add(entries);
+			}
+
+			return new Contents(result, windowStart);
+		}
+		catch(IOException e)
+		{
+			Log.w(TAG, e);
+		}
+		catch(RuntimeException e)
+		{
+			// the checksum matched, so this can only be a bug
+			Log.w(TAG, e);
+		}
+		finally
+		{
+			closeQuietly(is);
+		}
+
+		invalidate();
+		return null;
+	}
+
+	/**
+	 * Writes the entries of the given classes.
+	 * <p>
+	 * If any entry has not yet been assigned an ID, nothing is written, as the
+	 * pending write would invalidate the image anyway.
+	 */
+	void write(Class<?>[] classes, List<List<? extends Entry>> lists, int doseEventWindowStart)
+	{
+		// taken before reading the entries; if the database is modified while
+		// we're busy, the image will be stale, rather than wrong
+		final long[] stamp = getDbFileStamp();
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+		final Output out = new Output(bytes);
+
+		try
+		{
+			for(int i = 0; i != classes.length; ++i)
+			{
+				final List<? extends Entry> entries = lists.get(i);
+				out.writeInt(entries.size());
+
+				for(Entry entry : entries)
+				{
+					if(entry.id == -1)
+						return;
+
+					out.writeInt(entry.id);
+					entry.writeTo(out);
+				}
+			}
+
+			out.flush();
+		}
+		catch(IOException e)
+		{
+			// can't happen with a ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+
+		final byte[] payload = bytes.toByteArray();
+		final CRC32 crc = new CRC32();
+		crc.update(payload);
+
+		final TimeZone tz = TimeZone.getDefault();
+		final byte[] zoneId = getZoneIdBytes(tz);
+
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + zoneId.length);
+		header.putInt(MAGIC);
+		header.putInt(FORMAT_VERSION);
+		header.putInt(DatabaseHelper.DB_VERSION);
+
+		for(long l : stamp)
+			header.putLong(l);
+
+		header.putInt(doseEventWindowStart);
+		header.putInt(payload.length);
+		header.putLong(crc.getValue());
+		header.putInt(tz.getRawOffset());
+		header.putInt(zoneId.length);
+		header.put(zoneId);
+
+		final File tmpFile = new File(mFile.getPath() + ".tmp");
+		FileOutputStream os = null;
+
+		try
+		{
+			os = new FileOutputStream(tmpFile);
+			os.write(header.array());
+			os.write(payload);
+			os.getFD().sync();
+			os.close();
+			os = null;
+
+			if(!tmpFile.renameTo(mFile))
+				throw new IOException("Failed to rename " + tmpFile + " to " + mFile);
+
+			mMayExist = true;
+		}
+		catch(IOException e)
+		{
+			Log.w(TAG, e);
+			tmpFile.delete();
+		}
+		finally
+		{
+			closeQuietly(os);
+		}
+	}
+
+	/**
+	 * Deletes the image.
+	 */
+	void invalidate()
+	{
+		if(mMayExist)
+		{
+			mFile.delete();
+			mMayExist = false;
+		}
+	}
+
+	private String checkHeader(ByteBuffer buffer)
+	{
+		if(buffer.remaining() < HEADER_SIZE)
+			return "truncated header";
+
+		if(buffer.getInt() != MAGIC)
+			return "bad magic";
+
+		final int formatVersion = buffer.getInt();
+		if(formatVersion != FORMAT_VERSION)
+			return "format version " + formatVersion;
+
+		final int dbVersion = buffer.getInt();
+		if(dbVersion != DatabaseHelper.DB_VERSION)
+			return "database version " + dbVersion;
+
+		final long[] stamp = getDbFileStamp();
+		for(long l : stamp)
+		{
+			if(buffer.getLong() != l)
+				return "stale";
+		}
+
+		// the window start is read by read(), using an absolute offset
+		buffer.getInt();
+
+		final int length = buffer.getInt();
+		final long checksum = buffer.getLong();
+
+		final TimeZone tz = TimeZone.getDefault();
+		final int zoneOffset = buffer.getInt();
+		final int zoneIdLength = buffer.getInt();
+
+		if(zoneIdLength < 0 || zoneIdLength > buffer.remaining())
+			return "bad timezone length " + zoneIdLength;
+
+		final byte[] zoneId = new byte[zoneIdLength];
+		buffer.get(zoneId);
+
+		if(zoneOffset != tz.getRawOffset() || !Arrays.equals(zoneId, getZoneIdBytes(tz)))
+			return "timezone changed";
+
+		if(length != buffer.remaining())
+			return "payload length " + buffer.remaining() + ", expected " + length;
+
+		final CRC32 crc = new CRC32();
+		final byte[] chunk = new byte[8192];
+		final int start = buffer.position();
+
+		while(buffer.hasRemaining())
+		{
+			final int n = Math.min(chunk.length, buffer.remaining());
+			buffer.get(chunk, 0, n);
+			crc.update(chunk, 0, n);
+		}
+
+		if(crc.getValue() != checksum)
+			return "checksum mismatch";
+
+		buffer.position(start);
+		return null;
+	}
+
+	private long[] getDbFileStamp()
+	{
+		return new long[] {
+				mDbFile.length(), mDbFile.lastModified(),
+				mWalFile.length(), mWalFile.lastModified()
+		};
+	}
+
+	private static byte[] getZoneIdBytes(TimeZone tz)
+	{
+		try
+		{
+			return tz.getID().getBytes("UTF-8");
+		}
+		catch(UnsupportedEncodingException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Entry newEntry(Class<?> clazz)
+	{
+		if(clazz == Drug.class)
+			return new Drug();
+		else if(clazz == DoseEvent.class)
+			return new DoseEvent();
+		else if(clazz == Patient.class)
+			return new Patient();
+
+		throw new IllegalArgumentException(clazz.getName());
+	}
+
+	private static void closeQuietly(Closeable c)
+	{
+		if(c != null)
+		{
+			try
+			{
+				c.close();
+			}
+			catch(IOException e)
+			{
+				// ignore
+			}
+		}
+	}
+
+	/* package */ static final class Output
+	{
+		private final DataOutputStream mOut;
+
+		Output(ByteArrayOutputStream out) {
+			mOut = new DataOutputStream(out);
+		}
+
+		void writeInt(int i) throws IOException {
+			mOut.writeInt(i);
+		}
+
+		void writeLong(long l) throws IOException {
+			mOut.writeLong(l);
+		}
+
+		void writeBoolean(boolean b) throws IOException {
+			mOut.writeByte(b ? 1 : 0);
+		}
+
+		void writeString(String s) throws IOException
+		{
+			if(s == null)
+				mOut.writeInt(-1);
+			else
+			{
+				final byte[] bytes = s.getBytes("UTF-8");
+				mOut.writeInt(bytes.length);
+				mOut.write(bytes);
+			}
+		}
+
+		void writeDate(Date date) throws IOException {
+			mOut.writeLong(date != null ? date.getTime() : NULL_DATE);
+		}
+
+		void writeFraction(Fraction f) throws IOException {
+			mOut.writeLong(f != null ? FractionPersister.pack(f) : NULL_FRACTION);
+		}
+
+		/**
+		 * Writes the ID of a foreign entry, or <code>-1</code> if <code>null</code>.
+		 */
+		void writeForeignId(Entry entry) throws IOException {
+			mOut.writeInt(entry != null ? entry.id : -1);
+		}
+
+		void flush() throws IOException {
+			mOut.flush();
+		}
+	}
+
+	/* package */ static final class Input
+	{
+		private final ByteBuffer mBuffer;
+
+		Input(ByteBuffer buffer) {
+			mBuffer = buffer;
+		}
+
+		int readInt() {
+			return mBuffer.getInt();
+		}
+
+		long readLong() {
+			return mBuffer.getLong();
+		}
+
+		boolean readBoolean() {
+			return mBuffer.get() != 0;
+		}
+
+		String readString()
+		{
+			final int length = mBuffer.getInt();
+			if(length == -1)
+				return null;
+
+			final byte[] bytes = new byte[length];
+			mBuffer.get(bytes);
+
+			try
+			{
+				return new String(bytes, "UTF-8");
+			}
+			catch(UnsupportedEncodingException e)
+			{
+				throw new IllegalStateException(e);
+			}
+		}
+
+		Date readDate()
+		{
+			final long time = mBuffer.getLong();
+			return time != NULL_DATE ? new Date(time) : null;
+		}
+
+		Fraction readFraction()
+		{
+			final long packed = mBuffer.getLong();
+			return packed != NULL_FRACTION ? FractionPersister.unpack(packed) : null;
+		}
+
+		/**
+		 * Reads the ID written by {@link Output#writeForeignId(Entry)}.
+		 */
+		int readForeignId() {
+			return mBuffer.getInt();
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Precompiled statements for the most frequent database writes.
+ * <p>
+ * Taking a dose creates a {@link DoseEvent} and updates the {@link Drug}'s
+ * current supply. Going through ORMLite, each of these involves reflection
+ * and converting every field to a string. The statements in this class are
+ * compiled once and bound by hand instead.
+ * <p>
+ * The values written are exactly those that ORMLite would have written, so
+ * both paths can be used interchangeably. Instances are not thread-safe.
+ *
+ * @author Joseph Lehner
+ */
+/* package */ final class CompiledStatements
+{
+	// the format used by ORMLite for java.util.Date fields on Android
+	private static final String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss.SSSSSS";
+
+	private final SQLiteDatabase mDb;
+	private final SimpleDateFormat mDateFormat = new SimpleDateFormat(DATE_FORMAT, Locale.US);
+
+	private SQLiteStatement mInsertDoseEvent;
+	private SQLiteStatement mDeleteDoseEvent;
+	private SQLiteStatement mUpdateCurrentSupply;
+
+	CompiledStatements(SQLiteDatabase db) {
+		mDb = db;
+	}
+
+	/**
+	 * Inserts the event, and assigns its ID.
+	 */
+	void insert(DoseEvent event)
+	{
+		if(mInsertDoseEvent == null)
+		{
+			mInsertDoseEvent = mDb.compileStatement("INSERT INTO [dose_events] " +
+					"( [drug_id], [date], [day], [timestamp], [doseTime], [dose], [wasAutoCreated] ) " +
+					"VALUES ( ?, ?, ?, ?, ?, ?, ? )");
+		}
+
+		final SQLiteStatement stmt = mInsertDoseEvent;
+		stmt.bindLong(1, event.getDrugId());
+		bindDate(stmt, 2, event.getDate());
+		stmt.bindLong(3, event.getEpochDay());
+		bindDate(stmt, 4, event.getTimestamp());
+		stmt.bindLong(5, event.getDoseTime());
+		stmt.bindLong(6, FractionPersister.pack(event.getDose()));
+		stmt.bindLong(7, event.wasAutoCreated() ? 1 : 0);
+
+		event.id = (int) stmt.executeInsert();
+	}
+
+	void delete(DoseEvent event)
+	{
+		if(mDeleteDoseEvent == null)
+			mDeleteDoseEvent = mDb.compileStatement("DELETE FROM [dose_events] WHERE [id]=?");
+
+		mDeleteDoseEvent.bindLong(1, event.id);
+		mDeleteDoseEvent.executeUpdateDelete();
+	}
+
+	void updateCurrentSupply(Drug drug)
+	{
+		if(mUpdateCurrentSupply == null)
+			mUpdateCurrentSupply = mDb.compileStatement("UPDATE [drugs] SET [currentSupply]=? WHERE [id]=?");
+
+		mUpdateCurrentSupply.bindLong(1, FractionPersister.pack(drug.getCurrentSupply()));
+		mUpdateCurrentSupply.bindLong(2, drug.id);
+		mUpdateCurrentSupply.executeUpdateDelete();
+	}
+
+	void close()
+	{
+		close(mInsertDoseEvent);
+		close(mDeleteDoseEvent);
+		close(mUpdateCurrentSupply);
+
+		mInsertDoseEvent = mDeleteDoseEvent = mUpdateCurrentSupply = null;
+	}
+
+	private void bindDate(SQLiteStatement stmt, int index, Date date)
+	{
+		if(date == null)
+			stmt.bindNull(index);
+		else
+			stmt.bindString(index, mDateFormat.format(date));
+	}
+
+	private static void close(SQLiteStatement stmt)
+	{
+		if(stmt != null)
+			stmt.close();
+	}
+}
@@ -22,28 +22,34 @@
 package at.jclehner.rxdroid.db;
 
 
+import java.io.File;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
 import android.util.Log;
 import at.jclehner.androidutils.EventDispatcher;
 import at.jclehner.androidutils.Extras;
-import at.jclehner.androidutils.Reflect;
 import at.jclehner.rxdroid.BuildConfig;
 import at.jclehner.rxdroid.R;
 import at.jclehner.rxdroid.RxDroid;
 import at.jclehner.rxdroid.db.DatabaseHelper.DatabaseError;
+import at.jclehner.rxdroid.util.DateTime;
+import at.jclehner.rxdroid.util.EpochDay;
 import at.jclehner.rxdroid.util.Timer;
-import at.jclehner.rxdroid.util.Util;
 import at.jclehner.rxdroid.util.WrappedCheckedException;
 
 import com.j256.ormlite.dao.Dao;
@@ -57,6 +63,9 @@ import com.j256.ormlite.dao.Dao;
  * initialized.
  * </p>
  * <p>
+ * The entries themselves are read and written by a {@link StorageEngine}.
+ * </p>
+ * <p>
  * Note that all ORMLite related classes will have members prefixed without the
  * usual "m" (i.e. "comment" instead of "mComment").
  *
@@ -70,8 +79,34 @@ public final class Database
 
 	public static Object LOCK_DATA = new Object();
 
+	/**
+	 * Held while the database file is being vacuumed.
+	 * <p>
+	 * Code copying or replacing the file must hold this lock, before acquiring
+	 * {@link #LOCK_DATA}. Other readers and writers need not care, so that
+	 * queries are not blocked while the file is vacuumed.
+	 */
+	public static final Object LOCK_MAINTENANCE = new Object();
+
 	/* package */ static final boolean USE_CUSTOM_CACHE = true;
 
+	/**
+	 * If <code>true</code>, only recent {@link DoseEvent}s are cached.
+	 * <p>
+	 * Older events are loaded on demand, see {@link DoseEventHistory}. Only
+	 * used if {@link #USE_CUSTOM_CACHE} is <code>true</code>.
+	 */
+	/* package */ static final boolean USE_DOSE_EVENT_WINDOW = true;
+
+	// the minimum number of days before today for which DoseEvents are cached
+	private static final int MIN_DOSE_EVENT_WINDOW_DAYS = 31;
+
+	/**
+	 * If <code>true</code>, the {@link SQLiteStorageEngine} is used, otherwise
+	 * the {@link OrmLiteStorageEngine}.
+	 */
+	private static final boolean USE_SQLITE_STORAGE_ENGINE = true;
+
 	static final Class<?>[] CLASSES = {
 		Drug.class,
 		DoseEvent.class,
@@ -84,24 +119,62 @@ public final class Database
 
 	public static final int TABLE_COUNT = CLASSES.length;
 
-	private static final HashMap<Class<?>, List<? extends Entry>> sCache =
-			new HashMap<Class<?>, List<? extends Entry>>();
+	private static final ConcurrentHashMap<Class<?>, EntryCache<? extends Entry>> sCache =
+			new ConcurrentHashMap<Class<?>, EntryCache<? extends Entry>>();
+
+	private static final DoseEventIndex sDoseEventIndex = new DoseEventIndex();
+
+	private static final DoseEventHistory sDoseEventHistory = new DoseEventHistory(new DoseEventHistory.Loader() {
+
+		@Override
+		public List<DoseEvent> load(int drugId, int beginDay, int endDay) {
+			return queryDoseEvents(drugId, beginDay, endDay);
+		}
+	});
 
 	private static final Object LOCK_INIT = new Object();
 
 	//private static Map<Class<?>, List<? extends Entry>> sCacheCopy = null;
 
 	private static DatabaseHelper sHelper;
-	private static boolean sIsLoaded = false;
+	private static volatile boolean sIsLoaded = false;
 
 	private static boolean sInMemoryOnly = false;
 
+	private static StorageEngine sEngine;
+	// if set, used instead of a file-backed engine
+	private static StorageEngine sEngineOverride;
+
+	private static volatile CacheImage sCacheImage;
+	// changes that were applied to the cache, but not yet handed to the writer or the engine
+	private static final AtomicInteger sUnwrittenChanges = new AtomicInteger();
+	// only set while loading
+	private static CacheImage.Contents sImageContents;
+
 	private static long sDbLoadingTimeMillis = 0;
 
-	private static volatile int sPendingDaoOperations = 0;
+	private static final int WRITE_QUEUE_CAPACITY = 1024;
 
-	private static EventDispatcher<Object> sEventMgr =
-			new EventDispatcher<Object>();
+	private static final DatabaseWriter sWriter = new DatabaseWriter(new DatabaseWriter.BatchExecutor() {
+
+		@Override
+		public void execute(List<DatabaseWriter.Operation> batch) throws SQLException {
+			runDaoOperations(batch);
+		}
+
+		@Override
+		public void onIdle()
+		{
+			runMaintenance();
+			writeCacheImage();
+		}
+	}, WRITE_QUEUE_CAPACITY);
+
+	private static final EventDispatcher<OnChangeListener> sChangeListeners =
+			new EventDispatcher<OnChangeListener>();
+	private static final EventDispatcher<OnInitializedListener> sInitListeners =
+			new EventDispatcher<OnInitializedListener>();
+	private static final DoseEventSubscriptions sSubscriptions = new DoseEventSubscriptions();
 
 	/**
 	 * Initializes the DB.
@@ -134,6 +207,18 @@ public final class Database
 			sInMemoryOnly = inMemoryOnly;
 	}
 
+	/**
+	 * Sets the storage engine to be used by the next call to {@link #reload(Context)}.
+	 * <p>
+	 * Intended for tests and benchmarks. If <code>null</code>, the default engine is used.
+	 */
+	/* package */ static synchronized void setStorageEngine(StorageEngine engine)
+	{
+		synchronized(LOCK_INIT) {
+			sEngineOverride = engine;
+		}
+	}
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public static synchronized void reload(Context context)
 	{
@@ -142,8 +227,19 @@ public final class Database
 
 		synchronized(LOCK_INIT)
 		{
+			// make sure that pending writes end up in the reloaded data
+			sWriter.flush();
+
 			sIsLoaded = false;
 			sCache.clear();
+			sDoseEventIndex.clear();
+			sDoseEventHistory.setWindowStart(Integer.MIN_VALUE);
+
+			if(sEngine != null)
+			{
+				sEngine.close();
+				sEngine = null;
+			}
 
 			if(sHelper != null)
 			{
@@ -152,17 +248,35 @@ public final class Database
 			}
 
 			sHelper = new DatabaseHelper(context);
+			sEngine = createStorageEngine(sHelper);
 			sDbLoadingTimeMillis = 0;
+			sCacheImage = null;
 
 			if(USE_CUSTOM_CACHE)
 			{
+				if(isFileBacked())
+				{
+					sCacheImage = new CacheImage(new File(context.getCacheDir(), CacheImage.FILE_NAME),
+							context.getDatabasePath(DatabaseHelper.DB_NAME));
+
+					final Timer timer = new Timer();
+					sImageContents = sCacheImage.read(CLASSES);
+					if(sImageContents != null)
+						Log.i(TAG, "Read cache image: " + timer);
+				}
+
 				// precache entries
 				for(Class clazz : CLASSES)
 					getCached(clazz);
+
+				if(sImageContents == null && sCacheImage != null)
+					sWriter.requestIdleCallback();
+
+				sImageContents = null;
 			}
 
 			sIsLoaded = true;
-			sEventMgr.post("onDatabaseInitialized");
+			sInitListeners.post(ON_INITIALIZED, null);
 		}
 	}
 
@@ -184,8 +298,8 @@ public final class Database
 	 * @see #OnDatabaseChangedListener
 	 * @param listener The listener to register.
 	 */
-	public static synchronized void registerEventListener(OnChangeListener listener) {
-		sEventMgr.register(listener);
+	public static void registerEventListener(OnChangeListener listener) {
+		sChangeListeners.register(listener);
 	}
 
 	/**
@@ -194,19 +308,39 @@ public final class Database
 	 * @see #Database.OnDatabaseChangedListener
 	 * @param listener The listener to remove.
 	 */
-	public static synchronized void unregisterEventListener(OnChangeListener listener) {
-		sEventMgr.unregister(listener);
+	public static void unregisterEventListener(OnChangeListener listener) {
+		sChangeListeners.unregister(listener);
+	}
+
+	/**
+	 * Subscribes to changes affecting a specific drug, date and dose time.
+	 * <p>
+	 * Unlike listeners registered using {@link #registerEventListener(OnChangeListener)},
+	 * subscribers are only notified of changes to the drug itself, and to its
+	 * {@link DoseEvent}s with the specified date and dose time. Thus, the cost
+	 * of a database write does not depend on the number of subscribers.
+	 * <p>
+	 * A listener can only have one subscription; subscribing again replaces
+	 * the previous one. As with registered listeners, subscribers are only
+	 * weakly referenced.
+	 */
+	public static void subscribe(OnChangeListener listener, int drugId, Date date, int doseTime) {
+		sSubscriptions.subscribe(listener, drugId, date, doseTime);
 	}
 
-	public static synchronized void registerOnInitializedListener(OnInitializedListener l) {
-		sEventMgr.register(l);
+	public static void unsubscribe(OnChangeListener listener) {
+		sSubscriptions.unsubscribe(listener);
+	}
+
+	public static void registerOnInitializedListener(OnInitializedListener l) {
+		sInitListeners.register(l);
 	}
 
 	/**
 	 * Creates a new database entry and notifies listeners.
 	 */
 	public static <E extends Entry> void create(E entry, int flags) {
-		performDbOperation("create", entry, flags);
+		performDbOperation(DbOperation.CREATE, entry, flags);
 	}
 
 	/**
@@ -220,7 +354,7 @@ public final class Database
 	 * Updates an existing database entry and notifies listeners.
 	 */
 	public static <E extends Entry> void update(E entry, int flags) {
-		performDbOperation("update", entry, flags);
+		performDbOperation(DbOperation.UPDATE, entry, flags);
 	}
 
 	/**
@@ -230,11 +364,30 @@ public final class Database
 		update(entry, 0);
 	}
 
+	/**
+	 * Updates a drug whose current supply is the only thing that has changed.
+	 * <p>
+	 * Listeners are notified just like with {@link #update(Entry, int)}, but
+	 * writing the change is considerably cheaper, as only a single column
+	 * has to be updated. If anything else was changed, use
+	 * {@link #update(Entry, int)} instead.
+	 */
+	public static void updateCurrentSupply(Drug drug, int flags) {
+		performDbOperation(DbOperation.UPDATE_SUPPLY, drug, flags);
+	}
+
+	/**
+	 * @see #updateCurrentSupply(Drug, int)
+	 */
+	public static void updateCurrentSupply(Drug drug) {
+		updateCurrentSupply(drug, 0);
+	}
+
 	/**
 	 * Deletes an existing database entry and notifies listeners.
 	 */
 	public static <E extends Entry> void delete(E entry, int flags) {
-		performDbOperation("delete", entry, flags);
+		performDbOperation(DbOperation.DELETE, entry, flags);
 	}
 
 	/**
@@ -244,13 +397,29 @@ public final class Database
 		delete(entry, 0);
 	}
 
+	/**
+	 * Starts a new {@link Batch}.
+	 */
+	public static Batch batch() {
+		return batch(0);
+	}
+
+	/**
+	 * Starts a new {@link Batch}.
+	 *
+	 * @param flags if {@link #FLAG_DONT_NOTIFY_LISTENERS} is set, listeners will not be
+	 * 	notified once the batch is committed.
+	 */
+	public static Batch batch(int flags) {
+		return new Batch(flags);
+	}
+
 	public static <E extends Entry> void deleteByIds(Class<? extends Entry> clazz, Collection<Integer> ids)
 	{
-		final Dao<? extends Entry, Integer> dao = getDaoChecked(clazz);
-
 		try
 		{
-			dao.deleteIds(ids);
+			invalidateCacheImage();
+			sEngine.deleteByIds(clazz, ids);
 		}
 		catch(SQLException e)
 		{
@@ -258,15 +427,96 @@ public final class Database
 		}
 	}
 
+	/**
+	 * Deletes all dose events dated before the specified date.
+	 * <p>
+	 * Unlike calling {@link #delete(Entry)} for each event, this uses a single
+	 * <code>DELETE</code> statement and compacts the cache in one pass. Listeners
+	 * are not notified, and callbacks are not run.
+	 * <p>
+	 * Events outside the cached window are not loaded; only their number and
+	 * range of dates are queried.
+	 */
+	public static PruneResult deleteDoseEventsBefore(final Date date)
+	{
+		final Timer timer = new Timer();
+		final List<DoseEvent> deleted = new ArrayList<DoseEvent>();
+		PruneResult result = null;
+
+		sUnwrittenChanges.incrementAndGet();
+
+		try
+		{
+			synchronized(Database.class)
+			{
+				if(USE_CUSTOM_CACHE)
+				{
+					deleted.addAll(getEntryCache(DoseEvent.class).removeAll(new Filter<DoseEvent>() {
+
+						@Override
+						public boolean matches(DoseEvent event) {
+							return event.getDate().before(date);
+						}
+					}));
+
+					sDoseEventIndex.removeAll(deleted);
+
+					for(DoseEvent event : deleted)
+						Extras.remove(event);
+
+					sDoseEventHistory.clear();
+				}
+
+				if(!sInMemoryOnly)
+				{
+					// queued operations might refer to the events we're about to delete
+					sWriter.flush();
+
+					synchronized(LOCK_DATA)
+					{
+						try
+						{
+							invalidateCacheImage();
+
+							// includes the events that were never cached, as the cache was flushed
+							result = sEngine.deleteDoseEventsBefore(date);
+							if(sEngine.isPersistent())
+								DatabaseMaintenance.onRowsDeleted(result.getCount());
+						}
+						catch(SQLException e)
+						{
+							throw new WrappedCheckedException(e);
+						}
+					}
+
+					RxDroid.notifyBackupDataChanged();
+				}
+			}
+		}
+		finally
+		{
+			sUnwrittenChanges.decrementAndGet();
+		}
+
+		if(result == null)
+			result = PruneResult.of(deleted);
+
+		sDbLoadingTimeMillis += timer.elapsed();
+
+		Log.i(TAG, "Pruned " + result.getCount() + " entries of type DoseEvent: " + timer);
+
+		return result;
+	}
+
 	public static <T extends Entry> T find(Class<T> clazz, int id)
 	{
 		if(USE_CUSTOM_CACHE)
-			return Entries.findInCollectionById(getCached(clazz), id);
+			return getEntryCache(clazz).find(id);
 		else
 		{
 			try
 			{
-				return getDaoChecked(clazz).queryForId(id);
+				return sEngine.queryForId(clazz, id);
 			}
 			catch(SQLException e)
 			{
@@ -289,31 +539,213 @@ public final class Database
 	}
 
 
+	/**
+	 * Returns all entries of the specified type.
+	 * <p>
+	 * The returned list must not be modified. If {@link #USE_CUSTOM_CACHE}
+	 * is <code>true</code>, this is a {@link Snapshot} of the cache, which
+	 * is neither copied nor affected by later changes.
+	 */
 	public static <T extends Entry> List<T> getAll(Class<T> clazz)
 	{
 		if(USE_CUSTOM_CACHE)
-			return new LinkedList<T>(getCached(clazz));
+			return getSnapshot(clazz);
 		else
 			return queryForAll(clazz);
 	}
 
+	/**
+	 * Returns the current snapshot of all cached entries of the specified type.
+	 * <p>
+	 * Only available if {@link #USE_CUSTOM_CACHE} is <code>true</code>.
+	 *
+	 * @see Snapshot#getGeneration()
+	 */
+	public static <T extends Entry> Snapshot<T> getSnapshot(Class<T> clazz)
+	{
+		if(!USE_CUSTOM_CACHE)
+			throw new UnsupportedOperationException();
+
+		return getEntryCache(clazz).list();
+	}
+
 	public static <T extends Entry> int countAll(Class<T> clazz)
 	{
 		if(USE_CUSTOM_CACHE)
-			return getCached(clazz).size();
+			return getEntryCache(clazz).size();
 		else
-			return getDaoChecked(clazz).getObjectCache().size(clazz);
+			return queryForAll(clazz).size();
 	}
 
 	public static boolean hasPendingOperations() {
-		return sPendingDaoOperations > 0;
+		return sWriter.hasPendingOperations();
+	}
+
+	/**
+	 * Waits until all pending database operations have been written.
+	 * <p>
+	 * The cache is always updated immediately, so this is only required
+	 * if code relies on the actual contents of the database file.
+	 */
+	public static void flush() {
+		sWriter.flush();
+	}
+
+	/**
+	 * Prepares the database file for being copied or replaced.
+	 * <p>
+	 * All pending writes are executed and, if write-ahead logging is enabled,
+	 * the log is transferred to the database file. Must not be called while
+	 * holding {@link #LOCK_DATA}.
+	 */
+	public static void checkpoint()
+	{
+		if(!sIsLoaded || !isFileBacked())
+			return;
+
+		sWriter.flush();
+
+		synchronized(LOCK_DATA) {
+			sHelper.checkpoint();
+		}
+	}
+
+	/**
+	 * Returns the number of database writes that were saved by coalescing
+	 * repeated operations on the same entry.
+	 */
+	public static long getSavedWriteCount() {
+		return sWriter.getSavedWriteCount();
 	}
 
 	public static long getLoadingTimeMillis() {
 		return sDbLoadingTimeMillis;
 	}
 
-	static synchronized <T extends Entry> List<T> getCached(Class<T> clazz)
+	/**
+	 * Returns the index of all cached DoseEvents.
+	 * <p>
+	 * Only available if {@link #USE_CUSTOM_CACHE} is <code>true</code>.
+	 */
+	static DoseEventIndex getDoseEventIndex()
+	{
+		if(!USE_CUSTOM_CACHE)
+			throw new UnsupportedOperationException();
+
+		// ensure that the index has been populated
+		getCached(DoseEvent.class);
+		return sDoseEventIndex;
+	}
+
+	/**
+	 * Returns the events matching the specified criteria.
+	 * <p>
+	 * Events in the cached window are looked up in the {@link DoseEventIndex},
+	 * older events in the {@link DoseEventHistory}. Only available if
+	 * {@link #USE_CUSTOM_CACHE} is <code>true</code>.
+	 *
+	 * @param date The event's date. Can be <code>null</code>.
+	 * @param doseTime The event's dose time. Can be <code>null</code>.
+	 */
+	static List<DoseEvent> findDoseEvents(int drugId, Date date, Integer doseTime)
+	{
+		final DoseEventIndex index = getDoseEventIndex();
+
+		if(date != null)
+		{
+			final int epochDay = DateTime.toEpochDay(date);
+			if(sDoseEventHistory.isInWindow(epochDay))
+				return index.find(drugId, date, doseTime);
+
+			return getHistoryPage(drugId, epochDay).find(drugId, date, doseTime);
+		}
+
+		final int windowStart = sDoseEventHistory.getWindowStart();
+		if(windowStart == Integer.MIN_VALUE)
+			return index.find(drugId, null, doseTime);
+
+		// the complete history is rarely needed, so it's not worth caching
+		sWriter.flush();
+
+		final List<DoseEvent> events = new ArrayList<DoseEvent>();
+
+		for(DoseEvent event : queryDoseEvents(drugId, Integer.MIN_VALUE, windowStart))
+		{
+			if(doseTime == null || event.getDoseTime() == doseTime)
+				events.add(event);
+		}
+
+		events.addAll(index.find(drugId, null, doseTime));
+		return events;
+	}
+
+	/**
+	 * Counts the events matching the specified criteria.
+	 *
+	 * @see #findDoseEvents(int, Date, Integer)
+	 */
+	static int countDoseEvents(int drugId, Date date, Integer doseTime)
+	{
+		if(date == null)
+		{
+			if(sDoseEventHistory.getWindowStart() != Integer.MIN_VALUE)
+				return findDoseEvents(drugId, null, doseTime).size();
+
+			return getDoseEventIndex().count(drugId, null, doseTime);
+		}
+
+		return countDoseEventsOnDay(drugId, DateTime.toEpochDay(date), doseTime);
+	}
+
+	/**
+	 * Like {@link #countDoseEvents(int, Date, Integer)}, but for an epoch day.
+	 */
+	static int countDoseEventsOnDay(int drugId, int epochDay, Integer doseTime)
+	{
+		if(sDoseEventHistory.isInWindow(epochDay))
+			return getDoseEventIndex().countOnDay(drugId, epochDay, doseTime);
+
+		return getHistoryPage(drugId, epochDay).countOnDay(drugId, epochDay, doseTime);
+	}
+
+	/**
+	 * Returns <code>true</code> if a drug has no event for a slot in
+	 * <code>[beginDay, endDay]</code> in which a dose was expected.
+	 * <p>
+	 * Only available if {@link #USE_CUSTOM_CACHE} is <code>true</code>.
+	 *
+	 * @see DoseSlotSet#hasMissingSlots(DoseCalendar, int, int, int)
+	 */
+	static boolean hasMissingDoses(int drugId, DoseCalendar calendar, int doseMask, int beginDay, int endDay)
+	{
+		final DoseEventIndex index = getDoseEventIndex();
+
+		// don't load history pages for days without doses
+		int day = Math.max(beginDay, calendar.getFirstDay());
+		endDay = Math.min(endDay, calendar.getLastDay());
+
+		while(day <= endDay && !sDoseEventHistory.isInWindow(day))
+		{
+			final int lastDay = Math.min(endDay, Math.min(DoseEventHistory.getPageEnd(day),
+					sDoseEventHistory.getWindowStart() - 1));
+
+			if(getHistoryPage(drugId, day).hasMissingDoses(drugId, calendar, doseMask, day, lastDay))
+				return true;
+
+			day = lastDay + 1;
+		}
+
+		return day <= endDay && index.hasMissingDoses(drugId, calendar, doseMask, day, endDay);
+	}
+
+	private static DoseEventIndex getHistoryPage(int drugId, int epochDay)
+	{
+		// the page might have to be loaded from the database
+		sWriter.flush();
+		return sDoseEventHistory.getPage(drugId, epochDay);
+	}
+
+	static <T extends Entry> List<T> getCached(Class<T> clazz)
 	{
 		if(!USE_CUSTOM_CACHE)
 		{
@@ -322,13 +754,41 @@ public final class Database
 			return queryForAll(clazz);
 		}
 
+		return getEntryCache(clazz).list();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T extends Entry> EntryCache<T> getEntryCache(Class<T> clazz)
+	{
+		// fast path, so that readers don't have to lock
+		final EntryCache<T> cache = (EntryCache<T>) sCache.get(clazz);
+		if(cache != null)
+			return cache;
+
+		return loadEntryCache(clazz);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static synchronized <T extends Entry> EntryCache<T> loadEntryCache(Class<T> clazz)
+	{
 		if(!sCache.containsKey(clazz))
 		{
 			if(!sIsLoaded)
 			{
 				final Timer timer = new Timer();
-				final List<T> entries = queryForAll(clazz);
-				sCache.put(clazz, entries);
+				final List<T> entries;
+
+				if(clazz == DoseEvent.class && USE_DOSE_EVENT_WINDOW)
+					entries = (List<T>) loadDoseEventWindow();
+				else if(sImageContents != null)
+					entries = (List<T>) sImageContents.entries.get(Arrays.asList(CLASSES).indexOf(clazz));
+				else
+					entries = queryForAll(clazz);
+
+				sCache.put(clazz, new EntryCache<T>(entries));
+
+				if(clazz == DoseEvent.class)
+					sDoseEventIndex.addAll((List<DoseEvent>) entries);
 
 //				if(LOGV)
 //				{
@@ -344,9 +804,70 @@ public final class Database
 				throw new NoSuchElementException(clazz.getSimpleName());
 		}
 
-		@SuppressWarnings("unchecked")
-		List<T> cached = (List<T>) sCache.get(clazz);
-		return cached;
+		return (EntryCache<T>) sCache.get(clazz);
+	}
+
+	/**
+	 * Loads the cached window of DoseEvents, and sets up {@link #sDoseEventHistory}.
+	 * <p>
+	 * The window includes all events that are checked when looking for missed doses.
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<DoseEvent> loadDoseEventWindow()
+	{
+		int days = MIN_DOSE_EVENT_WINDOW_DAYS;
+
+		for(Drug drug : getEntryCache(Drug.class).list())
+		{
+			if(drug.getRepeatMode() == Drug.REPEAT_EVERY_N_DAYS)
+				days = (int) Math.max(days, drug.getRepeatArg() + 1);
+		}
+
+		int windowStart = DateTime.toEpochDay(DateTime.today()) - days;
+
+		if(sImageContents != null)
+		{
+			final List<DoseEvent> events = (List<DoseEvent>)
+					sImageContents.entries.get(Arrays.asList(CLASSES).indexOf(DoseEvent.class));
+
+			// Events before the image's window are not in the image. Events before
+			// our window but after the image's must be dropped, as they'd otherwise
+			// be returned by both the cache and the history.
+			windowStart = Math.max(windowStart, sImageContents.doseEventWindowStart);
+			sDoseEventHistory.setWindowStart(windowStart);
+
+			final List<DoseEvent> window = new ArrayList<DoseEvent>(events.size());
+			for(DoseEvent event : events)
+			{
+				if(sDoseEventHistory.isInWindow(event.getEpochDay()))
+					window.add(event);
+			}
+
+			return window;
+		}
+
+		sDoseEventHistory.setWindowStart(windowStart);
+		return queryDoseEvents(null, windowStart, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Queries the events with an epoch day in <code>[beginDay, endDay)</code>.
+	 *
+	 * @param drugId The drug's ID. Can be <code>null</code>.
+	 */
+	private static List<DoseEvent> queryDoseEvents(Integer drugId, int beginDay, int endDay)
+	{
+		synchronized(LOCK_DATA)
+		{
+			try
+			{
+				return sEngine.queryDoseEvents(drugId, beginDay, endDay);
+			}
+			catch(SQLException e)
+			{
+				throw new DatabaseError(DatabaseError.E_GENERAL, e);
+			}
+		}
 	}
 
 	@SuppressWarnings({ "unchecked", "unused" })
@@ -375,147 +896,297 @@ public final class Database
 		}
 	}
 
-	@SuppressWarnings("unchecked")
-	private static <E extends Entry> void performDbOperation(String methodName, E entry, int flags)
+	private static <E extends Entry> void performDbOperation(DbOperation op, E entry, int flags)
 	{
-		if(entry.id == ID_VIRTUAL_ENTRY)
-			throw new IllegalArgumentException("Cannot perform database operation on virtual entries");
+		checkEntry(entry);
 
 		// Extras might be invalid after the entry has changed
 		Extras.remove(entry);
 
-		final Class<E> clazz = (Class<E>) entry.getClass();
-		final List<E> cached = getCached(clazz);
+		sUnwrittenChanges.incrementAndGet();
 
-		if(USE_CUSTOM_CACHE)
+		try
 		{
-			if("create".equals(methodName))
-				cached.add(entry);
-			else if("delete".equals(methodName))
-				cached.remove(entry);
-			else if("update".equals(methodName))
-			{
-				final Entry oldEntry = Entries.findInCollectionById(cached, entry.getId());
-				int index = cached.indexOf(oldEntry);
+			final EntryCache<E> cache = applyToCache(op, entry);
 
-				cached.remove(index);
-				cached.add(index, entry);
-			}
-			else
-				throw new IllegalArgumentException("methodName=" + methodName);
+			if(!sInMemoryOnly)
+				sWriter.submit(new DatabaseWriter.Operation(op, entry, cache));
 		}
-
-		final Dao<E, Integer> dao = getDaoChecked(clazz);
-		runDaoMethodInThread(dao, methodName, entry);
-
-		final String callbackName = "on" + Util.capitalize(methodName);
-		final Method m = Reflect.getMethod(clazz, callbackName, clazz);
-		if(m != null)
+		finally
 		{
-			Reflect.invokeMethod(m, null, entry);
-			if(LOGV) Log.v(TAG, "Ran callback " + callbackName);
+			sUnwrittenChanges.decrementAndGet();
 		}
-		else if(LOGV)
-			Log.v(TAG, "No callback " + callbackName + " for " + clazz.getSimpleName());
+
+		runEntryCallback(op, entry);
 
 		if((flags & FLAG_DONT_NOTIFY_LISTENERS) == 0)
 		{
-			final char first = Character.toUpperCase(methodName.charAt(0));
-			final String eventName = "onEntry" + first + methodName.substring(1) + "d";
-			dispatchEventToListeners(eventName, entry, 0);
+			sChangeListeners.post(op, entry);
+
+			for(EventDispatcher<OnChangeListener> subscribers : getSubscribers(Collections.<Entry>singletonList(entry)))
+				subscribers.post(op, entry);
 		}
 	}
 
-	private static <E extends Entry, ID> void runDaoMethodInThread(final Dao<E, ID> dao, final String methodName, final E entry)
+	private static void commitBatch(List<DbOperation> types, List<Entry> entries, int flags)
 	{
-		if(sInMemoryOnly)
-			return;
+		final List<DatabaseWriter.Operation> ops = new ArrayList<DatabaseWriter.Operation>(entries.size());
 
-		++sPendingDaoOperations;
+		for(Entry entry : entries)
+			checkEntry(entry);
 
-		final Thread th = new Thread() {
+		sUnwrittenChanges.incrementAndGet();
 
-			@Override
-			public void run()
+		try
+		{
+			// Apply all modifications at once, so that no one sees a half-applied batch
+			synchronized(Database.class)
 			{
+				final List<EntryCache<?>> caches = new ArrayList<EntryCache<?>>();
+
+				if(USE_CUSTOM_CACHE)
+				{
+					for(Entry entry : entries)
+					{
+						final EntryCache<?> cache = getEntryCache(entry.getClass());
+						if(!caches.contains(cache))
+						{
+							cache.beginUpdate();
+							caches.add(cache);
+						}
+					}
+				}
+
 				try
 				{
-					runDaoMethod(dao, methodName, entry);
+					for(int i = 0; i != entries.size(); ++i)
+					{
+						final DbOperation type = types.get(i);
+						final Entry entry = entries.get(i);
+
+						Extras.remove(entry);
+						ops.add(new DatabaseWriter.Operation(type, entry, applyToCache(type, entry)));
+					}
 				}
 				finally
 				{
-					--sPendingDaoOperations;
+					// publishes a single new snapshot per type
+					for(EntryCache<?> cache : caches)
+						cache.endUpdate();
 				}
 			}
-		};
 
-		th.start();
-	}
+			if(!sInMemoryOnly)
+				sWriter.submitAll(ops);
+		}
+		finally
+		{
+			sUnwrittenChanges.decrementAndGet();
+		}
 
-	private static <E extends Entry, ID> void runDaoMethod(final Dao<E, ID> dao, final String methodName, final E entry)
-	{
-		Exception ex;
+		final Changes changes = new Changes();
 
-		try
+		for(int i = 0; i != entries.size(); ++i)
 		{
-			final Method m = dao.getClass().getMethod(methodName, Object.class);
-			final Timer t = LOGV ? new Timer() : null;
+			final DbOperation type = types.get(i);
+			final Entry entry = entries.get(i);
 
-			synchronized(LOCK_DATA)
-			{
-				if(!sHelper.isOpen())
-				{
-					Log.w(TAG, "Database was not open; reopening!");
-					reload(RxDroid.getContext());
-				}
+			runEntryCallback(type, entry);
+			changes.add(type, entry);
+		}
 
-				m.invoke(dao, entry);
-			}
+		if((flags & FLAG_DONT_NOTIFY_LISTENERS) == 0)
+			dispatchChangesToListeners(changes, 0);
+	}
 
-			RxDroid.notifyBackupDataChanged();
+	private static void checkEntry(Entry entry)
+	{
+		if(entry.id == ID_VIRTUAL_ENTRY)
+			throw new IllegalArgumentException("Cannot perform database operation on virtual entries");
+	}
 
-			if(LOGV) Log.v(TAG, "runDaoMethod: " + methodName + ": " + t);
+	@SuppressWarnings("unchecked")
+	private static <E extends Entry> EntryCache<E> applyToCache(DbOperation op, E entry)
+	{
+		if(!USE_CUSTOM_CACHE)
+			return null;
 
-			//dao.deleteBuilder().where().idEq(id)
+		final boolean isDoseEvent = entry instanceof DoseEvent;
 
-			return;
+		if(isDoseEvent && !sDoseEventHistory.isInWindow(((DoseEvent) entry).getEpochDay()))
+		{
+			applyToHistory(op, (DoseEvent) entry);
+			return null;
 		}
-		catch(IllegalArgumentException e)
+
+		final EntryCache<E> cache = getEntryCache((Class<E>) entry.getClass());
+
+		switch(op)
+		{
+			case CREATE:
+				cache.add(entry);
+				if(isDoseEvent)
+					sDoseEventIndex.add((DoseEvent) entry);
+				break;
+
+			case DELETE:
+				final E removed = cache.remove(entry);
+				if(isDoseEvent && removed != null)
+					sDoseEventIndex.remove((DoseEvent) removed);
+				break;
+
+			case UPDATE:
+			case UPDATE_SUPPLY:
+				final E oldEntry = cache.replace(entry);
+				if(isDoseEvent)
+					sDoseEventIndex.replace((DoseEvent) oldEntry, (DoseEvent) entry);
+				break;
+		}
+
+		return cache;
+	}
+
+	private static void applyToHistory(DbOperation op, DoseEvent event)
+	{
+		switch(op)
 		{
-			ex = e;
-			// handled at end of function
+			case CREATE:
+				sDoseEventHistory.add(event);
+				break;
+
+			case DELETE:
+				sDoseEventHistory.remove(event);
+				break;
+
+			case UPDATE:
+			case UPDATE_SUPPLY:
+				sDoseEventHistory.replace(event);
+				break;
 		}
-		catch(IllegalAccessException e)
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <E extends Entry> void runEntryCallback(DbOperation op, E entry) {
+		op.runCallback(EntryCallbacks.get((Class<E>) entry.getClass()), entry);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static void runDaoOperations(final List<DatabaseWriter.Operation> batch) throws SQLException
+	{
+		final Timer t = LOGV ? new Timer() : null;
+
+		synchronized(LOCK_DATA)
 		{
-			ex = e;
-			// handled at end of function
+			// don't reload() here: it locks Database.class, whose holder may
+			// be waiting for us in flush()
+			if(!sEngine.isOpen())
+				throw new DatabaseError("Database is closed; cannot write " + batch.size() + " operations");
+
+			invalidateCacheImage();
+			sEngine.write(batch);
 		}
-		catch(InvocationTargetException e)
+
+		for(DatabaseWriter.Operation op : batch)
 		{
-			ex = e;
-			// handled at end of function
+			if(op.cache != null && op.type == DbOperation.CREATE)
+				((EntryCache) op.cache).onIdAssigned(op.entry);
 		}
-		catch(SecurityException e)
+
+		RxDroid.notifyBackupDataChanged();
+
+		if(LOGV) Log.v(TAG, "runDaoOperations: " + batch.size() + " operations: " + t);
+	}
+
+	private static StorageEngine createStorageEngine(DatabaseHelper helper)
+	{
+		if(sEngineOverride != null)
+			return sEngineOverride;
+
+		if(USE_SQLITE_STORAGE_ENGINE)
+			return new SQLiteStorageEngine(helper.getWritableDatabase(), helper.getConnectionSource());
+
+		return new OrmLiteStorageEngine(helper.getConnectionSource());
+	}
+
+	/**
+	 * Returns <code>true</code> if changes are written to the database file.
+	 */
+	private static boolean isFileBacked() {
+		return !sInMemoryOnly && sEngine.isPersistent();
+	}
+
+	/**
+	 * Must be called before writing to the database.
+	 */
+	private static void invalidateCacheImage()
+	{
+		final CacheImage image = sCacheImage;
+		if(image != null)
+			image.invalidate();
+	}
+
+	/**
+	 * Reclaims unused space once enough rows have been deleted.
+	 * <p>
+	 * Only called by the writer thread while it's idle, so no batch is
+	 * delayed by this. Only {@link #LOCK_MAINTENANCE} is held, so that a backup
+	 * can't copy a partially vacuumed file; {@link #LOCK_DATA} isn't, as the first
+	 * run rewrites the whole file, and queries would be blocked meanwhile.
+	 */
+	private static void runMaintenance()
+	{
+		if(!sIsLoaded || !isFileBacked())
+			return;
+
+		synchronized(LOCK_MAINTENANCE)
 		{
-			ex = e;
-			// handled at end of function
+			final SQLiteDatabase db = sHelper.getWritableDatabase();
+			if(!DatabaseMaintenance.isRequired(db))
+				return;
+
+			// VACUUM may rewrite the file, changing its stamp anyway
+			invalidateCacheImage();
+			DatabaseMaintenance.run(db);
 		}
-		catch(NoSuchMethodException e)
+	}
+
+	private static void writeCacheImage()
+	{
+		final CacheImage image = sCacheImage;
+		if(image == null || !sIsLoaded || !isFileBacked())
+			return;
+
+		final Timer timer = new Timer();
+		final List<List<? extends Entry>> lists = new ArrayList<List<? extends Entry>>(CLASSES.length);
+
+		for(Class<?> clazz : CLASSES)
 		{
-			ex = e;
-			// handled at end of function
+			// don't use getEntryCache(): the writer thread must never lock
+			// Database.class, as flush() may be called while holding it
+			final EntryCache<? extends Entry> cache = sCache.get(clazz);
+			if(cache == null)
+				return;
+
+			lists.add(cache.list());
 		}
-		/*finally
+
+		// The lists might contain changes that haven't been written yet; if the
+		// process died before they are, the image would be loaded on the next
+		// start, as the file stamp still matches.
+		if(sUnwrittenChanges.get() != 0 || sWriter.hasPendingOperations())
 		{
-			--sPendingDaoOperations;
-		}*/
+			if(LOGV) Log.v(TAG, "writeCacheImage: skipped; writes are pending");
+			return;
+		}
 
-		throw new WrappedCheckedException("Failed to run DAO method " + methodName, ex);
+		image.write(CLASSES, lists, sDoseEventHistory.getWindowStart());
+
+		if(LOGV) Log.v(TAG, "writeCacheImage: " + timer);
 	}
 
-	private static<T> List<T> queryForAll(Class<T> clazz)
+	private static <T extends Entry> List<T> queryForAll(Class<T> clazz)
 	{
-		if(sHelper == null)
+		if(sEngine == null)
 		{
 			Log.w(TAG, "Database not initialized - initializing it now...", new IllegalStateException("Trace"));
 			init();
@@ -523,7 +1194,7 @@ public final class Database
 
 		try
 		{
-			return sHelper.getDao(clazz).queryForAll();
+			return sEngine.queryForAll(clazz);
 		}
 		catch(SQLException e)
 		{
@@ -531,12 +1202,35 @@ public final class Database
 		}
 	}
 
-	private static synchronized void dispatchEventToListeners(String functionName, Entry entry, int flags)
+	private static void dispatchChangesToListeners(Changes changes, int flags)
 	{
-		if((flags & FLAG_DONT_NOTIFY_LISTENERS) != 0)
+		if(changes.isEmpty())
 			return;
 
-		sEventMgr.post(functionName, EVENT_HANDLER_ARG_TYPES, entry, flags);
+		sChangeListeners.post(ON_ENTRIES_CHANGED, changes);
+
+		final List<Entry> entries = new ArrayList<Entry>();
+		entries.addAll(changes.getCreated());
+		entries.addAll(changes.getUpdated());
+		entries.addAll(changes.getDeleted());
+
+		// each subscriber is notified once, regardless of how many of its entries changed
+		for(EventDispatcher<OnChangeListener> subscribers : getSubscribers(entries))
+			subscribers.post(ON_ENTRIES_CHANGED, changes);
+	}
+
+	private static List<EventDispatcher<OnChangeListener>> getSubscribers(List<Entry> entries)
+	{
+		if(sSubscriptions.isEmpty())
+			return Collections.emptyList();
+
+		final List<EventDispatcher<OnChangeListener>> subscribers =
+				new ArrayList<EventDispatcher<OnChangeListener>>();
+
+		for(Entry entry : entries)
+			sSubscriptions.collect(entry, subscribers);
+
+		return subscribers;
 	}
 
 	/**
@@ -587,6 +1281,16 @@ public final class Database
 		 * @param flags for private implementation details.
 		 */
 		public void onEntryDeleted(Entry entry, int flags);
+
+		/**
+		 * Called after a {@link Batch} has been committed.
+		 * <p>
+		 * This is called instead of the other callbacks, once per batch.
+		 *
+		 * @param changes all entries that were created, updated or deleted.
+		 * @param flags for private implementation details.
+		 */
+		public void onEntriesChanged(Changes changes, int flags);
 	}
 
 	/**
@@ -602,6 +1306,241 @@ public final class Database
 
 		@Override
 		public void onEntryDeleted(Entry entry, int flags) {}
+
+		/**
+		 * Calls the other callbacks for each entry in <code>changes</code>.
+		 */
+		@Override
+		public void onEntriesChanged(Changes changes, int flags) {
+			changes.dispatchTo(this, flags);
+		}
+	}
+
+	/**
+	 * A group of database operations that are performed together.
+	 * <p>
+	 * Nothing is changed until {@link #commit()} is called. At that point, all
+	 * modifications are applied to the cache at once, written to the database
+	 * in a single transaction, and reported to listeners using one call to
+	 * {@link OnChangeListener#onEntriesChanged(Changes, int)}.
+	 *
+	 * @see Database#batch()
+	 */
+	public static final class Batch
+	{
+		private final int mFlags;
+		private final List<DbOperation> mTypes = new ArrayList<DbOperation>();
+		private final List<Entry> mEntries = new ArrayList<Entry>();
+		// entries that were created or updated in this batch
+		private final Set<Entry> mModified = Collections.newSetFromMap(new IdentityHashMap<Entry, Boolean>());
+		private boolean mIsCommitted = false;
+
+		private Batch(int flags) {
+			mFlags = flags;
+		}
+
+		public Batch create(Entry entry) {
+			return add(DbOperation.CREATE, entry);
+		}
+
+		public Batch update(Entry entry)
+		{
+			// Updating the same instance more than once is pointless, as the
+			// cache and database will see the same values anyway
+			if(mModified.contains(entry))
+			{
+				checkNotCommitted();
+				return this;
+			}
+
+			return add(DbOperation.UPDATE, entry);
+		}
+
+		/**
+		 * Like {@link #update(Entry)}, but only the drug's current supply is written.
+		 *
+		 * @see Database#updateCurrentSupply(Drug)
+		 */
+		public Batch updateCurrentSupply(Drug drug)
+		{
+			if(mModified.contains(drug))
+			{
+				checkNotCommitted();
+				return this;
+			}
+
+			return add(DbOperation.UPDATE_SUPPLY, drug);
+		}
+
+		public Batch delete(Entry entry) {
+			return add(DbOperation.DELETE, entry);
+		}
+
+		public int size() {
+			return mEntries.size();
+		}
+
+		public void commit()
+		{
+			checkNotCommitted();
+			mIsCommitted = true;
+
+			if(!mEntries.isEmpty())
+				commitBatch(mTypes, mEntries, mFlags);
+		}
+
+		private Batch add(DbOperation type, Entry entry)
+		{
+			checkNotCommitted();
+
+			if(type == DbOperation.DELETE)
+				mModified.remove(entry);
+			else if(type != DbOperation.UPDATE_SUPPLY)
+				mModified.add(entry);
+
+			mTypes.add(type);
+			mEntries.add(entry);
+			return this;
+		}
+
+		private void checkNotCommitted()
+		{
+			if(mIsCommitted)
+				throw new IllegalStateException("Batch was already committed");
+		}
+	}
+
+	/**
+	 * The number and range of dose events deleted by {@link Database#deleteDoseEventsBefore(Date)}.
+	 */
+	public static final class PruneResult
+	{
+		private final int mCount;
+		private final int mOldestDay;
+		private final int mNewestDay;
+
+		/**
+		 * @param oldestDay the epoch day of the oldest deleted event. Ignored if <code>count</code> is zero.
+		 * @param newestDay the epoch day of the newest deleted event. Ignored if <code>count</code> is zero.
+		 */
+		/* package */ PruneResult(int count, int oldestDay, int newestDay)
+		{
+			mCount = count;
+			mOldestDay = oldestDay;
+			mNewestDay = newestDay;
+		}
+
+		/* package */ static PruneResult of(List<DoseEvent> events)
+		{
+			int oldestDay = Integer.MAX_VALUE;
+			int newestDay = Integer.MIN_VALUE;
+
+			for(DoseEvent event : events)
+			{
+				oldestDay = Math.min(oldestDay, event.getEpochDay());
+				newestDay = Math.max(newestDay, event.getEpochDay());
+			}
+
+			return new PruneResult(events.size(), oldestDay, newestDay);
+		}
+
+		public int getCount() {
+			return mCount;
+		}
+
+		/**
+		 * Returns the date of the oldest deleted event, or <code>null</code>.
+		 */
+		public Date getOldestDate() {
+			return mCount != 0 ? EpochDay.toDate(mOldestDay) : null;
+		}
+
+		/**
+		 * Returns the date of the newest deleted event, or <code>null</code>.
+		 */
+		public Date getNewestDate() {
+			return mCount != 0 ? EpochDay.toDate(mNewestDay) : null;
+		}
+	}
+
+	/**
+	 * The entries affected by a {@link Batch}, in the order they were added.
+	 */
+	public static final class Changes
+	{
+		private final List<Entry> mCreated = new ArrayList<Entry>();
+		private final List<Entry> mUpdated = new ArrayList<Entry>();
+		private final List<Entry> mDeleted = new ArrayList<Entry>();
+
+		private Changes() {}
+
+		public List<Entry> getCreated() {
+			return mCreated;
+		}
+
+		public List<Entry> getUpdated() {
+			return mUpdated;
+		}
+
+		public List<Entry> getDeleted() {
+			return mDeleted;
+		}
+
+		public boolean isEmpty() {
+			return mCreated.isEmpty() && mUpdated.isEmpty() && mDeleted.isEmpty();
+		}
+
+		/**
+		 * Returns <code>true</code> if any entry of the specified class was changed.
+		 */
+		public boolean contains(Class<? extends Entry> clazz) {
+			return contains(mCreated, clazz) || contains(mUpdated, clazz) || contains(mDeleted, clazz);
+		}
+
+		/**
+		 * Calls the per-entry callbacks of <code>listener</code> for each entry.
+		 */
+		public void dispatchTo(OnChangeListener listener, int flags)
+		{
+			for(Entry entry : mCreated)
+				listener.onEntryCreated(entry, flags);
+
+			for(Entry entry : mUpdated)
+				listener.onEntryUpdated(entry, flags);
+
+			for(Entry entry : mDeleted)
+				listener.onEntryDeleted(entry, flags);
+		}
+
+		private void add(DbOperation type, Entry entry)
+		{
+			switch(type)
+			{
+				case CREATE:
+					mCreated.add(entry);
+					break;
+
+				case UPDATE:
+				case UPDATE_SUPPLY:
+					mUpdated.add(entry);
+					break;
+
+				case DELETE:
+					mDeleted.add(entry);
+					break;
+			}
+		}
+
+		private static boolean contains(List<Entry> entries, Class<? extends Entry> clazz)
+		{
+			for(Entry entry : entries)
+			{
+				if(clazz.isInstance(entry))
+					return true;
+			}
+
+			return false;
+		}
 	}
 
 	public interface OnInitializedListener
@@ -616,5 +1555,21 @@ public final class Database
 
 	private Database() {}
 
-	private static final Class<?>[] EVENT_HANDLER_ARG_TYPES = { Entry.class, Integer.TYPE };
+	private static final EventDispatcher.Handler<OnChangeListener, Changes> ON_ENTRIES_CHANGED =
+			new EventDispatcher.Handler<OnChangeListener, Changes>() {
+
+		@Override
+		public void dispatch(OnChangeListener receiver, Changes changes) {
+			receiver.onEntriesChanged(changes, 0);
+		}
+	};
+
+	private static final EventDispatcher.Handler<OnInitializedListener, Void> ON_INITIALIZED =
+			new EventDispatcher.Handler<OnInitializedListener, Void>() {
+
+		@Override
+		public void dispatch(OnInitializedListener receiver, Void arg) {
+			receiver.onDatabaseInitialized();
+		}
+	};
 }
@@ -29,11 +29,13 @@ import java.sql.SQLException;
 import java.util.List;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.util.Log;
 import at.jclehner.androidutils.Reflect;
 import at.jclehner.rxdroid.R;
 import at.jclehner.rxdroid.RxDroid;
+import at.jclehner.rxdroid.Version;
 import at.jclehner.rxdroid.util.Util;
 import at.jclehner.rxdroid.util.WrappedCheckedException;
 
@@ -55,9 +57,19 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper
 	private static final String TAG = DatabaseHelper.class.getSimpleName();
 	private static final boolean LOGV = false;
 
-	public static final int DB_VERSION = 60;
+	public static final int DB_VERSION = 62;
 	public static final String DB_NAME = "db.sqlite";
 
+	/**
+	 * If <code>true</code>, the database is opened in high-throughput mode.
+	 * <p>
+	 * See {@link #enableHighThroughputMode(SQLiteDatabase)}.
+	 */
+	/* package */ static final boolean USE_HIGH_THROUGHPUT_MODE = false;
+
+	// at 4 KiB per page, this is enough to keep most databases in memory
+	private static final int CACHE_SIZE_PAGES = 1024;
+
 	public static class DatabaseError extends RuntimeException
 	{
 		private static final long serialVersionUID = 4326067582393937172L;
@@ -155,6 +167,87 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper
 		}
 	}
 
+	@Override
+	public void onOpen(SQLiteDatabase db)
+	{
+		super.onOpen(db);
+
+		if(USE_HIGH_THROUGHPUT_MODE && !db.isReadOnly())
+			enableHighThroughputMode(db);
+	}
+
+	/**
+	 * Transfers the contents of the write-ahead log to the database file.
+	 * <p>
+	 * Does nothing if write-ahead logging is not enabled. Use {@link Database#checkpoint()}
+	 * instead of calling this function directly.
+	 */
+	/* package */ void checkpoint()
+	{
+		if(!Version.SDK_IS_JELLYBEAN_OR_NEWER)
+			return;
+
+		final SQLiteDatabase db = getWritableDatabase();
+		if(!db.isWriteAheadLoggingEnabled())
+			return;
+
+		final Cursor c = db.rawQuery("PRAGMA wal_checkpoint(FULL)", null);
+
+		try
+		{
+			c.moveToFirst();
+		}
+		finally
+		{
+			c.close();
+		}
+	}
+
+	/**
+	 * Configures a database for many small writes with concurrent reads.
+	 * <p>
+	 * The statement cache is enlarged to its maximum size, as is the page cache.
+	 * On Jelly Bean and later, write-ahead logging is enabled as well, so that readers
+	 * no longer have to wait for the writer. <code>synchronous</code> is set to
+	 * <code>FULL</code>, as the platform might default to <code>NORMAL</code> in WAL
+	 * mode: this would keep the database consistent, but the most recent transactions
+	 * could be lost on power failure, and with them a dose the user just recorded.
+	 * On older platforms, the journal is left as it is; their
+	 * implementation of write-ahead logging uses a single connection, and thus
+	 * wouldn't allow concurrent reads anyway.
+	 *
+	 * @return <code>true</code> if write-ahead logging was enabled.
+	 */
+	/* package */ static boolean enableHighThroughputMode(SQLiteDatabase db)
+	{
+		db.setMaxSqlCacheSize(SQLiteDatabase.MAX_SQL_CACHE_SIZE);
+		db.execSQL("PRAGMA cache_size=" + CACHE_SIZE_PAGES);
+
+		boolean isWalEnabled = false;
+
+		if(Version.SDK_IS_JELLYBEAN_OR_NEWER)
+		{
+			try
+			{
+				isWalEnabled = db.enableWriteAheadLogging();
+			}
+			catch(IllegalStateException e)
+			{
+				// thrown if a transaction is in progress
+				Log.w(TAG, e);
+			}
+
+			if(isWalEnabled)
+				db.execSQL("PRAGMA synchronous=FULL");
+			else
+				Log.w(TAG, "Failed to enable write-ahead logging");
+		}
+
+		if(LOGV) Log.v(TAG, "enableHighThroughputMode: wal=" + isWalEnabled);
+
+		return isWalEnabled;
+	}
+
 	// !!! Do NOT @Override (crashes on API < 11) !!!
 	public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
 		onUpgrade(db, oldVersion, newVersion);
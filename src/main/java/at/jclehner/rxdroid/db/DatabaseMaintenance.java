@@ -0,0 +1,126 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.io.File;
+import java.util.Date;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+import at.jclehner.rxdroid.Settings;
+import at.jclehner.rxdroid.Settings.Keys;
+import at.jclehner.rxdroid.util.Timer;
+
+/**
+ * Reclaims unused space in the database file.
+ * <p>
+ * Deleting rows only adds pages to SQLite's freelist; the file itself keeps its
+ * size. Once enough rows have been deleted, or enough pages are free, the free
+ * pages are released using <code>PRAGMA incremental_vacuum</code>, and the query
+ * planner's statistics are updated using <code>ANALYZE</code>.
+ * <p>
+ * As incremental vacuuming must be enabled using a full <code>VACUUM</code>, the
+ * first run rewrites the whole file.
+ *
+ * @author Joseph Lehner
+ */
+/* package */ final class DatabaseMaintenance
+{
+	private static final String TAG = DatabaseMaintenance.class.getSimpleName();
+
+	private static final long DELETED_ROWS_THRESHOLD = 1000;
+	private static final long FREE_PAGES_THRESHOLD = 64;
+	private static final float FREE_PAGES_RATIO_THRESHOLD = 0.25f;
+
+	private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+	private DatabaseMaintenance() {}
+
+	/**
+	 * Records rows that were deleted in bulk.
+	 */
+	static void onRowsDeleted(int count)
+	{
+		if(count != 0)
+			Settings.putLong(Keys.DB_DELETED_ROWS, Settings.getLong(Keys.DB_DELETED_ROWS, 0) + count);
+	}
+
+	static boolean isRequired(SQLiteDatabase db)
+	{
+		if(Settings.getLong(Keys.DB_DELETED_ROWS, 0) >= DELETED_ROWS_THRESHOLD)
+			return true;
+
+		final long freePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+		if(freePages < FREE_PAGES_THRESHOLD)
+			return false;
+
+		final long pages = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+		return freePages >= pages * FREE_PAGES_RATIO_THRESHOLD;
+	}
+
+	/**
+	 * Runs the maintenance.
+	 * <p>
+	 * Must not be called within a transaction.
+	 */
+	static void run(SQLiteDatabase db)
+	{
+		final Timer timer = new Timer();
+		final File file = new File(db.getPath());
+		final long sizeBefore = file.length();
+
+		if(DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) != AUTO_VACUUM_INCREMENTAL)
+		{
+			db.execSQL("PRAGMA auto_vacuum=" + AUTO_VACUUM_INCREMENTAL);
+			db.execSQL("VACUUM");
+		}
+		else
+		{
+			// Each step frees a page, so use a cursor to make sure that the
+			// statement is stepped until it's done.
+			final Cursor c = db.rawQuery("PRAGMA incremental_vacuum", null);
+
+			try
+			{
+				while(c.moveToNext())
+					;
+			}
+			finally
+			{
+				c.close();
+			}
+		}
+
+		db.execSQL("ANALYZE");
+
+		final long sizeAfter = file.length();
+
+		Settings.putLong(Keys.DB_DELETED_ROWS, 0);
+		Settings.putDate(Keys.DB_MAINTENANCE_DATE, new Date());
+		Settings.putLong(Keys.DB_SIZE_BEFORE_MAINTENANCE, sizeBefore);
+		Settings.putLong(Keys.DB_SIZE_AFTER_MAINTENANCE, sizeAfter);
+
+		Log.i(TAG, "Database size: " + sizeBefore + " -> " + sizeAfter + " bytes: " + timer);
+	}
+}
@@ -21,7 +21,10 @@
 
 package at.jclehner.rxdroid.db;
 
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import com.j256.ormlite.support.ConnectionSource;
@@ -34,14 +37,68 @@ import java.io.Closeable;
 import java.io.File;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import at.jclehner.rxdroid.Backup;
+import at.jclehner.rxdroid.Fraction;
 
 public class DatabaseUpgrader implements Closeable
 {
 	private static final String TAG = DatabaseUpgrader.class.getSimpleName();
 
+	private static final String CREATE_TRIGGER_DRUG_CLEANUP =
+			"CREATE TRIGGER [drug_cleanup] AFTER DELETE ON [drugs] " +
+			"FOR EACH ROW " +
+			"BEGIN " +
+			"  DELETE FROM [dose_events] WHERE drug_id = OLD.id; " +
+			"END";
+
+	// The schemas used by rebuildTables(). These must never be derived from the entry
+	// classes, as later upgrades expect the tables to be exactly as they were at the
+	// respective version.
+
+	private static final Table DRUGS_V61 = new Table("drugs")
+			.column("id", "INTEGER PRIMARY KEY AUTOINCREMENT")
+			.column("name", "VARCHAR UNIQUE")
+			.column("patient_id", "INTEGER")
+			.column("icon", "INTEGER")
+			.column("active", "SMALLINT")
+			.column("refillSize", "INTEGER")
+			.column("currentSupply", "BIGINT")
+			.column("doseMorning", "BIGINT")
+			.column("doseNoon", "BIGINT")
+			.column("doseEvening", "BIGINT")
+			.column("doseNight", "BIGINT")
+			.column("repeatMode", "INTEGER")
+			.column("repeatArg", "BIGINT")
+			.column("repeatOrigin", "VARCHAR")
+			.column("hasAutoDoseEvents", "SMALLINT")
+			.column("lastAutoDoseEventCreationDate", "VARCHAR")
+			.column("lastScheduleUpdateDate", "VARCHAR")
+			.column("sortRank", "INTEGER")
+			.column("expirationDate", "VARCHAR")
+			.column("scheduleEndDate", "VARCHAR")
+			.column("asNeeded", "SMALLINT")
+			.column("comment", "VARCHAR");
+
+	private static final Table DOSE_EVENTS_V61 = new Table("dose_events")
+			.column("id", "INTEGER PRIMARY KEY AUTOINCREMENT")
+			.column("drug_id", "INTEGER")
+			.column("date", "VARCHAR")
+			.column("timestamp", "VARCHAR")
+			.column("doseTime", "INTEGER")
+			.column("dose", "BIGINT")
+			.column("wasAutoCreated", "SMALLINT");
+
+	private static final Table PATIENTS_V61 = new Table("patients")
+			.column("id", "INTEGER PRIMARY KEY AUTOINCREMENT")
+			.column("name", "VARCHAR UNIQUE");
+
 	private final SQLiteDatabase mDb;
 	private final ConnectionSource mCs;
 	private final DatabaseConnection mDc;
@@ -81,10 +138,9 @@ public class DatabaseUpgrader implements Closeable
 			}
 		}
 
-		// TODO cleanup stale database columns
-		// Since SQLite does not support removing columns, the upgrade process leaves stale
+		// Since SQLite does not support removing columns, the upgrade process leaves
 		// stale columns whenever a 'rename' or 'delete' happens in an entry's schema.
-		// A possible workaround would be http://www.sqlite.org/faq.html#q11
+		// Upgrades that do so should be followed by one that calls rebuildTables().
 	}
 
 	@Override
@@ -159,13 +215,26 @@ public class DatabaseUpgrader implements Closeable
 
 			case 60:
 				execute("ALTER TABLE [drugs] ADD COLUMN [scheduleEndDate] VARCHAR");
-				execute(
-						"CREATE TRIGGER [drug_cleanup] AFTER DELETE ON [drugs] " +
-						"FOR EACH ROW " +
-						"BEGIN " +
-						"  DELETE FROM [dose_events] WHERE drug_id = OLD.id; " +
-						"END"
-				);
+				execute(CREATE_TRIGGER_DRUG_CLEANUP);
+				break;
+
+			case 61:
+				// Fractions are now stored as packed integers instead of strings. The fraction
+				// columns must be changed from VARCHAR to BIGINT first, as with VARCHAR's TEXT
+				// affinity, SQLite would store the packed values as strings. Rebuilding the
+				// tables also removes the columns left behind by v59.
+				rebuildTables(DRUGS_V61, DOSE_EVENTS_V61, PATIENTS_V61);
+				packFractions("drugs", "currentSupply", "doseMorning", "doseNoon", "doseEvening", "doseNight");
+				packFractions("dose_events", "dose");
+				break;
+
+			case 62:
+				// Dates are stored as 'yyyy-MM-dd HH:mm:ss.SSSSSS', in local time, so the epoch
+				// day of the local date is the same as that of the date in UTC.
+				execute("ALTER TABLE [dose_events] ADD COLUMN [day] INTEGER DEFAULT 0");
+				execute("UPDATE [dose_events] SET [day]=CAST(julianday(substr([date], 1, 10)) - 2440587.5 AS INTEGER)");
+				execute("CREATE INDEX IF NOT EXISTS [" + DoseEvent.INDEX_DRUG_DAY_DOSE_TIME + "] " +
+						"ON [dose_events] ( [drug_id], [day], [doseTime] )");
 				break;
 
 			default:
@@ -174,6 +243,190 @@ public class DatabaseUpgrader implements Closeable
 		}
 	}
 
+	/**
+	 * Recreates the given tables with only the columns of the specified schema.
+	 * <p>
+	 * The tables are rebuilt as described in http://www.sqlite.org/faq.html#q11, which also
+	 * updates the column types. Tables whose columns already match the schema are skipped.
+	 * As this runs within the upgrade's transaction, either all tables are rebuilt, or none
+	 * are.
+	 */
+	private void rebuildTables(Table... tables) throws SQLException
+	{
+		final long usedSizeBefore = getUsedSize();
+
+		// the trigger refers to [dose_events], which is temporarily gone
+		execute("DROP TRIGGER IF EXISTS [drug_cleanup]");
+
+		for(Table table : tables)
+			rebuildTable(table);
+
+		execute(CREATE_TRIGGER_DRUG_CLEANUP);
+
+		Log.i(TAG, "Used size: " + usedSizeBefore + " -> " + getUsedSize() + " bytes; file size: " +
+				new File(mDb.getPath()).length() + " bytes (until vacuumed)");
+	}
+
+	private void rebuildTable(Table schema) throws SQLException
+	{
+		final String table = schema.name;
+		final String newTable = table + "_new";
+
+		final Map<String, String> oldColumns = getColumns(table);
+		if(schema.matches(oldColumns))
+		{
+			Log.i(TAG, "Not rebuilding [" + table + "]: already up to date");
+			return;
+		}
+
+		final long rowCount = DatabaseUtils.longForQuery(mDb, "SELECT COUNT(*) FROM [" + table + "]", null);
+		final long rowWidthBefore = getAverageRowWidth(table, oldColumns.keySet());
+
+		execute(schema.getCreateStatement(newTable));
+
+		final List<String> columns = new ArrayList<String>(schema.getColumnNames());
+		columns.retainAll(oldColumns.keySet());
+
+		final StringBuilder columnList = new StringBuilder();
+
+		for(String column : columns)
+		{
+			if(columnList.length() != 0)
+				columnList.append(", ");
+
+			columnList.append("[" + column + "]");
+		}
+
+		execute("INSERT INTO [" + newTable + "] ( " + columnList + " ) SELECT " + columnList + " FROM [" + table + "]");
+		execute("DROP TABLE [" + table + "]");
+		execute("ALTER TABLE [" + newTable + "] RENAME TO [" + table + "]");
+
+		final long newRowCount = DatabaseUtils.longForQuery(mDb, "SELECT COUNT(*) FROM [" + table + "]", null);
+		if(newRowCount != rowCount)
+			throw new SQLException("Rebuilding [" + table + "]: expected " + rowCount + " rows, got " + newRowCount);
+
+		final long rowWidthAfter = getAverageRowWidth(table, schema.getColumnNames());
+
+		Log.i(TAG, "Rebuilt [" + table + "]: " + rowCount + " rows, " + oldColumns.size() + " -> "
+				+ schema.getColumnNames().size() + " columns, average row width " + rowWidthBefore
+				+ " -> " + rowWidthAfter + " bytes");
+	}
+
+	/**
+	 * Returns the declared type of each column, by column name.
+	 */
+	private Map<String, String> getColumns(String table)
+	{
+		final Map<String, String> columns = new LinkedHashMap<String, String>();
+		final Cursor c = mDb.rawQuery("PRAGMA table_info([" + table + "])", null);
+
+		try
+		{
+			final int nameIndex = c.getColumnIndexOrThrow("name");
+			final int typeIndex = c.getColumnIndexOrThrow("type");
+
+			while(c.moveToNext())
+				columns.put(c.getString(nameIndex), c.getString(typeIndex));
+		}
+		finally
+		{
+			c.close();
+		}
+
+		return columns;
+	}
+
+	/**
+	 * Returns the size of all pages that are in use, i.e. the file size after <code>VACUUM</code>.
+	 */
+	private long getUsedSize()
+	{
+		final long pageCount = DatabaseUtils.longForQuery(mDb, "PRAGMA page_count", null);
+		final long freePageCount = DatabaseUtils.longForQuery(mDb, "PRAGMA freelist_count", null);
+		return (pageCount - freePageCount) * mDb.getPageSize();
+	}
+
+	/**
+	 * Returns the approximate average size of a row's record, as stored by SQLite.
+	 * <p>
+	 * This is the size of each value, using the smallest integer representation
+	 * SQLite would choose, plus one byte per column for the record header.
+	 * B-tree overhead is not included.
+	 */
+	private long getAverageRowWidth(String table, Collection<String> columns)
+	{
+		final StringBuilder sb = new StringBuilder("SELECT AVG(" + columns.size());
+
+		for(String column : columns)
+		{
+			final String c = "[" + column + "]";
+
+			sb.append(" + CASE typeof(" + c + ")" +
+					" WHEN 'null' THEN 0" +
+					" WHEN 'real' THEN 8" +
+					" WHEN 'integer' THEN CASE" +
+					"  WHEN " + c + " IN (0, 1) THEN 0" +
+					"  WHEN " + c + " BETWEEN -128 AND 127 THEN 1" +
+					"  WHEN " + c + " BETWEEN -32768 AND 32767 THEN 2" +
+					"  WHEN " + c + " BETWEEN -8388608 AND 8388607 THEN 3" +
+					"  WHEN " + c + " BETWEEN -2147483648 AND 2147483647 THEN 4" +
+					"  WHEN " + c + " BETWEEN -140737488355328 AND 140737488355327 THEN 6" +
+					"  ELSE 8 END" +
+					" ELSE length(CAST(" + c + " AS BLOB)) END");
+		}
+
+		sb.append(") FROM [" + table + "]");
+
+		return DatabaseUtils.longForQuery(mDb, sb.toString(), null);
+	}
+
+	private void packFractions(String table, String... columns)
+	{
+		final StringBuilder select = new StringBuilder("SELECT [id]");
+		final StringBuilder update = new StringBuilder("UPDATE [" + table + "] SET ");
+
+		for(int i = 0; i != columns.length; ++i)
+		{
+			select.append(", [" + columns[i] + "]");
+			update.append((i != 0 ? ", [" : "[") + columns[i] + "]=?");
+		}
+
+		select.append(" FROM [" + table + "]");
+		update.append(" WHERE [id]=?");
+
+		final Cursor c = mDb.rawQuery(select.toString(), null);
+		final SQLiteStatement stmt = mDb.compileStatement(update.toString());
+		int count = 0;
+
+		try
+		{
+			while(c.moveToNext())
+			{
+				for(int i = 0; i != columns.length; ++i)
+				{
+					final String value = c.getString(i + 1);
+					if(value == null)
+						stmt.bindNull(i + 1);
+					else if(value.length() == 0)
+						stmt.bindLong(i + 1, FractionPersister.pack(Fraction.ZERO));
+					else
+						stmt.bindLong(i + 1, FractionPersister.pack(Fraction.valueOf(value)));
+				}
+
+				stmt.bindLong(columns.length + 1, c.getLong(0));
+				stmt.executeUpdateDelete();
+				++count;
+			}
+		}
+		finally
+		{
+			stmt.close();
+			c.close();
+		}
+
+		Log.i(TAG, "Converted " + count + " rows in [" + table + "]");
+	}
+
 	private int execute(String statement) throws SQLException {
 		return mDc.executeStatement(statement, DatabaseConnection.DEFAULT_RESULT_FLAGS);
 	}
@@ -190,4 +443,69 @@ public class DatabaseUpgrader implements Closeable
 			return clazz;
 		}
 	}
+
+	/**
+	 * The schema of a table, as used by {@link DatabaseUpgrader#rebuildTables(Table...)}.
+	 */
+	private static final class Table
+	{
+		final String name;
+
+		private final Map<String, String> mColumns = new LinkedHashMap<String, String>();
+
+		Table(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Adds a column.
+		 *
+		 * @param type the column's type, optionally followed by any constraints.
+		 */
+		Table column(String name, String type)
+		{
+			mColumns.put(name, type);
+			return this;
+		}
+
+		Collection<String> getColumnNames() {
+			return mColumns.keySet();
+		}
+
+		String getCreateStatement(String tableName)
+		{
+			final StringBuilder sb = new StringBuilder();
+
+			for(Map.Entry<String, String> column : mColumns.entrySet())
+			{
+				if(sb.length() != 0)
+					sb.append(", ");
+
+				sb.append("[" + column.getKey() + "] " + column.getValue());
+			}
+
+			return "CREATE TABLE [" + tableName + "] ( " + sb + " )";
+		}
+
+		/**
+		 * Returns <code>true</code> if the columns, and their types, are the same.
+		 *
+		 * @param columns the declared type of each column, by column name.
+		 */
+		boolean matches(Map<String, String> columns)
+		{
+			if(!columns.keySet().equals(mColumns.keySet()))
+				return false;
+
+			for(Map.Entry<String, String> column : mColumns.entrySet())
+			{
+				// ignore any constraints
+				final String type = column.getValue().split(" ", 2)[0];
+				if(!type.equalsIgnoreCase(columns.get(column.getKey())))
+					return false;
+			}
+
+			return true;
+		}
+	}
 }
@@ -0,0 +1,479 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Single-threaded writer for database operations.
+ * <p>
+ * Operations are queued in submission order and executed by one dedicated
+ * thread. Whenever the thread wakes up, it collects all operations submitted
+ * within a short window and hands them to the {@link BatchExecutor} as one
+ * batch, which allows committing them in a single transaction.
+ * <p>
+ * Before a batch is executed, operations on the same entry are coalesced
+ * (see {@link #coalesce(List)}), so that an entry which is updated several times
+ * in quick succession is only written once.
+ * <p>
+ * Once no further operations have been submitted for {@link #IDLE_DELAY_MILLIS}
+ * after a batch, {@link BatchExecutor#onIdle()} is called.
+ *
+ * @author Joseph Lehner
+ */
+/* package */ final class DatabaseWriter
+{
+	private static final String TAG = DatabaseWriter.class.getSimpleName();
+
+	private static final boolean LOGV = false;
+
+	/* package */ static final int MAX_BATCH_SIZE = 256;
+	private static final long COALESCE_WINDOW_MILLIS = 20;
+	private static final long IDLE_DELAY_MILLIS = 1000;
+
+	/* package */ static final class Operation
+	{
+		final DbOperation type;
+		final Entry entry;
+		// the cache the entry belonged to at submission time; may be null
+		final EntryCache<? extends Entry> cache;
+		// operations submitted using submitAll(); always executed in the same batch
+		final List<Operation> group;
+
+		Operation(DbOperation type, Entry entry, EntryCache<? extends Entry> cache)
+		{
+			this.type = type;
+			this.entry = entry;
+			this.cache = cache;
+			this.group = null;
+		}
+
+		private Operation(List<Operation> group)
+		{
+			this.type = null;
+			this.entry = null;
+			this.cache = null;
+			this.group = group;
+		}
+	}
+
+	/* package */ interface BatchExecutor
+	{
+		void execute(List<Operation> batch) throws Exception;
+
+		/**
+		 * Called on the writer thread, once a burst of writes has ended.
+		 */
+		void onIdle();
+	}
+
+	private final BlockingQueue<Operation> mQueue;
+	private final BatchExecutor mExecutor;
+	private final Object mLock = new Object();
+
+	// all guarded by mLock
+	private long mSubmitted = 0;
+	private long mCompleted = 0;
+	private long mSavedWrites = 0;
+
+	private Thread mThread;
+
+	private volatile boolean mIdleCallbackRequested = false;
+
+	DatabaseWriter(BatchExecutor executor, int capacity)
+	{
+		mExecutor = executor;
+		mQueue = new ArrayBlockingQueue<Operation>(capacity);
+	}
+
+	/**
+	 * Queues an operation.
+	 * <p>
+	 * If the queue is full, this function blocks until the writer has caught up.
+	 */
+	void submit(Operation op)
+	{
+		synchronized(mLock)
+		{
+			++mSubmitted;
+
+			if(mThread == null)
+			{
+				mThread = new Thread(mRunnable, TAG);
+				mThread.start();
+			}
+		}
+
+		boolean interrupted = false;
+
+		while(true)
+		{
+			try
+			{
+				mQueue.put(op);
+				break;
+			}
+			catch(InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Queues a group of operations, which are guaranteed to be executed in the same batch.
+	 */
+	void submitAll(List<Operation> ops) {
+		submit(new Operation(new ArrayList<Operation>(ops)));
+	}
+
+	/**
+	 * Requests a call to {@link BatchExecutor#onIdle()}, even if nothing is written.
+	 */
+	void requestIdleCallback()
+	{
+		mIdleCallbackRequested = true;
+		// wakes up the writer thread
+		submitAll(Collections.<Operation>emptyList());
+	}
+
+	/**
+	 * Waits until all operations submitted before this call have been executed.
+	 * <p>
+	 * When called from the writer thread itself, this function returns immediately.
+	 */
+	void flush()
+	{
+		synchronized(mLock)
+		{
+			if(Thread.currentThread() == mThread)
+				return;
+
+			final long target = mSubmitted;
+			boolean interrupted = false;
+
+			while(mCompleted < target)
+			{
+				try
+				{
+					mLock.wait();
+				}
+				catch(InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+
+			if(interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	boolean hasPendingOperations()
+	{
+		synchronized(mLock) {
+			return mCompleted < mSubmitted;
+		}
+	}
+
+	/**
+	 * Returns the number of writes that were saved by coalescing, since startup.
+	 */
+	long getSavedWriteCount()
+	{
+		synchronized(mLock) {
+			return mSavedWrites;
+		}
+	}
+
+	/**
+	 * Coalesces operations on the same entry.
+	 * <p>
+	 * Entries are identified by their class and ID or, if they don't have
+	 * an ID yet, by identity. As the DAO always writes an entry's current state,
+	 * the following rules apply:
+	 * <ul>
+	 * <li>create + update: the update is dropped</li>
+	 * <li>update + update: only the last update is kept</li>
+	 * <li>update + delete: only the delete is kept</li>
+	 * <li>create + delete: both are dropped</li>
+	 * <li>update + supply update: the supply update is dropped</li>
+	 * <li>supply update + any: the supply update is dropped</li>
+	 * </ul>
+	 *
+	 * @return the number of operations that were removed from the batch.
+	 */
+	static int coalesce(List<Operation> batch)
+	{
+		final Operation[] ops = batch.toArray(new Operation[batch.size()]);
+		final HashMap<Key, Integer> indexes = new HashMap<Key, Integer>();
+
+		for(int i = 0; i != ops.length; ++i)
+		{
+			final Operation op = ops[i];
+			final Key key = new Key(op.entry);
+			final Integer prevIndex = indexes.get(key);
+
+			if(prevIndex == null)
+			{
+				indexes.put(key, i);
+				continue;
+			}
+
+			final Operation prev = ops[prevIndex];
+
+			if(prev.type == DbOperation.CREATE)
+			{
+				if(op.type == DbOperation.UPDATE || op.type == DbOperation.UPDATE_SUPPLY)
+				{
+					// keep the position of the create, but write the most recent instance
+					if(prev.entry != op.entry)
+						ops[prevIndex] = new Operation(prev.type, op.entry, prev.cache);
+
+					ops[i] = null;
+					continue;
+				}
+				else if(op.type == DbOperation.DELETE)
+				{
+					ops[prevIndex] = null;
+					ops[i] = null;
+					indexes.remove(key);
+					continue;
+				}
+			}
+			else if(prev.type == DbOperation.UPDATE)
+			{
+				if(op.type == DbOperation.UPDATE_SUPPLY)
+				{
+					// the full update will write the current supply anyway
+					if(prev.entry != op.entry)
+						ops[prevIndex] = new Operation(prev.type, op.entry, prev.cache);
+
+					ops[i] = null;
+					continue;
+				}
+				else if(op.type == DbOperation.UPDATE || op.type == DbOperation.DELETE)
+					ops[prevIndex] = null;
+			}
+			else if(prev.type == DbOperation.UPDATE_SUPPLY)
+				ops[prevIndex] = null;
+
+			indexes.put(key, i);
+		}
+
+		batch.clear();
+
+		for(Operation op : ops)
+		{
+			if(op != null)
+				batch.add(op);
+		}
+
+		return ops.length - batch.size();
+	}
+
+	private static final class Key
+	{
+		private final Class<?> mClass;
+		private final int mId;
+		// only set if the entry doesn't have an ID yet
+		private final Entry mPending;
+
+		Key(Entry entry)
+		{
+			mClass = entry.getClass();
+			mId = entry.id;
+			mPending = entry.id == -1 ? entry : null;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if(!(o instanceof Key))
+				return false;
+
+			final Key other = (Key) o;
+
+			if(mPending != null || other.mPending != null)
+				return mPending == other.mPending;
+
+			return mClass == other.mClass && mId == other.mId;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			if(mPending != null)
+				return System.identityHashCode(mPending);
+
+			return mClass.hashCode() * 31 + mId;
+		}
+	}
+
+	private final Runnable mRunnable = new Runnable() {
+
+		@Override
+		public void run()
+		{
+			final List<Operation> batch = new ArrayList<Operation>();
+			// true if onIdle() must be called once the queue has been empty for a while
+			boolean isBurst = false;
+
+			while(true)
+			{
+				try
+				{
+					if(isBurst)
+					{
+						final Operation op = mQueue.poll(IDLE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+						if(op == null)
+						{
+							isBurst = false;
+							runIdleCallback();
+							continue;
+						}
+
+						batch.add(op);
+					}
+					else
+						batch.add(mQueue.take());
+				}
+				catch(InterruptedException e)
+				{
+					Log.w(TAG, "Interrupted; " + mQueue.size() + " operations pending");
+					continue;
+				}
+
+				collectBatch(batch);
+
+				// groups count as one operation with regards to flush()
+				final int taken = batch.size();
+				ungroup(batch);
+
+				final int submitted = batch.size();
+				final int saved = coalesce(batch);
+
+				if(LOGV) Log.v(TAG, "Batch: " + submitted + " operations, " + saved + " saved by coalescing");
+
+				if(!batch.isEmpty() || mIdleCallbackRequested)
+				{
+					mIdleCallbackRequested = false;
+					isBurst = true;
+				}
+
+				try
+				{
+					if(!batch.isEmpty())
+						mExecutor.execute(batch);
+				}
+				catch(RuntimeException e)
+				{
+					throw e;
+				}
+				catch(Exception e)
+				{
+					throw new DatabaseHelper.DatabaseError("Failed to execute " + batch.size() + " operations", e);
+				}
+				finally
+				{
+					synchronized(mLock)
+					{
+						mCompleted += taken;
+						mSavedWrites += saved;
+						mLock.notifyAll();
+					}
+
+					batch.clear();
+				}
+			}
+		}
+
+		private void runIdleCallback()
+		{
+			try
+			{
+				mExecutor.onIdle();
+			}
+			catch(RuntimeException e)
+			{
+				// not worth crashing the writer over
+				Log.w(TAG, "onIdle() failed", e);
+			}
+		}
+
+		private void ungroup(List<Operation> batch)
+		{
+			for(int i = 0; i != batch.size(); ++i)
+			{
+				final Operation op = batch.get(i);
+				if(op.group != null)
+				{
+					batch.remove(i);
+					batch.addAll(i, op.group);
+					i += op.group.size() - 1;
+				}
+			}
+		}
+
+		private void collectBatch(List<Operation> batch)
+		{
+			final long deadline = SystemClock.uptimeMillis() + COALESCE_WINDOW_MILLIS;
+
+			while(batch.size() < MAX_BATCH_SIZE)
+			{
+				mQueue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+
+				final long remaining = deadline - SystemClock.uptimeMillis();
+				if(remaining <= 0 || batch.size() >= MAX_BATCH_SIZE)
+					break;
+
+				final Operation op;
+
+				try
+				{
+					op = mQueue.poll(remaining, TimeUnit.MILLISECONDS);
+				}
+				catch(InterruptedException e)
+				{
+					break;
+				}
+
+				if(op == null)
+					break;
+
+				batch.add(op);
+			}
+		}
+	};
+}
@@ -0,0 +1,152 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.sql.SQLException;
+
+import at.jclehner.androidutils.EventDispatcher;
+
+import com.j256.ormlite.dao.Dao;
+
+/**
+ * The database operations supported by {@link Database}.
+ * <p>
+ * Each operation knows how to run itself on a DAO, which entry callback
+ * to invoke, and how to notify listeners, so that none of this has to be
+ * looked up at runtime.
+ *
+ * @author Joseph Lehner
+ */
+/* package */ enum DbOperation implements EventDispatcher.Handler<Database.OnChangeListener, Entry>
+{
+	CREATE
+	{
+		@Override
+		<E extends Entry> void execute(Dao<E, Integer> dao, E entry) throws SQLException {
+			dao.create(entry);
+		}
+
+		@Override
+		<E extends Entry> void runCallback(EntryCallbacks<E> callbacks, E entry) {
+			callbacks.onCreate(entry);
+		}
+
+		@Override
+		public void dispatch(Database.OnChangeListener listener, Entry entry) {
+			listener.onEntryCreated(entry, 0);
+		}
+
+		@Override
+		boolean execute(CompiledStatements statements, Entry entry)
+		{
+			if(!(entry instanceof DoseEvent))
+				return false;
+
+			statements.insert((DoseEvent) entry);
+			return true;
+		}
+	},
+	UPDATE
+	{
+		@Override
+		<E extends Entry> void execute(Dao<E, Integer> dao, E entry) throws SQLException {
+			dao.update(entry);
+		}
+
+		@Override
+		<E extends Entry> void runCallback(EntryCallbacks<E> callbacks, E entry) {
+			callbacks.onUpdate(entry);
+		}
+
+		@Override
+		public void dispatch(Database.OnChangeListener listener, Entry entry) {
+			listener.onEntryUpdated(entry, 0);
+		}
+	},
+	/**
+	 * An update of a {@link Drug}, where only its current supply has changed.
+	 */
+	UPDATE_SUPPLY
+	{
+		@Override
+		<E extends Entry> void execute(Dao<E, Integer> dao, E entry) throws SQLException {
+			dao.update(entry);
+		}
+
+		@Override
+		<E extends Entry> void runCallback(EntryCallbacks<E> callbacks, E entry) {
+			callbacks.onUpdate(entry);
+		}
+
+		@Override
+		public void dispatch(Database.OnChangeListener listener, Entry entry) {
+			listener.onEntryUpdated(entry, 0);
+		}
+
+		@Override
+		boolean execute(CompiledStatements statements, Entry entry)
+		{
+			statements.updateCurrentSupply((Drug) entry);
+			return true;
+		}
+	},
+	DELETE
+	{
+		@Override
+		<E extends Entry> void execute(Dao<E, Integer> dao, E entry) throws SQLException {
+			dao.delete(entry);
+		}
+
+		@Override
+		<E extends Entry> void runCallback(EntryCallbacks<E> callbacks, E entry) {
+			callbacks.onDelete(entry);
+		}
+
+		@Override
+		public void dispatch(Database.OnChangeListener listener, Entry entry) {
+			listener.onEntryDeleted(entry, 0);
+		}
+
+		@Override
+		boolean execute(CompiledStatements statements, Entry entry)
+		{
+			if(!(entry instanceof DoseEvent))
+				return false;
+
+			statements.delete((DoseEvent) entry);
+			return true;
+		}
+	};
+
+	abstract <E extends Entry> void execute(Dao<E, Integer> dao, E entry) throws SQLException;
+
+	abstract <E extends Entry> void runCallback(EntryCallbacks<E> callbacks, E entry);
+
+	/**
+	 * Runs this operation using a precompiled statement, if one is available.
+	 *
+	 * @return <code>false</code> if the operation must be run on the DAO instead.
+	 */
+	boolean execute(CompiledStatements statements, Entry entry) {
+		return false;
+	}
+}
@@ -0,0 +1,314 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.util.Date;
+import java.util.TimeZone;
+
+import at.jclehner.rxdroid.util.Constants;
+import at.jclehner.rxdroid.util.EpochDay;
+
+/**
+ * A drug's compiled dosing schedule.
+ * <p>
+ * All non-custom repeat modes are periodic: a dose is scheduled on a day within
+ * the schedule's bounds if the day's position within the period is set in a
+ * bitmap (a single bit for {@link Drug#REPEAT_DAILY}, 7 bits for
+ * {@link Drug#REPEAT_WEEKDAYS}, 28 bits for {@link Drug#REPEAT_21_7}, and so on).
+ * Thus, checking a date only involves converting it to an epoch day, without
+ * any allocations.
+ * <p>
+ * Instances are immutable, and must be recompiled whenever the drug's schedule
+ * or the time zone changes. Dates that are not at midnight, and schedules that
+ * cannot be compiled, are not supported; in both cases {@link #toEpochDay(Date)}
+ * returns {@link #NO_DAY}, and the drug's schedule must be evaluated directly.
+ * For custom schedules, only the drug's bounds are compiled.
+ *
+ * @see Drug#hasDoseOnDate(Date)
+ *
+ * @author Joseph Lehner
+ */
+/* package */ final class DoseCalendar
+{
+	/* package */ static final int NO_DAY = Integer.MIN_VALUE;
+
+	// longer periods are rare, and would only waste memory
+	private static final int MAX_PERIOD = 512;
+
+	private final TimeZone mTimeZone;
+	private final boolean mIsSupported;
+
+	// the first and last day with a possible dose, inclusive
+	private final int mFirstDay;
+	private final int mLastDay;
+
+	// bit (i % 64) of mCycle[i / 64] is set if there is a dose
+	// on each day d, for which (d - mAnchorDay) mod mPeriod == i
+	private final int mAnchorDay;
+	private final int mPeriod;
+	private final long[] mCycle;
+
+	private DoseCalendar(TimeZone timeZone)
+	{
+		mTimeZone = timeZone;
+		mIsSupported = false;
+		mFirstDay = mLastDay = mAnchorDay = mPeriod = 0;
+		mCycle = null;
+	}
+
+	private DoseCalendar(TimeZone timeZone, int firstDay, int lastDay, int anchorDay, int period)
+	{
+		mTimeZone = timeZone;
+		mIsSupported = true;
+		mFirstDay = firstDay;
+		mLastDay = lastDay;
+		mAnchorDay = anchorDay;
+		mPeriod = period;
+		mCycle = period != 0 ? new long[(period + 63) / 64] : null;
+	}
+
+	/**
+	 * Compiles the schedule described by a drug's fields.
+	 *
+	 * @return a calendar; never <code>null</code>, but possibly unsupported.
+	 */
+	static DoseCalendar compile(int repeatMode, long repeatArg, Date repeatOrigin,
+			Date lastScheduleUpdateDate, Date scheduleEndDate, TimeZone timeZone)
+	{
+		final DoseCalendar unsupported = new DoseCalendar(timeZone);
+
+		int firstDay = Integer.MIN_VALUE;
+		int lastDay = Integer.MAX_VALUE;
+
+		if(scheduleEndDate != null)
+		{
+			lastDay = toEpochDay(scheduleEndDate, timeZone);
+			if(lastDay == NO_DAY)
+				return unsupported;
+		}
+
+		final int originDay;
+
+		switch(repeatMode)
+		{
+			case Drug.REPEAT_EVERY_N_DAYS:
+			case Drug.REPEAT_21_7:
+				if(repeatOrigin == null)
+					return unsupported;
+
+				originDay = toEpochDay(repeatOrigin, timeZone);
+				if(originDay == NO_DAY)
+					return unsupported;
+
+				firstDay = originDay;
+				break;
+
+			default:
+				originDay = 0;
+		}
+
+		if(lastScheduleUpdateDate != null)
+		{
+			final int day = toEpochDay(lastScheduleUpdateDate, timeZone);
+			if(day == NO_DAY)
+				return unsupported;
+
+			firstDay = Math.max(firstDay, day);
+		}
+
+		final DoseCalendar calendar;
+
+		switch(repeatMode)
+		{
+			case Drug.REPEAT_DAILY:
+				calendar = new DoseCalendar(timeZone, firstDay, lastDay, 0, 1);
+				calendar.setBit(0);
+				break;
+
+			case Drug.REPEAT_EVERY_N_DAYS:
+				if(repeatArg <= 0 || repeatArg > MAX_PERIOD)
+					return unsupported;
+
+				calendar = new DoseCalendar(timeZone, firstDay, lastDay, originDay, (int) repeatArg);
+				calendar.setBit(0);
+				break;
+
+			case Drug.REPEAT_WEEKDAYS:
+				calendar = new DoseCalendar(timeZone, firstDay, lastDay, 0, Constants.WEEK_DAYS.length);
+				for(int i = 0; i != Constants.WEEK_DAYS.length; ++i)
+				{
+					if((repeatArg & 1 << EpochDay.getIsoWeekDayIndex(i)) != 0)
+						calendar.setBit(i);
+				}
+				break;
+
+			case Drug.REPEAT_21_7:
+				calendar = new DoseCalendar(timeZone, firstDay, lastDay, originDay, 28);
+				for(int i = 0; i != 21; ++i)
+					calendar.setBit(i);
+				break;
+
+			case Drug.REPEAT_CUSTOM:
+				// not periodic, but the bounds still apply
+				calendar = new DoseCalendar(timeZone, firstDay, lastDay, 0, 0);
+				break;
+
+			default:
+				return unsupported;
+		}
+
+		return calendar;
+	}
+
+	TimeZone getTimeZone() {
+		return mTimeZone;
+	}
+
+	/**
+	 * Returns <code>true</code> if this calendar's bounds are valid.
+	 */
+	boolean isSupported() {
+		return mIsSupported;
+	}
+
+	/**
+	 * Returns <code>true</code> if {@link #hasDose(int)} and {@link #countDoseDays(int, int)}
+	 * can be used.
+	 */
+	boolean isPeriodic() {
+		return mIsSupported && mCycle != null;
+	}
+
+	/**
+	 * Returns the first day on which a dose is possible. Only valid if {@link #isSupported()}.
+	 */
+	int getFirstDay() {
+		return mFirstDay;
+	}
+
+	/**
+	 * Returns the last day on which a dose is possible. Only valid if {@link #isSupported()}.
+	 */
+	int getLastDay() {
+		return mLastDay;
+	}
+
+	/**
+	 * Converts the date for use with {@link #hasDose(int)}.
+	 *
+	 * @return the date's epoch day, or {@link #NO_DAY} if the date can't be
+	 * 	evaluated using this calendar.
+	 */
+	int toEpochDay(Date date) {
+		return isPeriodic() ? toEpochDay(date, mTimeZone) : NO_DAY;
+	}
+
+	/**
+	 * Returns <code>true</code> if a dose is scheduled on the specified day.
+	 *
+	 * @param day An epoch day, as returned by {@link #toEpochDay(Date)}.
+	 */
+	boolean hasDose(int day)
+	{
+		if(day < mFirstDay || day > mLastDay)
+			return false;
+
+		int i = (day - mAnchorDay) % mPeriod;
+		if(i < 0)
+			i += mPeriod;
+
+		return (mCycle[i >>> 6] & 1L << i) != 0;
+	}
+
+	/**
+	 * Returns the number of days in <code>[beginDay, endDay]</code> on which a
+	 * dose is scheduled.
+	 * <p>
+	 * The cost does not depend on the length of the range.
+	 */
+	int countDoseDays(int beginDay, int endDay)
+	{
+		beginDay = Math.max(beginDay, mFirstDay);
+		endDay = Math.min(endDay, mLastDay);
+
+		if(beginDay > endDay)
+			return 0;
+
+		final long days = (long) endDay - beginDay + 1;
+
+		int i = (int) (((long) beginDay - mAnchorDay) % mPeriod);
+		if(i < 0)
+			i += mPeriod;
+
+		final int rest = (int) (days % mPeriod);
+		int count = (int) (days / mPeriod) * countBits(0, mPeriod);
+
+		if(i + rest <= mPeriod)
+			count += countBits(i, i + rest);
+		else
+			count += countBits(i, mPeriod) + countBits(0, i + rest - mPeriod);
+
+		return count;
+	}
+
+	private void setBit(int i) {
+		mCycle[i >>> 6] |= 1L << i;
+	}
+
+	/**
+	 * Counts the bits set in <code>[from, to)</code>.
+	 */
+	private int countBits(int from, int to)
+	{
+		int count = 0;
+
+		for(int word = from >>> 6; from < to; ++word)
+		{
+			final int end = Math.min(to, (word + 1) << 6);
+			// bits [from, end) of this word
+			long mask = -1L << from;
+			if((end & 63) != 0)
+				mask &= ~(-1L << end);
+
+			count += Long.bitCount(mCycle[word] & mask);
+			from = end;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Like {@link EpochDay#fromMillis(long, TimeZone)}, but returns {@link #NO_DAY}
+	 * if the date is not at midnight.
+	 */
+	static int toEpochDay(Date date, TimeZone timeZone)
+	{
+		final long millis = date.getTime();
+		final long local = millis + timeZone.getOffset(millis);
+
+		final long day = EpochDay.floorDiv(local, Constants.MILLIS_PER_DAY);
+		if(day * Constants.MILLIS_PER_DAY != local || day <= NO_DAY || day > Integer.MAX_VALUE)
+			return NO_DAY;
+
+		return (int) day;
+	}
+}
@@ -21,6 +21,7 @@
 
 package at.jclehner.rxdroid.db;
 
+import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.Date;
 
@@ -57,16 +58,26 @@ import com.j256.ormlite.table.DatabaseTable;
 @DatabaseTable(tableName = "dose_events")
 public class DoseEvent extends Entry
 {
-	@DatabaseField(foreign = true)
+	/* package */ static final String COLUMN_DATE = "date";
+	/* package */ static final String COLUMN_DAY = "day";
+
+	// (drug_id, day, doseTime); the column order is determined by the field order
+	/* package */ static final String INDEX_DRUG_DAY_DOSE_TIME = "dose_events_drug_day_doseTime_idx";
+
+	@DatabaseField(foreign = true, indexName = INDEX_DRUG_DAY_DOSE_TIME)
 	private Drug drug;
 
-	@DatabaseField
+	@DatabaseField(columnName = COLUMN_DATE)
 	private java.util.Date date;
 
+	// the date as returned by DateTime.toEpochDay(); only used for querying
+	@DatabaseField(columnName = COLUMN_DAY, indexName = INDEX_DRUG_DAY_DOSE_TIME)
+	private int day;
+
 	@DatabaseField
 	private java.util.Date timestamp;
 
-	@DatabaseField
+	@DatabaseField(indexName = INDEX_DRUG_DAY_DOSE_TIME)
 	private int doseTime;
 
 	@DatabaseField(persisterClass = FractionPersister.class)
@@ -81,11 +92,36 @@ public class DoseEvent extends Entry
 	{
 		this.drug = drug;
 		this.date = date;
+		this.day = DateTime.toEpochDay(date);
 		this.timestamp = new Timestamp(System.currentTimeMillis());
 		this.doseTime = doseTime;
 		this.dose = dose;
 	}
 
+	/**
+	 * Constructs an event from a database row.
+	 *
+	 * @param drugId The drug's ID, or <code>-1</code>.
+	 */
+	/* package */ DoseEvent(int id, int drugId, Date date, int day, Date timestamp, int doseTime,
+			Fraction dose, boolean wasAutoCreated)
+	{
+		if(drugId != -1)
+		{
+			// like ORMLite, only set the ID of foreign entries
+			this.drug = new Drug();
+			this.drug.id = drugId;
+		}
+
+		this.id = id;
+		this.date = date;
+		this.day = day;
+		this.timestamp = timestamp;
+		this.doseTime = doseTime;
+		this.dose = dose;
+		this.wasAutoCreated = wasAutoCreated;
+	}
+
 	/**
 	 * Constructs an empty intake.
 	 * <p>
@@ -116,6 +152,15 @@ public class DoseEvent extends Entry
 		return date;
 	}
 
+	/**
+	 * Returns the event's date as an epoch day.
+	 *
+	 * @see DateTime#toEpochDay(Date)
+	 */
+	public int getEpochDay() {
+		return day;
+	}
+
 	public Date getTimestamp() {
 		return timestamp;
 	}
@@ -146,6 +191,37 @@ public class DoseEvent extends Entry
 		return hasher.getHashCode();
 	}
 
+	@Override
+	/* package */ void writeTo(CacheImage.Output out) throws IOException
+	{
+		out.writeForeignId(drug);
+		out.writeDate(date);
+		out.writeInt(day);
+		out.writeDate(timestamp);
+		out.writeInt(doseTime);
+		out.writeFraction(dose);
+		out.writeBoolean(wasAutoCreated);
+	}
+
+	@Override
+	/* package */ void readFrom(CacheImage.Input in)
+	{
+		final int drugId = in.readForeignId();
+		if(drugId != -1)
+		{
+			// like ORMLite, only set the ID of foreign entries
+			drug = new Drug();
+			drug.id = drugId;
+		}
+
+		date = in.readDate();
+		day = in.readInt();
+		timestamp = in.readDate();
+		doseTime = in.readInt();
+		dose = in.readFraction();
+		wasAutoCreated = in.readBoolean();
+	}
+
 	@Override
 	public boolean equals(Object o)
 	{
@@ -180,18 +256,4 @@ public class DoseEvent extends Entry
 
 		return drugName + ": " + date + " " + Entries.getDoseTimeString(doseTime) + ", " + dose;
 	}
-
-	/* package */ static boolean has(DoseEvent intake, Drug drug, Date date, Integer doseTime)
-	{
-		if(drug.id != intake.drug.id)
-			return false;
-
-		if(doseTime != null && doseTime != intake.doseTime)
-			return false;
-
-		if(date != null && !DateTime.equalsDate(date, intake.date))
-			return false;
-
-		return true;
-	}
 }
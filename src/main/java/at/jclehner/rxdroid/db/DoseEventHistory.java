@@ -0,0 +1,183 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.util.Log;
+
+/**
+ * {@link DoseEvent}s that are older than the cached window.
+ * <p>
+ * If {@link Database#USE_DOSE_EVENT_WINDOW} is <code>true</code>, only events
+ * on or after {@link #getWindowStart()} are kept in the entry cache. Older events
+ * are loaded on demand, in pages of {@link #PAGE_DAYS} days per drug, using the
+ * <code>(drug_id, day, doseTime)</code> index. The most recently used pages are
+ * kept in memory, and kept in sync with the database whenever a historical
+ * event is created, updated or deleted.
+ *
+ * @author Joseph Lehner
+ */
+/* package */ final class DoseEventHistory
+{
+	private static final String TAG = DoseEventHistory.class.getSimpleName();
+	private static final boolean LOGV = false;
+
+	/* package */ static final int PAGE_DAYS = 32;
+	private static final int MAX_PAGES = 24;
+
+	/* package */ interface Loader
+	{
+		/**
+		 * Returns all events of a drug with an epoch day in <code>[beginDay, endDay)</code>.
+		 */
+		List<DoseEvent> load(int drugId, int beginDay, int endDay);
+	}
+
+	private final Loader mLoader;
+
+	// all guarded by this object's lock
+	private final LinkedHashMap<Long, DoseEventIndex> mPages =
+			new LinkedHashMap<Long, DoseEventIndex>(MAX_PAGES, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, DoseEventIndex> eldest) {
+			return size() > MAX_PAGES;
+		}
+	};
+
+	private volatile int mWindowStart = Integer.MIN_VALUE;
+
+	DoseEventHistory(Loader loader) {
+		mLoader = loader;
+	}
+
+	/**
+	 * Returns the epoch day of the oldest event in the cached window.
+	 * <p>
+	 * Returns {@link Integer#MIN_VALUE} if all events are cached.
+	 */
+	int getWindowStart() {
+		return mWindowStart;
+	}
+
+	synchronized void setWindowStart(int windowStart)
+	{
+		mWindowStart = windowStart;
+		mPages.clear();
+	}
+
+	boolean isInWindow(int epochDay) {
+		return epochDay >= mWindowStart;
+	}
+
+	/**
+	 * Returns the page containing the events of a drug on the specified epoch day.
+	 * <p>
+	 * Since the page may have to be loaded from the database, callers must ensure
+	 * that there are no pending writes.
+	 */
+	synchronized DoseEventIndex getPage(int drugId, int epochDay)
+	{
+		final Long key = getPageKey(drugId, epochDay);
+
+		DoseEventIndex page = mPages.get(key);
+		if(page == null)
+		{
+			final int beginDay = getPageIndex(epochDay) * PAGE_DAYS;
+			// the last page ends at the start of the window
+			final int endDay = Math.min(beginDay + PAGE_DAYS, mWindowStart);
+
+			page = new DoseEventIndex();
+			page.addAll(mLoader.load(drugId, beginDay, endDay));
+			mPages.put(key, page);
+
+			if(LOGV) Log.v(TAG, "Loaded page: drug=" + drugId + ", days=[" + beginDay + ", " + endDay + ")");
+		}
+
+		return page;
+	}
+
+	/**
+	 * Updates a loaded page after an event has been created.
+	 * <p>
+	 * If the page has not been loaded, it will contain the event once it is.
+	 */
+	synchronized void add(DoseEvent event)
+	{
+		final DoseEventIndex page = getLoadedPage(event);
+		if(page != null)
+			page.add(event);
+	}
+
+	synchronized void replace(DoseEvent event)
+	{
+		final DoseEventIndex page = getLoadedPage(event);
+		if(page != null)
+		{
+			page.remove(event);
+			page.add(event);
+		}
+	}
+
+	synchronized void remove(DoseEvent event)
+	{
+		final DoseEventIndex page = getLoadedPage(event);
+		if(page != null)
+			page.remove(event);
+	}
+
+	/**
+	 * Drops all loaded pages.
+	 */
+	synchronized void clear() {
+		mPages.clear();
+	}
+
+	private DoseEventIndex getLoadedPage(DoseEvent event) {
+		return mPages.get(getPageKey(event.getDrugId(), event.getEpochDay()));
+	}
+
+	/**
+	 * Returns the last epoch day of the page containing the specified day.
+	 */
+	static int getPageEnd(int epochDay) {
+		return (getPageIndex(epochDay) + 1) * PAGE_DAYS - 1;
+	}
+
+	private static Long getPageKey(int drugId, int epochDay) {
+		return ((long) drugId << 32) | (getPageIndex(epochDay) & 0xffffffffL);
+	}
+
+	private static int getPageIndex(int epochDay)
+	{
+		// rounds towards negative infinity
+		if(epochDay >= 0)
+			return epochDay / PAGE_DAYS;
+
+		return (epochDay - PAGE_DAYS + 1) / PAGE_DAYS;
+	}
+}
@@ -0,0 +1,340 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import at.jclehner.rxdroid.util.DateTime;
+import at.jclehner.rxdroid.util.IntMap;
+
+/**
+ * Secondary index for cached {@link DoseEvent}s.
+ * <p>
+ * Events are grouped by drug ID, then by epoch day (see {@link DateTime#toEpochDay(Date)}),
+ * and finally by dose time, so that looking up the events of a specific drug, date and
+ * dose time does not require scanning the whole history. Additionally, the
+ * slots in which a drug was taken are tracked in a {@link DoseSlotSet}, so that
+ * missed doses can be detected without counting events.
+ * <p>
+ * The index is owned by {@link Database}, which keeps it in sync with the cache
+ * whenever an entry is created, updated or deleted.
+ *
+ * @author Joseph Lehner
+ */
+/* package */ final class DoseEventIndex
+{
+	private static final class Day
+	{
+		@SuppressWarnings("unchecked")
+		final ArrayList<DoseEvent>[] slots = new ArrayList[Schedule.DOSE_TIME_COUNT];
+	}
+
+	private static final class DrugEvents
+	{
+		// all events of this drug, in cache order
+		final ArrayList<DoseEvent> all = new ArrayList<DoseEvent>();
+		final IntMap<Day> days = new IntMap<Day>();
+		// slots with at least one event
+		final DoseSlotSet taken = new DoseSlotSet();
+	}
+
+	private static final DoseSlotSet NONE_TAKEN = new DoseSlotSet();
+
+	private final IntMap<DrugEvents> mDrugs = new IntMap<DrugEvents>();
+
+	synchronized void addAll(Collection<DoseEvent> events)
+	{
+		for(DoseEvent event : events)
+			add(event);
+	}
+
+	synchronized void add(DoseEvent event)
+	{
+		final int drugId = event.getDrugId();
+
+		DrugEvents drugEvents = mDrugs.get(drugId);
+		if(drugEvents == null)
+		{
+			drugEvents = new DrugEvents();
+			mDrugs.put(drugId, drugEvents);
+		}
+
+		drugEvents.all.add(event);
+
+		final int epochDay = event.getEpochDay();
+
+		Day day = drugEvents.days.get(epochDay);
+		if(day == null)
+		{
+			day = new Day();
+			drugEvents.days.put(epochDay, day);
+		}
+
+		final int doseTime = event.getDoseTime();
+
+		ArrayList<DoseEvent> slot = day.slots[doseTime];
+		if(slot == null)
+		{
+			slot = new ArrayList<DoseEvent>(1);
+			day.slots[doseTime] = slot;
+		}
+
+		slot.add(event);
+		drugEvents.taken.set(epochDay, doseTime);
+	}
+
+	synchronized void replace(DoseEvent oldEvent, DoseEvent newEvent)
+	{
+		if(oldEvent != null)
+			remove(oldEvent);
+
+		add(newEvent);
+	}
+
+	synchronized void remove(DoseEvent event)
+	{
+		final DrugEvents drugEvents = mDrugs.get(event.getDrugId());
+		if(drugEvents == null)
+			return;
+
+		removeFromList(drugEvents.all, event);
+		removeFromSlot(drugEvents, event);
+	}
+
+	/**
+	 * Removes the specified events, which must be the same instances that were added.
+	 * <p>
+	 * Unlike calling {@link #remove(DoseEvent)} for each event, each drug's
+	 * list of events is compacted only once. Readers will never see a partially
+	 * updated index.
+	 */
+	synchronized void removeAll(Collection<DoseEvent> events)
+	{
+		if(events.isEmpty())
+			return;
+
+		final Set<DoseEvent> removed = Collections.newSetFromMap(new IdentityHashMap<DoseEvent, Boolean>());
+		final Set<DrugEvents> modified = Collections.newSetFromMap(new IdentityHashMap<DrugEvents, Boolean>());
+
+		for(DoseEvent event : events)
+		{
+			final DrugEvents drugEvents = mDrugs.get(event.getDrugId());
+			if(drugEvents == null)
+				continue;
+
+			removeFromSlot(drugEvents, event);
+			removed.add(event);
+			modified.add(drugEvents);
+		}
+
+		for(DrugEvents drugEvents : modified)
+		{
+			final ArrayList<DoseEvent> all = drugEvents.all;
+			int kept = 0;
+
+			for(int i = 0; i != all.size(); ++i)
+			{
+				final DoseEvent event = all.get(i);
+				if(!removed.contains(event))
+					all.set(kept++, event);
+			}
+
+			all.subList(kept, all.size()).clear();
+		}
+	}
+
+	synchronized void clear() {
+		mDrugs.clear();
+	}
+
+	/**
+	 * Counts the events matching the specified criteria.
+	 * <p>
+	 * This function does not allocate memory.
+	 *
+	 * @param date The event's date. Can be <code>null</code>.
+	 * @param doseTime The event's dose time. Can be <code>null</code>.
+	 */
+	synchronized int count(int drugId, Date date, Integer doseTime)
+	{
+		final DrugEvents drugEvents = mDrugs.get(drugId);
+		if(drugEvents == null)
+			return 0;
+
+		if(date == null)
+		{
+			if(doseTime == null)
+				return drugEvents.all.size();
+
+			int count = 0;
+
+			for(int i = 0; i != drugEvents.all.size(); ++i)
+			{
+				if(drugEvents.all.get(i).getDoseTime() == doseTime)
+					++count;
+			}
+
+			return count;
+		}
+
+		return countOnDay(drugEvents, DateTime.toEpochDay(date), doseTime);
+	}
+
+	/**
+	 * Like {@link #count(int, Date, Integer)}, but for an epoch day.
+	 */
+	synchronized int countOnDay(int drugId, int epochDay, Integer doseTime)
+	{
+		final DrugEvents drugEvents = mDrugs.get(drugId);
+		if(drugEvents == null)
+			return 0;
+
+		return countOnDay(drugEvents, epochDay, doseTime);
+	}
+
+	private static int countOnDay(DrugEvents drugEvents, int epochDay, Integer doseTime)
+	{
+		final Day day = drugEvents.days.get(epochDay);
+		if(day == null)
+			return 0;
+
+		if(doseTime != null)
+			return sizeOf(day.slots[doseTime]);
+
+		int count = 0;
+
+		for(ArrayList<DoseEvent> slot : day.slots)
+			count += sizeOf(slot);
+
+		return count;
+	}
+
+	/**
+	 * Returns <code>true</code> if there is no event for a slot in
+	 * <code>[beginDay, endDay]</code> in which a dose was expected.
+	 *
+	 * @see DoseSlotSet#hasMissingSlots(DoseCalendar, int, int, int)
+	 */
+	synchronized boolean hasMissingDoses(int drugId, DoseCalendar calendar, int doseMask, int beginDay, int endDay)
+	{
+		final DrugEvents drugEvents = mDrugs.get(drugId);
+		final DoseSlotSet taken = drugEvents != null ? drugEvents.taken : NONE_TAKEN;
+		return taken.hasMissingSlots(calendar, doseMask, beginDay, endDay);
+	}
+
+	/**
+	 * Returns the events matching the specified criteria.
+	 * <p>
+	 * The returned list is a copy, so callers may modify the database while
+	 * iterating over it.
+	 *
+	 * @param date The event's date. Can be <code>null</code>.
+	 * @param doseTime The event's dose time. Can be <code>null</code>.
+	 */
+	synchronized List<DoseEvent> find(int drugId, Date date, Integer doseTime)
+	{
+		final DrugEvents drugEvents = mDrugs.get(drugId);
+		if(drugEvents == null)
+			return Collections.emptyList();
+
+		if(date == null)
+		{
+			if(doseTime == null)
+				return new ArrayList<DoseEvent>(drugEvents.all);
+
+			final List<DoseEvent> events = new ArrayList<DoseEvent>();
+
+			for(DoseEvent event : drugEvents.all)
+			{
+				if(event.getDoseTime() == doseTime)
+					events.add(event);
+			}
+
+			return events;
+		}
+
+		final Day day = drugEvents.days.get(DateTime.toEpochDay(date));
+		if(day == null)
+			return Collections.emptyList();
+
+		if(doseTime != null)
+		{
+			final ArrayList<DoseEvent> slot = day.slots[doseTime];
+			if(slot == null || slot.isEmpty())
+				return Collections.emptyList();
+
+			return new ArrayList<DoseEvent>(slot);
+		}
+
+		final List<DoseEvent> events = new ArrayList<DoseEvent>();
+
+		for(ArrayList<DoseEvent> slot : day.slots)
+		{
+			if(slot != null)
+				events.addAll(slot);
+		}
+
+		return events;
+	}
+
+	private static void removeFromSlot(DrugEvents drugEvents, DoseEvent event)
+	{
+		final Day day = drugEvents.days.get(event.getEpochDay());
+		if(day == null)
+			return;
+
+		final ArrayList<DoseEvent> slot = day.slots[event.getDoseTime()];
+		if(slot != null)
+		{
+			removeFromList(slot, event);
+			if(slot.isEmpty())
+				drugEvents.taken.clear(event.getEpochDay(), event.getDoseTime());
+		}
+	}
+
+	private static int sizeOf(List<DoseEvent> slot) {
+		return slot != null ? slot.size() : 0;
+	}
+
+	private static void removeFromList(ArrayList<DoseEvent> list, DoseEvent event)
+	{
+		// Prefer identity (or the ID, if already assigned) over equals(), as two distinct
+		// events may very well be equal.
+		for(int i = 0; i != list.size(); ++i)
+		{
+			final DoseEvent e = list.get(i);
+			if(e == event || (event.id != -1 && e.id == event.id))
+			{
+				list.remove(i);
+				return;
+			}
+		}
+
+		list.remove(event);
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.WeakHashMap;
+
+import at.jclehner.androidutils.EventDispatcher;
+import at.jclehner.rxdroid.db.Database.OnChangeListener;
+import at.jclehner.rxdroid.util.DateTime;
+import at.jclehner.rxdroid.util.IntMap;
+
+/**
+ * Listeners that are only interested in the dose events of a specific drug,
+ * date and dose time.
+ * <p>
+ * Subscribers are notified of changes to matching {@link DoseEvent}s, and of
+ * changes to the {@link Drug} itself. Listeners are only weakly referenced.
+ *
+ * @see Database#subscribe(OnChangeListener, int, Date, int)
+ *
+ * @author Joseph Lehner
+ */
+/* package */ final class DoseEventSubscriptions
+{
+	private static final class Key
+	{
+		final int drugId;
+		final int slot;
+
+		Key(int drugId, int slot)
+		{
+			this.drugId = drugId;
+			this.slot = slot;
+		}
+	}
+
+	// drug ID -> slot -> subscribers
+	private final IntMap<IntMap<EventDispatcher<OnChangeListener>>> mDrugs =
+			new IntMap<IntMap<EventDispatcher<OnChangeListener>>>();
+	private final WeakHashMap<OnChangeListener, Key> mKeys = new WeakHashMap<OnChangeListener, Key>();
+
+	synchronized void subscribe(OnChangeListener listener, int drugId, Date date, int doseTime)
+	{
+		unsubscribe(listener);
+
+		final Key key = new Key(drugId, toSlot(DateTime.toEpochDay(date), doseTime));
+
+		IntMap<EventDispatcher<OnChangeListener>> slots = mDrugs.get(drugId);
+		if(slots == null)
+		{
+			slots = new IntMap<EventDispatcher<OnChangeListener>>();
+			mDrugs.put(drugId, slots);
+		}
+
+		EventDispatcher<OnChangeListener> dispatcher = slots.get(key.slot);
+		if(dispatcher == null)
+		{
+			dispatcher = new EventDispatcher<OnChangeListener>();
+			slots.put(key.slot, dispatcher);
+		}
+
+		dispatcher.register(listener);
+		mKeys.put(listener, key);
+	}
+
+	synchronized void unsubscribe(OnChangeListener listener)
+	{
+		final Key key = mKeys.remove(listener);
+		if(key == null)
+			return;
+
+		final IntMap<EventDispatcher<OnChangeListener>> slots = mDrugs.get(key.drugId);
+		if(slots == null)
+			return;
+
+		final EventDispatcher<OnChangeListener> dispatcher = slots.get(key.slot);
+		if(dispatcher == null)
+			return;
+
+		dispatcher.unregister(listener);
+
+		if(dispatcher.isEmpty())
+		{
+			slots.remove(key.slot);
+			if(slots.isEmpty())
+				mDrugs.remove(key.drugId);
+		}
+	}
+
+	/**
+	 * Adds the subscribers affected by a change of <code>entry</code> to <code>out</code>.
+	 */
+	synchronized void collect(Entry entry, Collection<EventDispatcher<OnChangeListener>> out)
+	{
+		if(entry instanceof DoseEvent)
+		{
+			final DoseEvent event = (DoseEvent) entry;
+			final IntMap<EventDispatcher<OnChangeListener>> slots = mDrugs.get(event.getDrugId());
+			if(slots == null)
+				return;
+
+			final EventDispatcher<OnChangeListener> dispatcher =
+					slots.get(toSlot(event.getEpochDay(), event.getDoseTime()));
+			if(dispatcher != null && !out.contains(dispatcher))
+				out.add(dispatcher);
+		}
+		else if(entry instanceof Drug)
+		{
+			final IntMap<EventDispatcher<OnChangeListener>> slots = mDrugs.get(entry.getId());
+			if(slots == null)
+				return;
+
+			for(EventDispatcher<OnChangeListener> dispatcher : slots.values())
+			{
+				if(!out.contains(dispatcher))
+					out.add(dispatcher);
+			}
+		}
+	}
+
+	synchronized boolean isEmpty() {
+		return mDrugs.isEmpty();
+	}
+
+	private static int toSlot(int epochDay, int doseTime) {
+		return epochDay * Schedule.DOSE_TIME_COUNT + doseTime;
+	}
+}
@@ -0,0 +1,245 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import at.jclehner.rxdroid.Fraction;
+import at.jclehner.rxdroid.Fraction.MutableFraction;
+import at.jclehner.rxdroid.util.Constants;
+import at.jclehner.rxdroid.util.DateTime;
+
+/**
+ * Computes the total dose of a drug over a range of days.
+ * <p>
+ * For simple schedules, the number of days with a dose is counted using the
+ * drug's {@link DoseCalendar}, and multiplied by the daily dose. Custom schedules
+ * are periodic within each {@link Schedule}'s bounds: the dose on each day of
+ * one period is evaluated once, and multiplied by the number of full periods
+ * in the range. Thus, the cost does not depend on the length of the range.
+ * <p>
+ * The result always equals that of {@link Entries#getTotalDoseInTimePeriod_dumb(Drug, Date, Date, boolean)}.
+ *
+ * @author Joseph Lehner
+ */
+/* package */ final class DoseForecast
+{
+	// longer periods are evaluated day by day
+	private static final int MAX_SCHEDULE_PERIOD = 7 * 512;
+
+	private DoseForecast() {}
+
+	/**
+	 * Returns the total dose scheduled after <code>begin</code>, up to and
+	 * including <code>end</code>.
+	 *
+	 * @return the total dose, or <code>null</code> if it can't be computed this
+	 * 	way, in which case the days must be evaluated one by one.
+	 */
+	static Fraction getTotalDose(Drug drug, Date begin, Date end)
+	{
+		if(drug.isAsNeeded())
+			return Fraction.ZERO;
+
+		final DoseCalendar calendar = drug.getDoseCalendar();
+		if(!calendar.isSupported())
+			return null;
+
+		final int beginDay = DoseCalendar.toEpochDay(begin, calendar.getTimeZone());
+		if(beginDay == DoseCalendar.NO_DAY)
+			return null;
+
+		final int firstDay = Math.max(beginDay + 1, calendar.getFirstDay());
+		final int lastDay = Math.min(DateTime.toEpochDay(end), calendar.getLastDay());
+
+		if(calendar.isPeriodic())
+		{
+			final MutableFraction dailyDose = new MutableFraction();
+			for(int doseTime : Constants.DOSE_TIMES)
+			{
+				final Fraction dose = drug.getDose(doseTime);
+				if(dose.isNegative())
+					return null;
+
+				dailyDose.add(dose);
+			}
+
+			if(firstDay > lastDay)
+				return Fraction.ZERO;
+
+			return dailyDose.times(calendar.countDoseDays(firstDay, lastDay));
+		}
+
+		if(drug.getRepeatMode() != Drug.REPEAT_CUSTOM)
+			return null;
+
+		if(firstDay > lastDay)
+			return Fraction.ZERO;
+
+		return getTotalDose(drug.getSchedules(), firstDay, lastDay, calendar);
+	}
+
+	private static Fraction getTotalDose(List<Schedule> schedules, int firstDay, int lastDay,
+			DoseCalendar calendar)
+	{
+		final MutableFraction total = new MutableFraction();
+
+		// the days in [firstDay, lastDay] not covered by a previous schedule;
+		// each element is a { first, last } pair
+		List<int[]> uncovered = new ArrayList<int[]>();
+		uncovered.add(new int[] { firstDay, lastDay });
+
+		for(Schedule schedule : schedules)
+		{
+			if(schedule.begin == null)
+				return null;
+
+			final int scheduleFirstDay = DoseCalendar.toEpochDay(schedule.begin, calendar.getTimeZone());
+			final int scheduleLastDay = schedule.end != null ?
+					DoseCalendar.toEpochDay(schedule.end, calendar.getTimeZone()) : Integer.MAX_VALUE;
+
+			if(scheduleFirstDay == DoseCalendar.NO_DAY || scheduleLastDay == DoseCalendar.NO_DAY)
+				return null;
+
+			final int period = getPeriod(schedule);
+			if(period == 0)
+				return null;
+
+			final List<int[]> remaining = new ArrayList<int[]>();
+
+			for(int[] range : uncovered)
+			{
+				final int first = Math.max(range[0], scheduleFirstDay);
+				final int last = Math.min(range[1], scheduleLastDay);
+
+				if(first > last)
+				{
+					remaining.add(range);
+					continue;
+				}
+
+				final Fraction dose = getTotalDose(schedule, period, first, last);
+				if(dose == null)
+					return null;
+
+				total.add(dose);
+
+				if(range[0] < first)
+					remaining.add(new int[] { range[0], first - 1 });
+				if(last < range[1])
+					remaining.add(new int[] { last + 1, range[1] });
+			}
+
+			uncovered = remaining;
+			if(uncovered.isEmpty())
+				break;
+		}
+
+		return total;
+	}
+
+	/**
+	 * Returns the schedule's total dose in <code>[firstDay, lastDay]</code>, all
+	 * of which must be within the schedule's bounds.
+	 */
+	private static Fraction getTotalDose(Schedule schedule, int period, int firstDay, int lastDay)
+	{
+		final long days = (long) lastDay - firstDay + 1;
+		final int sampleDays = (int) Math.min(days, period);
+
+		// the doses on each day of one period, starting at firstDay
+		final MutableFraction periodDose = new MutableFraction();
+		final MutableFraction restDose = new MutableFraction();
+		final int rest = (int) (days % period);
+
+		for(int i = 0; i != sampleDays; ++i)
+		{
+			for(Fraction dose : schedule.getDosesOnDay(firstDay + i))
+			{
+				if(dose == null)
+					continue;
+
+				if(dose.isNegative())
+					return null;
+
+				periodDose.add(dose);
+				if(i < rest)
+					restDose.add(dose);
+			}
+		}
+
+		if(days <= period)
+			return periodDose;
+
+		return periodDose.times((int) (days / period)).plus(restDose);
+	}
+
+	/**
+	 * Returns a period of the schedule's doses, or <code>0</code>.
+	 */
+	private static int getPeriod(Schedule schedule)
+	{
+		final long repeatArg = schedule.getRepeatArg();
+		final long period;
+
+		// weekday-specific doses repeat every week
+		switch(schedule.getRepeatMode())
+		{
+			case Schedule.REPEAT_DAILY:
+			case Schedule.REPEAT_ON_DEMAND:
+			case Schedule.REPEAT_EVERY_6_8_12_OR_24_HOURS:
+			case Schedule.REPEAT_WEEKDAYS:
+				period = 7;
+				break;
+
+			case Schedule.REPEAT_EVERY_N_DAYS:
+				period = repeatArg > 0 ? lcm(repeatArg, 7) : 0;
+				break;
+
+			case Schedule.REPEAT_DAILY_WITH_PAUSE:
+				// same as Schedule, including the sign extension of the mask
+				final long cycleLength = (repeatArg & 0xffff0000) >> 16;
+				period = cycleLength > 0 ? lcm(cycleLength, 7) : 0;
+				break;
+
+			default:
+				period = 0;
+		}
+
+		return period <= MAX_SCHEDULE_PERIOD ? (int) period : 0;
+	}
+
+	private static long lcm(long a, long b)
+	{
+		long x = a, y = b;
+		while(y != 0)
+		{
+			final long t = x % y;
+			x = y;
+			y = t;
+		}
+
+		return a / x * b;
+	}
+}
@@ -0,0 +1,130 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import at.jclehner.rxdroid.util.IntMap;
+
+/**
+ * A sparse bitmap of a drug's dose slots.
+ * <p>
+ * Each slot is an (epoch day, dose time) pair. Since there are four dose times,
+ * each <code>long</code> covers 16 days, so checking a whole week against the
+ * doses expected by a {@link DoseCalendar} only touches one or two words.
+ * <p>
+ * Used by {@link DoseEventIndex} to track the slots in which a drug was taken.
+ *
+ * @author Joseph Lehner
+ */
+/* package */ final class DoseSlotSet
+{
+	// 4 bits per day; this relies on Schedule.DOSE_TIME_COUNT being 4
+	private static final int DAY_SHIFT = 2;
+	private static final int DAYS_PER_WORD_SHIFT = 6 - DAY_SHIFT;
+	private static final int DAYS_PER_WORD_MASK = (1 << DAYS_PER_WORD_SHIFT) - 1;
+
+	// 16 words, or 256 days, per chunk
+	private static final int WORDS_PER_CHUNK_SHIFT = 4;
+	private static final int WORDS_PER_CHUNK_MASK = (1 << WORDS_PER_CHUNK_SHIFT) - 1;
+
+	private final IntMap<long[]> mChunks = new IntMap<long[]>();
+
+	void set(int day, int doseTime)
+	{
+		final int word = day >> DAYS_PER_WORD_SHIFT;
+
+		long[] chunk = mChunks.get(word >> WORDS_PER_CHUNK_SHIFT);
+		if(chunk == null)
+		{
+			chunk = new long[1 << WORDS_PER_CHUNK_SHIFT];
+			mChunks.put(word >> WORDS_PER_CHUNK_SHIFT, chunk);
+		}
+
+		chunk[word & WORDS_PER_CHUNK_MASK] |= bit(day, doseTime);
+	}
+
+	void clear(int day, int doseTime)
+	{
+		final int word = day >> DAYS_PER_WORD_SHIFT;
+
+		final long[] chunk = mChunks.get(word >> WORDS_PER_CHUNK_SHIFT);
+		if(chunk != null)
+			chunk[word & WORDS_PER_CHUNK_MASK] &= ~bit(day, doseTime);
+	}
+
+	boolean get(int day, int doseTime) {
+		return (getWord(day >> DAYS_PER_WORD_SHIFT) & bit(day, doseTime)) != 0;
+	}
+
+	void clear() {
+		mChunks.clear();
+	}
+
+	/**
+	 * Returns <code>true</code> if a slot in <code>[beginDay, endDay]</code> is
+	 * expected, but not set.
+	 * <p>
+	 * A slot is expected if the calendar has a dose on its day, and its dose time
+	 * is set in <code>doseMask</code>.
+	 *
+	 * @param calendar A periodic calendar (see {@link DoseCalendar#isPeriodic()}).
+	 * @param doseMask Bit <code>i</code> is set if a dose is scheduled at dose time <code>i</code>.
+	 */
+	boolean hasMissingSlots(DoseCalendar calendar, int doseMask, int beginDay, int endDay)
+	{
+		beginDay = Math.max(beginDay, calendar.getFirstDay());
+		endDay = Math.min(endDay, calendar.getLastDay());
+
+		for(int day = beginDay; day <= endDay; )
+		{
+			// the last day covered by this word
+			final int lastDay = Math.min(endDay, day | DAYS_PER_WORD_MASK);
+
+			long expected = 0;
+
+			for(int d = day; d <= lastDay; ++d)
+			{
+				if(calendar.hasDose(d))
+					expected |= (long) doseMask << ((d & DAYS_PER_WORD_MASK) << DAY_SHIFT);
+			}
+
+			if((expected & ~getWord(day >> DAYS_PER_WORD_SHIFT)) != 0)
+				return true;
+
+			if(lastDay == Integer.MAX_VALUE)
+				break;
+
+			day = lastDay + 1;
+		}
+
+		return false;
+	}
+
+	private long getWord(int word)
+	{
+		final long[] chunk = mChunks.get(word >> WORDS_PER_CHUNK_SHIFT);
+		return chunk != null ? chunk[word & WORDS_PER_CHUNK_MASK] : 0;
+	}
+
+	private static long bit(int day, int doseTime) {
+		return 1L << (((day & DAYS_PER_WORD_MASK) << DAY_SHIFT) + doseTime);
+	}
+}
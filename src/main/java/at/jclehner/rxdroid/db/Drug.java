@@ -21,20 +21,20 @@
 
 package at.jclehner.rxdroid.db;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.TimeZone;
 
 import android.util.Log;
 import at.jclehner.androidutils.LazyValue;
 import at.jclehner.rxdroid.BuildConfig;
 import at.jclehner.rxdroid.Fraction;
-import at.jclehner.rxdroid.util.CollectionUtils;
-import at.jclehner.rxdroid.util.Constants;
 import at.jclehner.rxdroid.util.DateTime;
+import at.jclehner.rxdroid.util.EpochDay;
 import at.jclehner.rxdroid.util.Hasher;
 import at.jclehner.rxdroid.util.Keep;
 import at.jclehner.rxdroid.util.Util;
@@ -212,12 +212,55 @@ public class Drug extends Entry implements Comparable<Drug>
 
 	private transient Fraction[] mSimpleSchedule;
 
+	// compiled lazily; reset whenever the schedule changes
+	private transient volatile DoseCalendar mDoseCalendar;
+
 	/**
 	 * Default constructor, required by ORMLite.
 	 */
 	public Drug() {}
 
 	public boolean hasDoseOnDate(Date date)
+	{
+		final DoseCalendar calendar = getDoseCalendar();
+		if(calendar.isSupported())
+		{
+			final int day = DoseCalendar.toEpochDay(date, calendar.getTimeZone());
+			if(day != DoseCalendar.NO_DAY)
+				return hasDoseOnDay(calendar, day);
+		}
+
+		return hasDoseOnDateUncompiled(date);
+	}
+
+	/**
+	 * Like {@link #hasDoseOnDate(Date)}, but for an epoch day (see {@link EpochDay}).
+	 */
+	public boolean hasDoseOnDay(int day)
+	{
+		final DoseCalendar calendar = getDoseCalendar();
+		if(calendar.isSupported())
+			return hasDoseOnDay(calendar, day);
+
+		return hasDoseOnDateUncompiled(EpochDay.toDate(day));
+	}
+
+	private boolean hasDoseOnDay(DoseCalendar calendar, int day)
+	{
+		if(calendar.isPeriodic())
+			return calendar.hasDose(day);
+
+		// custom schedules only have their bounds compiled
+		if(day < calendar.getFirstDay() || day > calendar.getLastDay())
+			return false;
+
+		return Schedules.hasDoseOnDay(day, mSchedules.get());
+	}
+
+	/**
+	 * Evaluates the schedule without using the {@link DoseCalendar}.
+	 */
+	/* package */ boolean hasDoseOnDateUncompiled(Date date)
 	{
 		if(scheduleEndDate != null && date.after(scheduleEndDate))
 			return false;
@@ -256,18 +299,17 @@ public class Drug extends Entry implements Comparable<Drug>
 				return true;
 
 			case REPEAT_EVERY_N_DAYS:
-				return (DateTime.diffDays(date, repeatOrigin) % repeatArg) == 0;
+				return getDaysUntilRepeatOrigin(date) % repeatArg == 0;
 
 			case REPEAT_WEEKDAYS:
-				final Calendar cal = DateTime.calendarFromDate(date);
-				return hasDoseOnWeekday(cal.get(Calendar.DAY_OF_WEEK));
+				return (repeatArg & 1 << EpochDay.getIsoWeekDayIndex(EpochDay.fromDate(date))) != 0;
 
 			case REPEAT_21_7:
-				final long diff = Math.abs(DateTime.diffDays(date, repeatOrigin)) % 28;
+				final long diff = Math.abs(getDaysUntilRepeatOrigin(date)) % 28;
 				return diff < 21;
 
 			case REPEAT_CUSTOM:
-				return Schedules.hasDoseOnDate(date, mSchedules.get());
+				return Schedules.hasDoseOnDay(EpochDay.fromDate(date), mSchedules.get());
 
 			default:
 				throw new IllegalStateException("Unknown repeat mode");
@@ -406,7 +448,23 @@ public class Drug extends Entry implements Comparable<Drug>
 			return getDose(doseTime);
 		}
 
-		return Schedules.getDose(date, doseTime, mSchedules.get());
+		return Schedules.getDose(EpochDay.fromDate(date), doseTime, mSchedules.get());
+	}
+
+	/**
+	 * Like {@link #getDose(int, Date)}, but for an epoch day (see {@link EpochDay}).
+	 */
+	public Fraction getDoseOnDay(int doseTime, int day)
+	{
+		if(repeatMode != REPEAT_CUSTOM)
+		{
+			if(!hasDoseOnDay(day))
+				return Fraction.ZERO;
+
+			return getDose(doseTime);
+		}
+
+		return Schedules.getDose(day, doseTime, mSchedules.get());
 	}
 
 	public String getComment() {
@@ -615,16 +673,20 @@ public class Drug extends Entry implements Comparable<Drug>
 		return lastScheduleUpdateDate;
 	}
 
-	public void setLastScheduleUpdateDate(Date date) {
+	public void setLastScheduleUpdateDate(Date date)
+	{
 		lastScheduleUpdateDate = date;
+		mDoseCalendar = null;
 	}
 
 	public LocalDate getScheduleEndDate() {
 		return scheduleEndDate != null ? LocalDate.fromDateFields(scheduleEndDate) : null;
 	}
 
-	public void setScheduleEndDate(LocalDate date) {
+	public void setScheduleEndDate(LocalDate date)
+	{
 		scheduleEndDate = date != null ? date.toDate() : null;
+		mDoseCalendar = null;
 	}
 
 	public LocalDate getNextScheduledDate(LocalDate reference)
@@ -692,6 +754,66 @@ public class Drug extends Entry implements Comparable<Drug>
 		return true;
 	}
 
+	@Override
+	/* package */ void writeTo(CacheImage.Output out) throws IOException
+	{
+		out.writeString(name);
+		out.writeForeignId(patient);
+		out.writeInt(icon);
+		out.writeBoolean(active);
+		out.writeInt(refillSize);
+		out.writeFraction(currentSupply);
+		out.writeFraction(doseMorning);
+		out.writeFraction(doseNoon);
+		out.writeFraction(doseEvening);
+		out.writeFraction(doseNight);
+		out.writeInt(repeatMode);
+		out.writeLong(repeatArg);
+		out.writeDate(repeatOrigin);
+		out.writeBoolean(hasAutoDoseEvents);
+		out.writeDate(lastAutoDoseEventCreationDate);
+		out.writeDate(lastScheduleUpdateDate);
+		out.writeInt(sortRank);
+		out.writeDate(expirationDate);
+		out.writeDate(scheduleEndDate);
+		out.writeBoolean(asNeeded);
+		out.writeString(comment);
+	}
+
+	@Override
+	/* package */ void readFrom(CacheImage.Input in)
+	{
+		name = in.readString();
+
+		final int patientId = in.readForeignId();
+		if(patientId != -1)
+		{
+			// like ORMLite, only set the ID of foreign entries
+			patient = new Patient();
+			patient.id = patientId;
+		}
+
+		icon = in.readInt();
+		active = in.readBoolean();
+		refillSize = in.readInt();
+		currentSupply = in.readFraction();
+		doseMorning = in.readFraction();
+		doseNoon = in.readFraction();
+		doseEvening = in.readFraction();
+		doseNight = in.readFraction();
+		repeatMode = in.readInt();
+		repeatArg = in.readLong();
+		repeatOrigin = in.readDate();
+		hasAutoDoseEvents = in.readBoolean();
+		lastAutoDoseEventCreationDate = in.readDate();
+		lastScheduleUpdateDate = in.readDate();
+		sortRank = in.readInt();
+		expirationDate = in.readDate();
+		scheduleEndDate = in.readDate();
+		asNeeded = in.readBoolean();
+		comment = in.readString();
+	}
+
 	@Override
 	public boolean equals(Object o)
 	{
@@ -758,15 +880,8 @@ public class Drug extends Entry implements Comparable<Drug>
 	 * @param drugId the id to search for.
 	 * @return The drug or <code>null</code> if it doesn't exist.
 	 */
-	public static Drug find(int drugId)
-	{
-		for(Drug drug : Database.getCached(Drug.class))
-		{
-			if(drug.getId() == drugId)
-				return drug;
-		}
-
-		return null;
+	public static Drug find(int drugId) {
+		return Database.find(Drug.class, drugId);
 	}
 
 	/**
@@ -784,7 +899,21 @@ public class Drug extends Entry implements Comparable<Drug>
 	}
 
 	private void onScheduleUpdated() {
-		lastScheduleUpdateDate = DateTime.today();
+		setLastScheduleUpdateDate(DateTime.today());
+	}
+
+	/* package */ DoseCalendar getDoseCalendar()
+	{
+		final TimeZone timeZone = DateTime.getTimeZone();
+
+		DoseCalendar calendar = mDoseCalendar;
+		if(calendar == null || calendar.getTimeZone() != timeZone)
+		{
+			mDoseCalendar = calendar = DoseCalendar.compile(repeatMode, repeatArg, repeatOrigin,
+					lastScheduleUpdateDate, scheduleEndDate, timeZone);
+		}
+
+		return calendar;
 	}
 
 	/**
@@ -824,17 +953,8 @@ public class Drug extends Entry implements Comparable<Drug>
 		return members;
 	}
 
-	/* package */ boolean hasDoseOnWeekday(int calWeekday)
-	{
-		if(repeatMode != REPEAT_WEEKDAYS)
-			throw new IllegalStateException("repeatMode != FREQ_WEEKDAYS");
-
-		// first, translate Calendar's weekday representation to our own
-		final int weekday = CollectionUtils.indexOf(calWeekday, Constants.WEEK_DAYS);
-		if(weekday == -1)
-			throw new IllegalArgumentException("Argument " + calWeekday + " does not map to a valid weekday");
-
-		return (repeatArg & 1 << weekday) != 0;
+	private long getDaysUntilRepeatOrigin(Date date) {
+		return (long) EpochDay.fromDate(repeatOrigin) - EpochDay.fromDate(date);
 	}
 
 	private final transient LazyValue<List<Schedule>> mSchedules = new LazyValue<List<Schedule>>() {
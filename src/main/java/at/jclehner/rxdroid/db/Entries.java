@@ -28,16 +28,16 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 
 import at.jclehner.rxdroid.Fraction;
-import at.jclehner.rxdroid.Fraction.MutableFraction;
+import at.jclehner.rxdroid.PackedFraction;
 import at.jclehner.rxdroid.R;
 import at.jclehner.rxdroid.RxDroid;
 import at.jclehner.rxdroid.Settings;
 import at.jclehner.rxdroid.util.Constants;
 import at.jclehner.rxdroid.util.DateTime;
+import at.jclehner.rxdroid.util.EpochDay;
 import at.jclehner.rxdroid.util.Util;
 import at.jclehner.rxdroid.util.WrappedCheckedException;
 
@@ -101,6 +101,14 @@ public final class Entries
 			return false;
 
 		final int repeatMode = drug.getRepeatMode();
+		if(Database.USE_CUSTOM_CACHE && (repeatMode == Drug.REPEAT_EVERY_N_DAYS || repeatMode == Drug.REPEAT_WEEKDAYS))
+		{
+			final DoseCalendar calendar = drug.getDoseCalendar();
+			final int day = calendar.toEpochDay(date);
+			if(day != DoseCalendar.NO_DAY)
+				return hasMissingDosesBeforeDay(drug, calendar, day);
+		}
+
 		/*switch(repeatMode)
 		{
 			case Drug.REPEAT_EVERY_N_DAYS:
@@ -119,20 +127,21 @@ public final class Entries
 			if(date.before(origin))
 				return false;
 
-			long elapsedDays = (date.getTime() - origin.getTime()) / Constants.MILLIS_PER_DAY;
+			final int day = EpochDay.fromDate(date);
+			final long elapsedDays = day - EpochDay.fromDate(origin);
 
 			int offset = (int) -(elapsedDays % days);
 			if(offset == 0)
 				offset = (int) -days;
 
-			final Date lastIntakeDate = DateTime.add(date, Calendar.DAY_OF_MONTH, offset);
-			if(lastScheduleUpdateDate != null && lastIntakeDate.compareTo(drug.getLastScheduleUpdateDate()) == -1)
+			final int lastIntakeDay = day + offset;
+			if(lastScheduleUpdateDate != null && lastIntakeDay < EpochDay.fromDate(lastScheduleUpdateDate))
 				return false;
 
 			//if(!isDateAfterLastScheduleUpdateOfDrug(lastIntakeDate, drug))
 			//	return false;
 
-			return !hasAllDoseEvents(drug, lastIntakeDate);
+			return !hasAllDoseEvents(drug, EpochDay.toDate(lastIntakeDay));
 		}
 		else if(repeatMode == Drug.REPEAT_WEEKDAYS)
 		{
@@ -143,18 +152,18 @@ public final class Entries
 			int expectedIntakeCount = 0;
 			int actualScheduledIntakeCount = 0;
 
-			for(int i = 0; i != 7; ++i)
-			{
-				final Date checkDate = DateTime.add(date, Calendar.DAY_OF_MONTH, -7 + i);
-				if(!isDateAfterLastScheduleUpdateOfDrug(checkDate, drug))
-					continue;
+			final int day = EpochDay.fromDate(date);
+			final int lastScheduleUpdateDay = lastScheduleUpdateDate != null ?
+					EpochDay.fromDate(lastScheduleUpdateDate) : Integer.MIN_VALUE;
 
+			for(int checkDay = Math.max(day - 7, lastScheduleUpdateDay + 1); checkDay < day; ++checkDay)
+			{
 				for(int doseTime : Constants.DOSE_TIMES)
 				{
-					if(!drug.getDose(doseTime, checkDate).isZero())
+					if(!drug.getDoseOnDay(doseTime, checkDay).isZero())
 					{
 						++expectedIntakeCount;
-						actualScheduledIntakeCount += countDoseEvents(drug, checkDate, doseTime);
+						actualScheduledIntakeCount += countDoseEventsOnDay(drug, checkDay, doseTime);
 					}
 				}
 			}
@@ -165,6 +174,42 @@ public final class Entries
 		return false;
 	}
 
+	/**
+	 * Like {@link #hasMissingDosesBeforeDate(Drug, Date)}, but uses the {@link DoseSlotSet}
+	 * of the drug's events, so no events have to be counted.
+	 */
+	private static boolean hasMissingDosesBeforeDay(Drug drug, DoseCalendar calendar, int day)
+	{
+		final int beginDay;
+
+		if(drug.getRepeatMode() == Drug.REPEAT_EVERY_N_DAYS)
+		{
+			// any N consecutive days contain exactly one dose day,
+			// so this only checks the last one.
+			beginDay = day - (int) drug.getRepeatArg();
+		}
+		else if(drug.getLastScheduleUpdateDate() != null)
+		{
+			// the day of the last schedule update itself is not checked
+			beginDay = Math.max(day - 7, calendar.getFirstDay() + 1);
+		}
+		else
+			beginDay = day - 7;
+
+		int doseMask = 0;
+
+		for(int doseTime : Constants.DOSE_TIMES)
+		{
+			if(!drug.getDose(doseTime).isZero())
+				doseMask |= 1 << doseTime;
+		}
+
+		if(doseMask == 0)
+			return false;
+
+		return Database.hasMissingDoses(drug.id, calendar, doseMask, beginDay, day - 1);
+	}
+
 	/**
 	 * Get the number of days the drug's supply will last.
 	 */
@@ -176,18 +221,18 @@ public final class Entries
 		if(date == null)
 			date = DateTime.today();
 
-		final MutableFraction doseLeftOnDate = new MutableFraction();
+		long doseLeftOnDate = PackedFraction.ZERO;
 
 		if(date.equals(DateTime.today()) && drug.hasDoseOnDate(date))
 		{
 			for(int doseTime : Constants.DOSE_TIMES)
 			{
 				if(countDoseEvents(drug, date, doseTime) == 0)
-					doseLeftOnDate.add(drug.getDose(doseTime, date));
+					doseLeftOnDate = PackedFraction.plus(doseLeftOnDate, PackedFraction.valueOf(drug.getDose(doseTime, date)));
 			}
 		}
 
-		final double supply = drug.getCurrentSupply().doubleValue() - doseLeftOnDate.doubleValue();
+		final double supply = drug.getCurrentSupply().doubleValue() - PackedFraction.doubleValue(doseLeftOnDate);
 		return (int) (Math.floor(supply / getDailyDose(drug) * getSupplyCorrectionFactor(drug)));
 	}
 
@@ -212,32 +257,40 @@ public final class Entries
 	public static List<DoseEvent> findDoseEvents(Drug drug, Date date, Integer doseTime)
 	{
 		if(Database.USE_CUSTOM_CACHE)
-		{
-			final List<DoseEvent> events = new LinkedList<DoseEvent>();
-
-			for(DoseEvent intake : Database.getCached(DoseEvent.class))
-			{
-				if(DoseEvent.has(intake, drug, date, doseTime))
-					events.add(intake);
-			}
-
-			return events;
-		}
+			return Database.findDoseEvents(drug.id, date, doseTime);
 		else
 		{
 			try
 			{
 				final QueryBuilder<DoseEvent, Integer> qb = sDoseEventDao.queryBuilder();
 				final Where<DoseEvent, Integer> where = qb.where();
+				int clauses = 0;
+
+				// Querying the epoch day rather than the date allows using the
+				// (drug_id, day, doseTime) index.
 
 				if(drug != null)
-					where.eq("drug_id", drug.id).and();
+				{
+					where.eq("drug_id", drug.id);
+					++clauses;
+				}
 
 				if(date != null)
-					where.eq("date", date).and();
+				{
+					where.eq(DoseEvent.COLUMN_DAY, DateTime.toEpochDay(date));
+					++clauses;
+				}
 
 				if(doseTime != null)
+				{
 					where.eq("doseTime", doseTime);
+					++clauses;
+				}
+
+				if(clauses > 1)
+					where.and(clauses);
+				else if(clauses == 0)
+					return sDoseEventDao.queryForAll();
 
 				return sDoseEventDao.query(qb.prepare());
 			}
@@ -248,10 +301,26 @@ public final class Entries
 		}
 	}
 
-	public static int countDoseEvents(Drug drug, Date date, Integer doseTime) {
+	public static int countDoseEvents(Drug drug, Date date, Integer doseTime)
+	{
+		if(Database.USE_CUSTOM_CACHE)
+			return Database.countDoseEvents(drug.id, date, doseTime);
+
 		return findDoseEvents(drug, date, doseTime).size();
 	}
 
+	/**
+	 * Like {@link #countDoseEvents(Drug, Date, Integer)}, but for an epoch day
+	 * (see {@link EpochDay}).
+	 */
+	public static int countDoseEventsOnDay(Drug drug, int day, Integer doseTime)
+	{
+		if(Database.USE_CUSTOM_CACHE)
+			return Database.countDoseEventsOnDay(drug.id, day, doseTime);
+
+		return findDoseEvents(drug, EpochDay.toDate(day), doseTime).size();
+	}
+
 	public static boolean hasAllDoseEvents(Drug drug, Date date) {
 		return hasAllDoseEvents(drug, date, Schedule.TIME_INVALID);
 	}
@@ -289,127 +358,38 @@ public final class Entries
 		return TIME_NAMES[doseTime];
 	}
 
-	public static Fraction getTotalDoseInTimePeriod_dumb(Drug drug, Date begin, Date end, boolean stopIfSupplyIsEmpty)
+	/**
+	 * Returns the total dose scheduled after <code>begin</code>, up to and including <code>end</code>.
+	 * <p>
+	 * Unlike {@link #getTotalDoseInTimePeriod_dumb(Drug, Date, Date, boolean)}, the cost of this
+	 * function does not depend on the number of days in the time period.
+	 *
+	 * @see DoseForecast
+	 */
+	public static Fraction getTotalDoseInTimePeriod(Drug drug, Date begin, Date end, boolean stopIfSupplyIsEmpty)
 	{
-		final MutableFraction totalDose = new MutableFraction();
-
-		final Calendar cal = DateTime.calendarFromDate(begin);
-		cal.add(Calendar.DAY_OF_MONTH, 1);
-		Date date;
-
-		while((date = cal.getTime()).before(end) || date.equals(end))
-		{
-			getTotalDose(drug, date, totalDose);
+		// doses are never negative here, so the supply can't run out
+		final Fraction totalDose = DoseForecast.getTotalDose(drug, begin, end);
+		if(totalDose != null)
+			return totalDose;
 
-			if(totalDose.isNegative() && stopIfSupplyIsEmpty)
-				return drug.getCurrentSupply();
-
-			cal.add(Calendar.DAY_OF_MONTH, 1);
-		}
-
-		return totalDose;
+		return getTotalDoseInTimePeriod_dumb(drug, begin, end, stopIfSupplyIsEmpty);
 	}
 
-	public static Fraction getTotalDoseInTimePeriod_smart(Drug drug, Date begin, Date end)
+	public static Fraction getTotalDoseInTimePeriod_dumb(Drug drug, Date begin, Date end, boolean stopIfSupplyIsEmpty)
 	{
-		final int repeatMode = drug.getRepeatMode();
-		final MutableFraction baseDose = new MutableFraction();
-		int doseMultiplier = 0;
-
-		if(drug.isAsNeeded())
-			return Fraction.ZERO;
-
-		if(repeatMode == Drug.REPEAT_DAILY)
-		{
-			getTotalDose(drug, null, baseDose);
-			doseMultiplier = (int) DateTime.diffDays(begin, end);
-		}
-		else if(repeatMode == Drug.REPEAT_EVERY_N_DAYS)
-		{
-			getTotalDose(drug, null, baseDose);
-
-			final long arg = drug.getRepeatArg();
-			final long daysInPeriod = DateTime.diffDays(begin, end);
-
-			if(drug.hasDoseOnDate(begin) || drug.hasDoseOnDate(end))
-				doseMultiplier = 1;
+		long totalDose = PackedFraction.ZERO;
+		final int endDay = EpochDay.fromDate(end);
 
-			doseMultiplier += daysInPeriod / arg;
-		}
-		else if(repeatMode == Drug.REPEAT_WEEKDAYS)
+		for(int day = EpochDay.fromDate(begin) + 1; day <= endDay; ++day)
 		{
-			getTotalDose(drug, null, new MutableFraction());
-
-			final Calendar cal = DateTime.calendarFromDate(begin);
-			int weekDay;
-
-			// Manually check the days before the first Monday
-			while((weekDay = cal.get(Calendar.DAY_OF_WEEK)) != Calendar.MONDAY)
-			{
-				if(drug.hasDoseOnWeekday(weekDay))
-					++doseMultiplier;
-
-				cal.add(Calendar.DAY_OF_WEEK, 1);
-			}
-
-			final Date firstMonday = cal.getTime();
-
-			// Now check the days after the last Sunday
-			cal.setTime(end);
-
-			while((weekDay = cal.get(Calendar.DAY_OF_WEEK)) != Calendar.MONDAY)
-			{
-				if(drug.hasDoseOnWeekday(weekDay))
-					++doseMultiplier;
-
-				cal.add(Calendar.DAY_OF_WEEK, -1);
-			}
-
-			final Date lastSunday = cal.getTime();
+			totalDose = PackedFraction.plus(totalDose, getTotalDose(drug, day));
 
-			// Now comes the easy part: dealing with the full week(s) in between
-			final long days = DateTime.diffDays(firstMonday, lastSunday);
-			if(days > 7)
-			{
-				if(days % 7 != 0)
-					throw new IllegalStateException("Not a full week: " + firstMonday + " - " + lastSunday);
-
-				doseMultiplier += days / 7 * Long.bitCount(drug.getRepeatArg());
-			}
-		}
-		else if(repeatMode == Drug.REPEAT_21_7)
-		{
-			getTotalDose(drug, null, baseDose);
-
-			final Date origin = drug.getRepeatOrigin();
-
-			long daysInTimePeriod = DateTime.diffDays(begin, end);
-			final long daysFromOriginToBegin = DateTime.diffDays(origin, begin);
-			final long daysFromOriginToEnd = DateTime.diffDays(origin, end);
-
-			long index = daysFromOriginToBegin % 28;
-			if(index < 21)
-			{
-				final long days = 21 - index;
-				daysInTimePeriod -= days + 7;
-				doseMultiplier += days;
-			}
-
-			index = daysFromOriginToEnd % 28;
-			if(index < 21)
-			{
-				final long days = 21 - index;
-				daysInTimePeriod -= days + 7;
-				doseMultiplier += days;
-			}
-
-			if(daysInTimePeriod > 28)
-				doseMultiplier += (daysInTimePeriod * 3) / 4;
+			if(PackedFraction.isNegative(totalDose) && stopIfSupplyIsEmpty)
+				return drug.getCurrentSupply();
 		}
-		else
-			throw new UnsupportedOperationException();
 
-		return baseDose.times(doseMultiplier);
+		return PackedFraction.toFraction(totalDose);
 	}
 
 	public static boolean isDateAfterLastScheduleUpdateOfDrug(Date date, Drug drug)
@@ -527,6 +507,7 @@ public final class Entries
 
 		getDrugsWithMissedDoses(drugs, date, doseTime, isActiveDoseTime, events);
 
+		final Database.Batch batch = Database.batch();
 		int skipped = 0, taken = 0;
 
 		for(DoseEvent event : events)
@@ -543,7 +524,7 @@ public final class Entries
 				if(!newSupply.isNegative())
 				{
 					drug.setCurrentSupply(newSupply);
-					Database.update(drug);
+					batch.updateCurrentSupply(drug);
 					skip = false;
 				}
 				else
@@ -560,11 +541,13 @@ public final class Entries
 			else
 				++taken;
 
-			Database.create(event);
+			batch.create(event);
 
 			Log.d(TAG, "Creating event: " + event);
 		}
 
+		batch.commit();
+
 		if(skipped != 0)
 			RxDroid.toastLong(R.string._toast_some_doses_skipped);
 		else if(taken != 0)
@@ -618,24 +601,20 @@ public final class Entries
 		return count;
 	}
 
-	private static void getTotalDose(Drug drug, Date date, MutableFraction outTotalDose)
+	/**
+	 * Returns the drug's total dose on the specified day, as a {@link PackedFraction}.
+	 */
+	private static long getTotalDose(Drug drug, int day)
 	{
-		if((date != null && !drug.hasDoseOnDate(date)) || drug.isAsNeeded())
-			return;
+		long totalDose = PackedFraction.ZERO;
 
-		for(int doseTime : Constants.DOSE_TIMES)
-		{
-			final Fraction dose;
-
-			if(date == null)
-				dose = drug.getDose(doseTime);
-			else
-				dose = drug.getDose(doseTime, date);
+		if(!drug.hasDoseOnDay(day) || drug.isAsNeeded())
+			return totalDose;
 
-			outTotalDose.add(dose);
-		}
+		for(int doseTime : Constants.DOSE_TIMES)
+			totalDose = PackedFraction.plus(totalDose, PackedFraction.valueOf(drug.getDoseOnDay(doseTime, day)));
 
-		return;
+		return totalDose;
 	}
 
 	private static double getDailyDose(Drug drug)
@@ -21,6 +21,7 @@
 
 package at.jclehner.rxdroid.db;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
 
 import at.jclehner.androidutils.Reflect;
@@ -85,6 +86,20 @@ public abstract class Entry
 		throw new UnsupportedOperationException();
 	}
 
+	/**
+	 * Writes all database fields, except the ID, to a {@link CacheImage}.
+	 */
+	/* package */ void writeTo(CacheImage.Output out) throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Reads the fields written by {@link #writeTo(CacheImage.Output)}.
+	 */
+	/* package */ void readFrom(CacheImage.Input in) {
+		throw new UnsupportedOperationException();
+	}
+
 	protected static void copy(Entry dest, Entry src)
 	{
 		Class<? extends Entry> clsD = dest.getClass();
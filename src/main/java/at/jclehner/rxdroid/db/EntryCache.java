@@ -0,0 +1,261 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import at.jclehner.rxdroid.util.IntMap;
+
+/**
+ * Cached entries of one {@link Entry} subclass.
+ * <p>
+ * Readers get an immutable {@link Snapshot} of all entries, which is published
+ * through a volatile reference and can thus be read without locking. Every
+ * modification publishes a new snapshot, unless it happens between
+ * {@link #beginUpdate()} and {@link #endUpdate()}, in which case a single
+ * snapshot is published at the end.
+ * <p>
+ * In addition to the list of entries, each snapshot contains an index of all entries
+ * by their database ID, so that {@link Database#find(Class, int)} neither has to scan
+ * the whole list, nor to lock the cache.
+ * <p>
+ * Note that newly created entries only receive their ID once the DAO has
+ * actually inserted them. Until then, they're only part of the list; see
+ * {@link #onIdAssigned(Entry)}.
+ * <p>
+ * Entries are usually modified in place, and then passed to {@link #replace(Entry)};
+ * this still publishes a new snapshot, so that callers relying on
+ * {@link Snapshot#getGeneration()} notice the change.
+ *
+ * @author Joseph Lehner
+ *
+ * @param <E> the entry type.
+ */
+/* package */ final class EntryCache<E extends Entry>
+{
+	private static final AtomicLong sGeneration = new AtomicLong();
+
+	// the working copy; only accessed while holding this object's lock
+	private final ArrayList<E> mEntries;
+	private final IntMap<E> mById;
+	// entries that were added before they had a valid ID
+	private final IdentityHashMap<E, Boolean> mPending = new IdentityHashMap<E, Boolean>();
+
+	private volatile Snapshot<E> mSnapshot;
+	private int mUpdateDepth = 0;
+	private boolean mIsDirty = false;
+
+	EntryCache(List<E> entries)
+	{
+		mEntries = new ArrayList<E>(entries);
+		mById = new IntMap<E>(entries.size());
+
+		for(E e : entries)
+			mById.put(e.id, e);
+
+		publish();
+	}
+
+	Snapshot<E> list() {
+		return mSnapshot;
+	}
+
+	int size() {
+		return mSnapshot.size();
+	}
+
+	E find(int id) {
+		return mSnapshot.find(id);
+	}
+
+	/**
+	 * Defers publishing a new snapshot until {@link #endUpdate()}.
+	 * <p>
+	 * Calls may be nested.
+	 */
+	synchronized void beginUpdate() {
+		++mUpdateDepth;
+	}
+
+	synchronized void endUpdate()
+	{
+		if(mUpdateDepth == 0)
+			throw new IllegalStateException("endUpdate() without beginUpdate()");
+
+		if(--mUpdateDepth == 0 && mIsDirty)
+			publish();
+	}
+
+	synchronized void add(E entry)
+	{
+		mEntries.add(entry);
+
+		if(hasValidId(entry))
+			mById.put(entry.id, entry);
+		else
+			mPending.put(entry, Boolean.TRUE);
+
+		onModified();
+	}
+
+	/**
+	 * Removes an entry.
+	 *
+	 * @return the entry that was actually removed, or <code>null</code>.
+	 */
+	synchronized E remove(E entry)
+	{
+		final E cached = hasValidId(entry) ? mById.remove(entry.id) : null;
+		if(cached != null)
+		{
+			removeIdentical(cached);
+			onModified();
+			return cached;
+		}
+
+		mPending.remove(entry);
+		if(!mEntries.remove(entry))
+			return null;
+
+		onModified();
+		return entry;
+	}
+
+	/**
+	 * Replaces the cached entry with the same ID.
+	 *
+	 * @return the entry that was replaced.
+	 * @throws IllegalStateException if there is no entry with the same ID.
+	 */
+	synchronized E replace(E entry)
+	{
+		// updating an entry whose creation is still pending
+		if(mPending.containsKey(entry))
+		{
+			onModified();
+			return entry;
+		}
+
+		final E old = mById.put(entry.id, entry);
+		if(old == null)
+		{
+			mById.remove(entry.id);
+			throw new IllegalStateException("No cached entry with id=" + entry.id);
+		}
+
+		if(old != entry)
+			mEntries.set(indexOfIdentical(old), entry);
+
+		// even if the entry was modified in place, the snapshot's generation
+		// must change
+		onModified();
+		return old;
+	}
+
+	/**
+	 * Removes all entries matching the filter, in a single pass.
+	 *
+	 * @return the entries that were removed.
+	 */
+	synchronized List<E> removeAll(Database.Filter<E> filter)
+	{
+		final List<E> removed = new ArrayList<E>();
+		final List<E> kept = new ArrayList<E>(mEntries.size());
+
+		for(E entry : mEntries)
+		{
+			if(filter.matches(entry))
+			{
+				removed.add(entry);
+
+				if(hasValidId(entry))
+					mById.remove(entry.id);
+				else
+					mPending.remove(entry);
+			}
+			else
+				kept.add(entry);
+		}
+
+		if(!removed.isEmpty())
+		{
+			mEntries.clear();
+			mEntries.addAll(kept);
+			onModified();
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Called once the DAO has assigned an ID to a newly created entry.
+	 */
+	synchronized void onIdAssigned(E entry)
+	{
+		// if the entry was deleted in the meantime, it must not be resurrected
+		if(mPending.remove(entry) != null && hasValidId(entry))
+		{
+			mById.put(entry.id, entry);
+			onModified();
+		}
+	}
+
+	private void onModified()
+	{
+		if(mUpdateDepth == 0)
+			publish();
+		else
+			mIsDirty = true;
+	}
+
+	private void publish()
+	{
+		mSnapshot = new Snapshot<E>(mEntries.toArray(), new IntMap<E>(mById),
+				sGeneration.incrementAndGet());
+		mIsDirty = false;
+	}
+
+	private void removeIdentical(E entry)
+	{
+		final int index = indexOfIdentical(entry);
+		if(index != -1)
+			mEntries.remove(index);
+	}
+
+	private int indexOfIdentical(E entry)
+	{
+		for(int i = 0; i != mEntries.size(); ++i)
+		{
+			if(mEntries.get(i) == entry)
+				return i;
+		}
+
+		return -1;
+	}
+
+	private static boolean hasValidId(Entry entry) {
+		return entry.id != -1;
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.util.IdentityHashMap;
+
+/**
+ * Callbacks that are run whenever an entry of a specific type is modified.
+ * <p>
+ * Callbacks run on the thread that called {@link Database#create(Entry)} etc.,
+ * after the cache was updated, but before listeners are notified. The default
+ * implementations do nothing.
+ * <p>
+ * Callbacks are registered statically, in {@link #get(Class)}, for all types
+ * that are stored in the database.
+ *
+ * @author Joseph Lehner
+ *
+ * @param <E> the entry type.
+ */
+/* package */ class EntryCallbacks<E extends Entry>
+{
+	private static final EntryCallbacks<Entry> NONE = new EntryCallbacks<Entry>();
+
+	private static final IdentityHashMap<Class<?>, EntryCallbacks<?>> sCallbacks =
+			new IdentityHashMap<Class<?>, EntryCallbacks<?>>();
+
+	static
+	{
+		register(Drug.class, new EntryCallbacks<Drug>());
+		register(DoseEvent.class, new EntryCallbacks<DoseEvent>());
+		register(Patient.class, new EntryCallbacks<Patient>());
+		register(Schedule.class, new EntryCallbacks<Schedule>());
+		register(SchedulePart.class, new EntryCallbacks<SchedulePart>());
+	}
+
+	@SuppressWarnings("unchecked")
+	static <E extends Entry> EntryCallbacks<E> get(Class<E> clazz)
+	{
+		final EntryCallbacks<?> callbacks = sCallbacks.get(clazz);
+		return (EntryCallbacks<E>) (callbacks != null ? callbacks : NONE);
+	}
+
+	void onCreate(E entry) {}
+
+	void onUpdate(E entry) {}
+
+	void onDelete(E entry) {}
+
+	private static <E extends Entry> void register(Class<E> clazz, EntryCallbacks<E> callbacks) {
+		sCallbacks.put(clazz, callbacks);
+	}
+}
@@ -27,10 +27,22 @@ import at.jclehner.rxdroid.Fraction;
 
 import com.j256.ormlite.field.FieldType;
 import com.j256.ormlite.field.SqlType;
-import com.j256.ormlite.field.types.StringType;
+import com.j256.ormlite.field.types.LongObjectType;
 
-public class FractionPersister extends StringType
+/**
+ * Stores a {@link Fraction} in a single <code>INTEGER</code> column.
+ * <p>
+ * The numerator is stored in the upper, and the denominator in the lower
+ * 32 bits, so that loading a value does not involve any parsing. Prior to
+ * database version 61, fractions were stored as strings; see
+ * {@link DatabaseUpgrader}.
+ *
+ * @author Joseph Lehner
+ */
+public class FractionPersister extends LongObjectType
 {
+	private static final long PACKED_ZERO = pack(Fraction.ZERO);
+
 	private static FractionPersister sInstance = new FractionPersister();
 
 	public static FractionPersister getSingleton() {
@@ -38,7 +50,7 @@ public class FractionPersister extends StringType
 	}
 
 	private FractionPersister() {
-		super(SqlType.STRING, new Class<?>[] { String.class });
+		super(SqlType.LONG, new Class<?>[] { Fraction.class });
 	}
 
 	protected FractionPersister(SqlType sqlType, Class<?>[] classes) {
@@ -47,24 +59,23 @@ public class FractionPersister extends StringType
 
 	@Override
 	public Object javaToSqlArg(FieldType fieldType, Object javaObject) throws SQLException {
-		return ((Fraction) javaObject).toString();
+		return pack((Fraction) javaObject);
 	}
 
 	@Override
 	public Object sqlArgToJava(FieldType fieldType, Object sqlArg, int columnPos) throws SQLException {
-		return valueOf(sqlArg);
+		return unpack((Long) sqlArg);
 	}
 
-	@Override
-	public Object resultStringToJava(FieldType fieldType, String stringValue, int columnPos) throws SQLException {
-		return valueOf(stringValue);
+	/* package */ static long pack(Fraction f) {
+		return ((long) f.numerator() << 32) | (f.denominator() & 0xffffffffL);
 	}
 
-	private static Fraction valueOf(Object object)
+	/* package */ static Fraction unpack(long packed)
 	{
-		if(object == null || ((String) object).length() == 0)
+		if(packed == PACKED_ZERO)
 			return Fraction.ZERO;
 
-		return Fraction.valueOf((String) object);
+		return new Fraction((int) (packed >> 32), (int) packed);
 	}
 }
@@ -0,0 +1,280 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+/**
+ * Stores entries in memory only.
+ * <p>
+ * Nothing is ever written to disk, but IDs are assigned just like by the
+ * database, and transactions are rolled back if they fail. This engine has
+ * no Android dependencies, so it can be used to test the data layer without
+ * a device, and as a baseline for benchmarks.
+ * <p>
+ * Entries are stored by reference, so a rollback restores the set of stored
+ * entries, but not any changes made to the entries themselves.
+ *
+ * @author Joseph Lehner
+ */
+/* package */ final class InMemoryStorageEngine implements StorageEngine
+{
+	private final Map<Class<?>, TreeMap<Integer, Entry>> mTables =
+			new HashMap<Class<?>, TreeMap<Integer, Entry>>();
+	private Map<Class<?>, Integer> mNextIds = new HashMap<Class<?>, Integer>();
+
+	private int mTransactionDepth = 0;
+	// the previous contents of each modified row, in order of modification
+	private final List<Undo> mUndoLog = new ArrayList<Undo>();
+
+	@Override
+	public <T extends Entry> List<T> queryForAll(Class<T> clazz)
+	{
+		final List<T> entries = new ArrayList<T>();
+
+		for(Entry entry : getTable(clazz).values())
+			entries.add(clazz.cast(entry));
+
+		return entries;
+	}
+
+	@Override
+	public <T extends Entry> T queryForId(Class<T> clazz, int id) {
+		return clazz.cast(getTable(clazz).get(id));
+	}
+
+	@Override
+	public List<DoseEvent> queryDoseEvents(Integer drugId, int beginDay, int endDay)
+	{
+		final List<DoseEvent> events = new ArrayList<DoseEvent>();
+
+		for(Entry entry : getTable(DoseEvent.class).values())
+		{
+			final DoseEvent event = (DoseEvent) entry;
+			if(drugId != null && event.getDrugId() != drugId)
+				continue;
+
+			if(event.getEpochDay() >= beginDay && event.getEpochDay() < endDay)
+				events.add(event);
+		}
+
+		return events;
+	}
+
+	@Override
+	public void write(final List<DatabaseWriter.Operation> batch) throws SQLException
+	{
+		callInTransaction(new Callable<Void>() {
+
+			@Override
+			public Void call()
+			{
+				for(DatabaseWriter.Operation op : batch)
+					execute(op.type, op.entry);
+
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public int deleteByIds(Class<? extends Entry> clazz, Collection<Integer> ids)
+	{
+		final TreeMap<Integer, Entry> table = getTable(clazz);
+		int count = 0;
+
+		for(Integer id : ids)
+		{
+			if(remove(table, id) != null)
+				++count;
+		}
+
+		return count;
+	}
+
+	@Override
+	public Database.PruneResult deleteDoseEventsBefore(Date date)
+	{
+		final TreeMap<Integer, Entry> table = getTable(DoseEvent.class);
+		final List<DoseEvent> events = new ArrayList<DoseEvent>();
+
+		for(Entry entry : table.values())
+		{
+			if(((DoseEvent) entry).getDate().before(date))
+				events.add((DoseEvent) entry);
+		}
+
+		for(DoseEvent event : events)
+			remove(table, event.id);
+
+		return Database.PruneResult.of(events);
+	}
+
+	@Override
+	public <V> V callInTransaction(Callable<V> callable) throws SQLException
+	{
+		if(mTransactionDepth != 0)
+			return callNested(callable);
+
+		final Map<Class<?>, Integer> nextIds = new HashMap<Class<?>, Integer>(mNextIds);
+		boolean success = false;
+
+		try
+		{
+			final V result = callNested(callable);
+			success = true;
+			return result;
+		}
+		finally
+		{
+			if(!success)
+			{
+				for(int i = mUndoLog.size() - 1; i >= 0; --i)
+					mUndoLog.get(i).run();
+
+				mNextIds = nextIds;
+			}
+
+			mUndoLog.clear();
+		}
+	}
+
+	@Override
+	public boolean isPersistent() {
+		return false;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return true;
+	}
+
+	@Override
+	public void close() {}
+
+	private <V> V callNested(Callable<V> callable) throws SQLException
+	{
+		++mTransactionDepth;
+
+		try
+		{
+			return callable.call();
+		}
+		catch(SQLException e)
+		{
+			throw e;
+		}
+		catch(Exception e)
+		{
+			throw new SQLException(e);
+		}
+		finally
+		{
+			--mTransactionDepth;
+		}
+	}
+
+	private void execute(DbOperation op, Entry entry)
+	{
+		final TreeMap<Integer, Entry> table = getTable(entry.getClass());
+
+		switch(op)
+		{
+			case CREATE:
+				final Integer nextId = mNextIds.get(entry.getClass());
+				final int id = entry.id > 0 ? entry.id : (nextId != null ? nextId : 1);
+
+				entry.id = id;
+				put(table, id, entry);
+				mNextIds.put(entry.getClass(), Math.max(id + 1, nextId != null ? nextId : 1));
+				break;
+
+			case UPDATE:
+			case UPDATE_SUPPLY:
+				if(table.containsKey(entry.id))
+					put(table, entry.id, entry);
+				break;
+
+			case DELETE:
+				remove(table, entry.id);
+				break;
+		}
+	}
+
+	private TreeMap<Integer, Entry> getTable(Class<?> clazz)
+	{
+		TreeMap<Integer, Entry> table = mTables.get(clazz);
+		if(table == null)
+		{
+			table = new TreeMap<Integer, Entry>();
+			mTables.put(clazz, table);
+		}
+
+		return table;
+	}
+
+	private void put(TreeMap<Integer, Entry> table, int id, Entry entry)
+	{
+		final Entry previous = table.put(id, entry);
+		if(mTransactionDepth != 0)
+			mUndoLog.add(new Undo(table, id, previous));
+	}
+
+	private Entry remove(TreeMap<Integer, Entry> table, int id)
+	{
+		final Entry previous = table.remove(id);
+		if(mTransactionDepth != 0 && previous != null)
+			mUndoLog.add(new Undo(table, id, previous));
+
+		return previous;
+	}
+
+	private static final class Undo
+	{
+		private final TreeMap<Integer, Entry> mTable;
+		private final int mId;
+		private final Entry mPrevious;
+
+		Undo(TreeMap<Integer, Entry> table, int id, Entry previous)
+		{
+			mTable = table;
+			mId = id;
+			mPrevious = previous;
+		}
+
+		void run()
+		{
+			if(mPrevious != null)
+				mTable.put(mId, mPrevious);
+			else
+				mTable.remove(mId);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.misc.TransactionManager;
+import com.j256.ormlite.stmt.DeleteBuilder;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.Where;
+import com.j256.ormlite.support.ConnectionSource;
+
+/**
+ * Stores entries using ORMLite's DAOs.
+ * <p>
+ * Every operation goes through ORMLite, which uses reflection to map each
+ * column. Used for comparison with {@link SQLiteStorageEngine}, which is the
+ * default.
+ *
+ * @author Joseph Lehner
+ */
+/* package */ class OrmLiteStorageEngine implements StorageEngine
+{
+	private final ConnectionSource mConnectionSource;
+
+	OrmLiteStorageEngine(ConnectionSource connectionSource) {
+		mConnectionSource = connectionSource;
+	}
+
+	@Override
+	public <T extends Entry> List<T> queryForAll(Class<T> clazz) throws SQLException {
+		return getDao(clazz).queryForAll();
+	}
+
+	@Override
+	public <T extends Entry> T queryForId(Class<T> clazz, int id) throws SQLException {
+		return getDao(clazz).queryForId(id);
+	}
+
+	@Override
+	public List<DoseEvent> queryDoseEvents(Integer drugId, int beginDay, int endDay) throws SQLException
+	{
+		final QueryBuilder<DoseEvent, Integer> qb = getDao(DoseEvent.class).queryBuilder();
+		final Where<DoseEvent, Integer> where = qb.where();
+
+		if(drugId != null)
+			where.eq("drug_id", drugId).and();
+
+		where.ge(DoseEvent.COLUMN_DAY, beginDay).and().lt(DoseEvent.COLUMN_DAY, endDay);
+
+		return qb.query();
+	}
+
+	@Override
+	public void write(final List<DatabaseWriter.Operation> batch) throws SQLException
+	{
+		callInTransaction(new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception
+			{
+				for(DatabaseWriter.Operation op : batch)
+					execute(op);
+
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public int deleteByIds(Class<? extends Entry> clazz, Collection<Integer> ids) throws SQLException {
+		return getDao(clazz).deleteIds(ids);
+	}
+
+	@Override
+	public Database.PruneResult deleteDoseEventsBefore(Date date) throws SQLException
+	{
+		final DoseEvent oldest = queryFirstDoseEventBefore(date, true);
+		final DoseEvent newest = queryFirstDoseEventBefore(date, false);
+
+		final DeleteBuilder<DoseEvent, Integer> builder = getDao(DoseEvent.class).deleteBuilder();
+		builder.where().lt(DoseEvent.COLUMN_DATE, date);
+		final int count = builder.delete();
+
+		if(oldest == null || newest == null)
+			return new Database.PruneResult(count, 0, 0);
+
+		return new Database.PruneResult(count, oldest.getEpochDay(), newest.getEpochDay());
+	}
+
+	@Override
+	public <V> V callInTransaction(Callable<V> callable) throws SQLException {
+		return TransactionManager.callInTransaction(mConnectionSource, callable);
+	}
+
+	@Override
+	public boolean isPersistent() {
+		return true;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return mConnectionSource.isOpen();
+	}
+
+	@Override
+	public void close() {}
+
+	/**
+	 * Executes a single operation. Only called from within a transaction.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected void execute(DatabaseWriter.Operation op) throws SQLException {
+		op.type.execute((Dao) getDao(op.entry.getClass()), op.entry);
+	}
+
+	private DoseEvent queryFirstDoseEventBefore(Date date, boolean ascending) throws SQLException
+	{
+		final QueryBuilder<DoseEvent, Integer> qb = getDao(DoseEvent.class).queryBuilder();
+		qb.orderBy(DoseEvent.COLUMN_DAY, ascending).limit(1L).where().lt(DoseEvent.COLUMN_DATE, date);
+		return qb.queryForFirst();
+	}
+
+	private <T> Dao<T, Integer> getDao(Class<T> clazz) throws SQLException {
+		return DaoManager.createDao(mConnectionSource, clazz);
+	}
+}
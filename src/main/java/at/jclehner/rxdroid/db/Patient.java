@@ -21,6 +21,8 @@
 
 package at.jclehner.rxdroid.db;
 
+import java.io.IOException;
+
 import com.j256.ormlite.field.DatabaseField;
 import com.j256.ormlite.table.DatabaseTable;
 
@@ -36,6 +38,16 @@ public class Patient extends Entry implements Comparable<Patient>
 		id = DEFAULT_PATIENT_ID;
 	}
 
+	@Override
+	/* package */ void writeTo(CacheImage.Output out) throws IOException {
+		out.writeString(name);
+	}
+
+	@Override
+	/* package */ void readFrom(CacheImage.Input in) {
+		name = in.readString();
+	}
+
 	public void setName(String name) {
 		this.name = name;
 	}
@@ -0,0 +1,204 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.sql.SQLException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.j256.ormlite.support.ConnectionSource;
+
+/**
+ * Stores entries using the Android SQLite API wherever it matters.
+ * <p>
+ * Dose events, which are by far the most common entries, are queried and
+ * pruned using plain SQL, and the most frequent writes use the
+ * {@link CompiledStatements}. Drugs and patients are rarely written, and have
+ * many columns, so these are still mapped by ORMLite. The connection source
+ * must use the same database, so that both can be mixed within a transaction.
+ *
+ * @author Joseph Lehner
+ */
+/* package */ final class SQLiteStorageEngine extends OrmLiteStorageEngine
+{
+	// the format used by ORMLite for java.util.Date fields on Android
+	private static final String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss.SSSSSS";
+
+	private static final String QUERY_DOSE_EVENTS = "SELECT " +
+			"[id], [drug_id], [date], [day], [timestamp], [doseTime], [dose], [wasAutoCreated] " +
+			"FROM [dose_events] WHERE [day]>=? AND [day]<?";
+
+	private final SQLiteDatabase mDb;
+	private final SimpleDateFormat mDateFormat = new SimpleDateFormat(DATE_FORMAT, Locale.US);
+
+	private CompiledStatements mStatements;
+
+	SQLiteStorageEngine(SQLiteDatabase db, ConnectionSource connectionSource)
+	{
+		super(connectionSource);
+		mDb = db;
+	}
+
+	@Override
+	public List<DoseEvent> queryDoseEvents(Integer drugId, int beginDay, int endDay) throws SQLException
+	{
+		final String sql;
+		final String[] args;
+
+		if(drugId != null)
+		{
+			sql = QUERY_DOSE_EVENTS + " AND [drug_id]=?";
+			args = new String[] { Integer.toString(beginDay), Integer.toString(endDay), drugId.toString() };
+		}
+		else
+		{
+			sql = QUERY_DOSE_EVENTS;
+			args = new String[] { Integer.toString(beginDay), Integer.toString(endDay) };
+		}
+
+		final Cursor c = mDb.rawQuery(sql, args);
+
+		try
+		{
+			final List<DoseEvent> events = new ArrayList<DoseEvent>(c.getCount());
+
+			while(c.moveToNext())
+			{
+				events.add(new DoseEvent(
+						c.getInt(0),
+						c.isNull(1) ? -1 : c.getInt(1),
+						getDate(c, 2),
+						c.getInt(3),
+						getDate(c, 4),
+						c.getInt(5),
+						c.isNull(6) ? null : FractionPersister.unpack(c.getLong(6)),
+						c.getInt(7) != 0
+				));
+			}
+
+			return events;
+		}
+		finally
+		{
+			c.close();
+		}
+	}
+
+	@Override
+	public Database.PruneResult deleteDoseEventsBefore(Date date) throws SQLException
+	{
+		final String[] args = { mDateFormat.format(date) };
+		final Cursor c = mDb.rawQuery("SELECT MIN([day]), MAX([day]) FROM [dose_events] WHERE [date]<?", args);
+		final int oldestDay, newestDay;
+
+		try
+		{
+			c.moveToFirst();
+			oldestDay = c.getInt(0);
+			newestDay = c.getInt(1);
+		}
+		finally
+		{
+			c.close();
+		}
+
+		return new Database.PruneResult(mDb.delete("dose_events", "[date]<?", args), oldestDay, newestDay);
+	}
+
+	@Override
+	public <V> V callInTransaction(Callable<V> callable) throws SQLException
+	{
+		mDb.beginTransaction();
+
+		try
+		{
+			final V result = callable.call();
+			mDb.setTransactionSuccessful();
+			return result;
+		}
+		catch(SQLException e)
+		{
+			throw e;
+		}
+		catch(Exception e)
+		{
+			throw new SQLException(e);
+		}
+		finally
+		{
+			mDb.endTransaction();
+		}
+	}
+
+	@Override
+	public boolean isOpen() {
+		return mDb.isOpen() && super.isOpen();
+	}
+
+	@Override
+	public void close()
+	{
+		if(mStatements != null)
+		{
+			mStatements.close();
+			mStatements = null;
+		}
+	}
+
+	@Override
+	protected void execute(DatabaseWriter.Operation op) throws SQLException
+	{
+		if(!op.type.execute(getStatements(), op.entry))
+			super.execute(op);
+	}
+
+	private CompiledStatements getStatements()
+	{
+		if(mStatements == null)
+			mStatements = new CompiledStatements(mDb);
+
+		return mStatements;
+	}
+
+	private Date getDate(Cursor c, int column) throws SQLException
+	{
+		if(c.isNull(column))
+			return null;
+
+		try
+		{
+			return mDateFormat.parse(c.getString(column));
+		}
+		catch(ParseException e)
+		{
+			throw new SQLException(e);
+		}
+	}
+}
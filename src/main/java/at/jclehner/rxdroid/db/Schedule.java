@@ -25,7 +25,7 @@ import java.util.Date;
 
 import at.jclehner.androidutils.LazyValue;
 import at.jclehner.rxdroid.Fraction;
-import at.jclehner.rxdroid.util.DateTime;
+import at.jclehner.rxdroid.util.EpochDay;
 import at.jclehner.rxdroid.util.Exceptions;
 import at.jclehner.rxdroid.util.Keep;
 import at.jclehner.rxdroid.util.Util;
@@ -145,17 +145,24 @@ public final class Schedule extends Entry
 		this.owner = owner;
 	}
 
-	public boolean hasDoseOnDate(Date date)
+	public boolean hasDoseOnDate(Date date) {
+		return hasDoseOnDay(EpochDay.fromDate(date));
+	}
+
+	/**
+	 * Like {@link #hasDoseOnDate(Date)}, but for an epoch day (see {@link EpochDay}).
+	 */
+	/* package */ boolean hasDoseOnDay(int day)
 	{
-		if(begin != null && date.before(begin))
+		if(begin != null && day < EpochDay.fromDate(begin))
 			return false;
-		else if(end != null && date.after(end))
+		else if(end != null && day > EpochDay.fromDate(end))
 			return false;
 
-		if(!isDosePossibleOnDate(date))
+		if(!isDosePossibleOnDay(day))
 			return false;
 
-		for(Fraction dose : getDoses(date))
+		for(Fraction dose : getDosesOnDay(day))
 		{
 			if(!dose.isZero())
 				return true;
@@ -191,15 +198,22 @@ public final class Schedule extends Entry
 		}
 	}
 
-	public Fraction[] getDoses(Date date)
+	public Fraction[] getDoses(Date date) {
+		return getDosesOnDay(EpochDay.fromDate(date));
+	}
+
+	/**
+	 * Like {@link #getDoses(Date)}, but for an epoch day (see {@link EpochDay}).
+	 */
+	/* package */ Fraction[] getDosesOnDay(int day)
 	{
-		if(!isDosePossibleOnDate(date))
+		if(!isDosePossibleOnDay(day))
 			return ZERO_DOSE_ARRAY;
 
 		final SchedulePart[] schedulePartsArray = mSchedulePartsArray.get();
 		if(schedulePartsArray != null && schedulePartsArray.length != 0)
 		{
-			final int weekday = DateTime.getIsoWeekDayNumberIndex(date);
+			final int weekday = EpochDay.getIsoWeekDayIndex(day);
 			for(SchedulePart part : schedulePartsArray)
 			{
 				if((part.weekdays & (1 << weekday)) != 0)
@@ -210,9 +224,13 @@ public final class Schedule extends Entry
 		return mDoses.get();
 	}
 
-	public Fraction getDose(Date date, int doseTime)
+	public Fraction getDose(Date date, int doseTime) {
+		return getDoseOnDay(EpochDay.fromDate(date), doseTime);
+	}
+
+	/* package */ Fraction getDoseOnDay(int day, int doseTime)
 	{
-		final Fraction dose = getDoses(date)[doseTime];
+		final Fraction dose = getDosesOnDay(day)[doseTime];
 		return dose != null ? dose : Fraction.ZERO;
 	}
 
@@ -242,6 +260,14 @@ public final class Schedule extends Entry
 		this.repeatMode = repeatMode;
 	}
 
+	/* package */ int getRepeatMode() {
+		return repeatMode;
+	}
+
+	/* package */ long getRepeatArg() {
+		return repeatArg;
+	}
+
 	public void setRepeatArg(int repeatArg) {
 		this.repeatArg = repeatArg;
 	}
@@ -300,7 +326,7 @@ public final class Schedule extends Entry
 		return 0;
 	}
 
-	private boolean isDosePossibleOnDate(Date date)
+	private boolean isDosePossibleOnDay(int day)
 	{
 		switch(repeatMode)
 		{
@@ -310,21 +336,25 @@ public final class Schedule extends Entry
 				return true;
 
 			case REPEAT_EVERY_N_DAYS:
-				return DateTime.diffDays(date, begin) % repeatArg == 0;
+				return getDaysUntilBegin(day) % repeatArg == 0;
 
 			case REPEAT_WEEKDAYS:
-				return (repeatArg & (1 << DateTime.getIsoWeekDayNumberIndex(date))) != 0;
+				return (repeatArg & (1 << EpochDay.getIsoWeekDayIndex(day))) != 0;
 
 			case REPEAT_DAILY_WITH_PAUSE:
 				final long pauseDays = repeatArg & MASK_REPEAT_ARG_PAUSE;
 				final long cycleLength = (repeatArg & MASK_REPEAT_ARG_CYCLE_LENGTH) >> 16;
-				return DateTime.diffDays(date, begin) % cycleLength < (cycleLength - pauseDays);
+				return getDaysUntilBegin(day) % cycleLength < (cycleLength - pauseDays);
 
 			default:
 				throw new Exceptions.UnexpectedValueInSwitch(repeatMode);
 		}
 	}
 
+	private long getDaysUntilBegin(int day) {
+		return (long) EpochDay.fromDate(begin) - day;
+	}
+
 	transient private LazyValue<SchedulePart[]> mSchedulePartsArray = new LazyValue<SchedulePart[]>() {
 
 		@Override
@@ -21,33 +21,36 @@
 
 package at.jclehner.rxdroid.db;
 
-import java.util.Date;
 import java.util.List;
 
 import at.jclehner.rxdroid.Fraction;
+import at.jclehner.rxdroid.util.EpochDay;
 
 /* package */ final class Schedules
 {
-	static Fraction getDose(Date date, int doseTime, List<Schedule> schedules)
+	/**
+	 * Returns the dose of the first schedule containing the specified epoch day.
+	 */
+	static Fraction getDose(int day, int doseTime, List<Schedule> schedules)
 	{
 		if(schedules != null)
 		{
 			for(Schedule s : schedules)
 			{
-				if(isDateWithinSchedule(date, s))
-					return s.getDose(date, doseTime);
+				if(isDayWithinSchedule(day, s))
+					return s.getDoseOnDay(day, doseTime);
 			}
 		}
 
 		return Fraction.ZERO;
 	}
 
-	static boolean hasDoseOnDate(Date date, List<Schedule> schedules)
+	static boolean hasDoseOnDay(int day, List<Schedule> schedules)
 	{
 		for(Schedule s : schedules)
 		{
-			if(isDateWithinSchedule(date, s))
-				return s.hasDoseOnDate(date);
+			if(isDayWithinSchedule(day, s))
+				return s.hasDoseOnDay(day);
 		}
 
 		return false;
@@ -64,12 +67,12 @@ import at.jclehner.rxdroid.Fraction;
 		return true;
 	}
 
-	static boolean isDateWithinSchedule(Date date, Schedule schedule)
+	static boolean isDayWithinSchedule(int day, Schedule schedule)
 	{
-		if(date.before(schedule.begin))
+		if(day < EpochDay.fromDate(schedule.begin))
 			return false;
 		else if(schedule.end != null)
-			return !date.after(schedule.end);
+			return day <= EpochDay.fromDate(schedule.end);
 		else
 			return true;
 	}
@@ -0,0 +1,82 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import at.jclehner.rxdroid.util.IntMap;
+
+/**
+ * An immutable view of all cached entries of one type.
+ * <p>
+ * Snapshots are never modified once published; any change to the cache
+ * results in a new snapshot with a higher generation. Thus, snapshots can
+ * be read without locking, and callers can compare generations to check
+ * whether the data they've computed from a snapshot is still current.
+ *
+ * @author Joseph Lehner
+ *
+ * @param <E> the entry type.
+ */
+public final class Snapshot<E extends Entry> extends AbstractList<E> implements RandomAccess
+{
+	private final Object[] mEntries;
+	// never modified once published
+	private final IntMap<E> mById;
+	private final long mGeneration;
+
+	/* package */ Snapshot(Object[] entries, IntMap<E> byId, long generation)
+	{
+		mEntries = entries;
+		mById = byId;
+		mGeneration = generation;
+	}
+
+	/**
+	 * Returns the generation of this snapshot.
+	 * <p>
+	 * Generations are unique across all entry types, and are never reused,
+	 * even if the database is reloaded.
+	 */
+	public long getGeneration() {
+		return mGeneration;
+	}
+
+	/**
+	 * Returns the entry with the specified ID, or <code>null</code>.
+	 */
+	/* package */ E find(int id) {
+		return mById.get(id);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public E get(int location) {
+		return (E) mEntries[location];
+	}
+
+	@Override
+	public int size() {
+		return mEntries.length;
+	}
+}
@@ -0,0 +1,110 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.db;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * The storage backing the {@link Database}'s entry cache.
+ * <p>
+ * {@link Database} only reads all entries once, when it's loaded, and queries
+ * older {@link DoseEvent}s on demand. All modifications are written in batches
+ * by the {@link DatabaseWriter} thread. This interface covers exactly these
+ * operations, so that implementations can be compared side by side, or swapped
+ * for one that doesn't require a device.
+ * <p>
+ * Implementations need not be thread-safe, as all calls are made while holding
+ * {@link Database#LOCK_DATA}, or before the database has been loaded.
+ *
+ * @see OrmLiteStorageEngine
+ * @see SQLiteStorageEngine
+ * @see InMemoryStorageEngine
+ *
+ * @author Joseph Lehner
+ */
+/* package */ interface StorageEngine
+{
+	/**
+	 * Returns all stored entries of the specified type.
+	 */
+	<T extends Entry> List<T> queryForAll(Class<T> clazz) throws SQLException;
+
+	/**
+	 * Returns the entry with the specified ID, or <code>null</code>.
+	 */
+	<T extends Entry> T queryForId(Class<T> clazz, int id) throws SQLException;
+
+	/**
+	 * Returns the events with an epoch day in <code>[beginDay, endDay)</code>.
+	 *
+	 * @param drugId The drug's ID. Can be <code>null</code>.
+	 */
+	List<DoseEvent> queryDoseEvents(Integer drugId, int beginDay, int endDay) throws SQLException;
+
+	/**
+	 * Writes the operations in a single transaction.
+	 * <p>
+	 * The IDs of entries created by this batch must have been assigned once
+	 * this function returns.
+	 */
+	void write(List<DatabaseWriter.Operation> batch) throws SQLException;
+
+	int deleteByIds(Class<? extends Entry> clazz, Collection<Integer> ids) throws SQLException;
+
+	/**
+	 * Deletes all dose events dated before the specified date.
+	 * <p>
+	 * The deleted events must not be loaded, as there may be many.
+	 *
+	 * @return the number of deleted events, and the range of their dates.
+	 */
+	Database.PruneResult deleteDoseEventsBefore(Date date) throws SQLException;
+
+	/**
+	 * Runs the callable in a transaction.
+	 * <p>
+	 * If the callable throws, the transaction is rolled back, and the
+	 * exception rethrown as an {@link SQLException}.
+	 */
+	<V> V callInTransaction(Callable<V> callable) throws SQLException;
+
+	/**
+	 * Returns <code>true</code> if entries are stored in the database file.
+	 * <p>
+	 * The cache image, checkpoints and maintenance are only used if this is
+	 * the case.
+	 */
+	boolean isPersistent();
+
+	boolean isOpen();
+
+	/**
+	 * Releases any resources held by this engine.
+	 * <p>
+	 * Does not close the underlying database.
+	 */
+	void close();
+}
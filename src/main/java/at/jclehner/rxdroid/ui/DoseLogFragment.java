@@ -22,6 +22,7 @@
 package at.jclehner.rxdroid.ui;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
@@ -63,6 +64,7 @@ import at.jclehner.rxdroid.db.Schedule;
 import at.jclehner.rxdroid.ui.ExpandableListFragment.OnGroupCollapseExpandListener;
 import at.jclehner.rxdroid.util.Constants;
 import at.jclehner.rxdroid.util.DateTime;
+import at.jclehner.rxdroid.util.EpochDay;
 import at.jclehner.rxdroid.util.Timer;
 import at.jclehner.rxdroid.util.Util;
 
@@ -270,31 +272,33 @@ public class DoseLogFragment extends ExpandableListFragment
 		if((flags & SHOW_MISSED) != 0)
 		{
 			final LocalDate scheduleEnd = drug.getScheduleEndDate();
-			final Date lastDate = scheduleEnd != null ? scheduleEnd.toDate() : mToday;
+			final int today = EpochDay.fromDate(mToday);
+			final int lastDay = scheduleEnd != null ? EpochDay.fromDate(scheduleEnd.toDate()) : today;
 
-			while(!date.after(lastDate))
+			int firstDay = EpochDay.fromDate(date);
+			if(lastScheduleUpdateDate != null)
+				firstDay = Math.max(firstDay, EpochDay.fromDate(lastScheduleUpdateDate));
+
+			final BitSet slots = getDoseEventSlots(events, firstDay, lastDay);
+
+			for(int day = firstDay; day <= lastDay; ++day)
 			{
-				if(lastScheduleUpdateDate == null || !date.before(lastScheduleUpdateDate))
+				if(!drug.hasDoseOnDay(day))
+					continue;
+
+				for(int doseTime : Constants.DOSE_TIMES)
 				{
-					if(drug.hasDoseOnDate(date))
+					if(day == today && doseTime == dtInfo.activeOrNextDoseTime())
+						break;
+
+					Fraction dose = drug.getDoseOnDay(doseTime, day);
+
+					if(!dose.isZero() && !slots.get(getSlot(firstDay, day, doseTime)))
 					{
-						for(int doseTime : Constants.DOSE_TIMES)
-						{
-							if(date.equals(mToday) && doseTime == dtInfo.activeOrNextDoseTime())
-								break;
-
-							Fraction dose = drug.getDose(doseTime, date);
-
-							if(!dose.isZero() && !containsDoseEvent(events, date, doseTime))
-							{
-								//Log.d(TAG, "Creating missed event: date=" + date + ", doseTime=" + doseTime);
-								infos.add(EventInfo.newMissedEvent(date, doseTime, dose));
-							}
-						}
+						//Log.d(TAG, "Creating missed event: day=" + day + ", doseTime=" + doseTime);
+						infos.add(EventInfo.newMissedEvent(EpochDay.toDate(day), doseTime, dose));
 					}
 				}
-
-				date = DateTime.add(date, Calendar.DAY_OF_MONTH, 1);
 			}
 		}
 
@@ -343,15 +347,26 @@ public class DoseLogFragment extends ExpandableListFragment
 		return null;
 	}
 
-	private static boolean containsDoseEvent(List<DoseEvent> doseEvents, Date date, int doseTime)
+	/**
+	 * Returns the (day, dose time) slots in <code>[firstDay, lastDay]</code> that contain
+	 * an event, indexed using {@link #getSlot(int, int, int)}.
+	 */
+	private static BitSet getDoseEventSlots(List<DoseEvent> doseEvents, int firstDay, int lastDay)
 	{
+		final BitSet slots = new BitSet();
+
 		for(DoseEvent doseEvent : doseEvents)
 		{
-			if(doseEvent.getDate().equals(date) && doseEvent.getDoseTime() == doseTime)
-				return true;
+			final int day = doseEvent.getEpochDay();
+			if(day >= firstDay && day <= lastDay)
+				slots.set(getSlot(firstDay, day, doseEvent.getDoseTime()));
 		}
 
-		return false;
+		return slots;
+	}
+
+	private static int getSlot(int firstDay, int day, int doseTime) {
+		return (day - firstDay) * Schedule.DOSE_TIME_COUNT + doseTime;
 	}
 
 	private class Adapter extends BaseExpandableListAdapter
@@ -700,9 +715,8 @@ class EventInfo
 			timestamp = DateTime.add(date, Calendar.MILLISECOND, (int) offset);
 		}
 
-		final Date dateOfTimestamp = DateTime.getMidnightDate(timestamp);
 		final StringBuilder sb = new StringBuilder(DateTime.toNativeTime(timestamp, false));
-		long diffDays = DateTime.diffDays(date, dateOfTimestamp);
+		final int diffDays = EpochDay.fromDate(timestamp) - EpochDay.fromDate(date);
 
 		if(diffDays != 0)
 		{
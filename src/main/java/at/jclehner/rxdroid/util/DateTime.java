@@ -56,6 +56,8 @@ public final class DateTime
 	private static final HashMap<Long, DateCacheData> DATE_CACHE = new HashMap<Long, DateCacheData>();
 	private static boolean sDateCacheEnabled = true;
 
+	private static volatile TimeZone sTimeZone;
+
 	public static Calendar calendarFromDate(Date date)
 	{
 		final Calendar cal = GregorianCalendar.getInstance();
@@ -185,22 +187,12 @@ public final class DateTime
 		return cal;
 	}
 
-	@SuppressWarnings("deprecation")
 	public static boolean equalsDate(Date date1, Date date2)
 	{
 		if(date1 == null || date2 == null)
 			return date1 == date2;
 
-		if(date1.getDate() != date2.getDate())
-			return false;
-
-		if(date1.getMonth() != date2.getMonth())
-			return false;
-
-		if(date1.getYear() != date2.getYear())
-			return false;
-
-		return true;
+		return toEpochDay(date1) == toEpochDay(date2);
 	}
 
 	public static String toString(Calendar calendar)
@@ -332,10 +324,33 @@ public final class DateTime
 		return Math.round((date2.getTime() - date1.getTime()) / (double) Constants.MILLIS_PER_DAY);
 	}
 
-	public static int getIsoWeekDayNumberIndex(Date date)
+	/**
+	 * Returns the number of days since 1970-01-01 of the date's local date part.
+	 * <p>
+	 * This function does not allocate, so it's safe to use as a lookup key.
+	 *
+	 * @see EpochDay
+	 */
+	public static int toEpochDay(Date date) {
+		return EpochDay.fromDate(date);
+	}
+
+	/**
+	 * Returns the time zone used by {@link #toEpochDay(Date)} and {@link EpochDay}.
+	 * <p>
+	 * A new instance is returned after calling {@link #clearDateCache()}.
+	 */
+	public static TimeZone getTimeZone()
 	{
-		final Calendar cal = calendarFromDate(date);
-		return CollectionUtils.indexOf(cal.get(Calendar.DAY_OF_WEEK), Constants.WEEK_DAYS);
+		TimeZone tz = sTimeZone;
+		if(tz == null)
+			sTimeZone = tz = TimeZone.getDefault();
+
+		return tz;
+	}
+
+	public static int getIsoWeekDayNumberIndex(Date date) {
+		return EpochDay.getIsoWeekDayIndex(toEpochDay(date));
 	}
 
 	public static void disableDateCache()
@@ -344,8 +359,10 @@ public final class DateTime
 		clearDateCache();
 	}
 
-	public static void clearDateCache() {
+	public static void clearDateCache()
+	{
 		DATE_CACHE.clear();
+		sTimeZone = null;
 	}
 
 	private static ImmutableGregorianCalendar getImmutableInstance(Calendar cal)
@@ -0,0 +1,127 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.util;
+
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Utilities for local dates represented as epoch days.
+ * <p>
+ * An epoch day is the number of days between 1970-01-01 and a local date,
+ * stored in a plain <code>int</code>. Unlike <code>Date</code>s, epoch days are
+ * immutable, cheap to compare, and adding days is plain integer arithmetic.
+ * None of these functions allocate memory, except {@link #toDate(int)}.
+ * <p>
+ * All functions use the time zone returned by {@link DateTime#getTimeZone()}.
+ *
+ * @author Joseph Lehner
+ */
+public final class EpochDay
+{
+	// 1970-01-01 was a Thursday
+	private static final int EPOCH_WEEKDAY_INDEX = 3;
+
+	private EpochDay() {}
+
+	/**
+	 * Returns the epoch day of the date's local date part.
+	 */
+	public static int fromDate(Date date) {
+		return fromMillis(date.getTime(), DateTime.getTimeZone());
+	}
+
+	/**
+	 * Returns the epoch day of the local date at the specified time.
+	 */
+	public static int fromMillis(long millis, TimeZone timeZone)
+	{
+		final long local = millis + timeZone.getOffset(millis);
+		return (int) floorDiv(local, Constants.MILLIS_PER_DAY);
+	}
+
+	/**
+	 * Returns the epoch day of {@link DateTime#today()}.
+	 */
+	public static int today() {
+		return fromDate(DateTime.today());
+	}
+
+	/**
+	 * Returns the time of the day's local midnight.
+	 * <p>
+	 * If there is no midnight on that day, because of a daylight saving time
+	 * transition, the first instant of the day is returned.
+	 */
+	public static long toMillis(int day)
+	{
+		final TimeZone tz = DateTime.getTimeZone();
+		final long local = day * Constants.MILLIS_PER_DAY;
+		final long utc = local - tz.getRawOffset();
+
+		// If the offset changes close to midnight, the day begins at one of these
+		final long before = local - tz.getOffset(utc - Constants.MILLIS_PER_DAY / 2);
+		final long after = local - tz.getOffset(utc + Constants.MILLIS_PER_DAY / 2);
+
+		if(before == after)
+			return before;
+
+		final long first = Math.min(before, after);
+		return fromMillis(first, tz) == day ? first : Math.max(before, after);
+	}
+
+	/**
+	 * Returns a new <code>Date</code> set to the day's local midnight.
+	 *
+	 * @see #toMillis(int)
+	 */
+	public static Date toDate(int day) {
+		return new Date(toMillis(day));
+	}
+
+	/**
+	 * Returns the day's index in {@link Constants#WEEK_DAYS}, i.e. <code>0</code>
+	 * for Monday, <code>6</code> for Sunday.
+	 */
+	public static int getIsoWeekDayIndex(int day) {
+		return (int) floorMod((long) day + EPOCH_WEEKDAY_INDEX, 7);
+	}
+
+	/**
+	 * Like <code>x / y</code>, but rounds towards negative infinity.
+	 */
+	public static long floorDiv(long x, long y)
+	{
+		long q = x / y;
+		if((x % y != 0) && ((x ^ y) < 0))
+			--q;
+
+		return q;
+	}
+
+	/**
+	 * Like <code>x % y</code>, but the result has the sign of <code>y</code>.
+	 */
+	public static long floorMod(long x, long y) {
+		return x - floorDiv(x, y) * y;
+	}
+}
@@ -0,0 +1,247 @@
+/**
+ * RxDroid - A Medication Reminder
+ * Copyright (C) 2011-2014 Joseph Lehner <joseph.c.lehner@gmail.com>
+ *
+ *
+ * RxDroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. Additional terms apply (see LICENSE).
+ *
+ * RxDroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with RxDroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package at.jclehner.rxdroid.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A map of primitive <code>int</code> keys to objects.
+ * <p>
+ * Unlike <code>HashMap&lt;Integer, V&gt;</code>, keys are never boxed, and unlike
+ * <code>SparseArray</code>, lookups are constant-time. Entries are stored using open
+ * addressing with linear probing; <code>null</code> values are not supported.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Joseph Lehner
+ *
+ * @param <V> the value type.
+ */
+public final class IntMap<V>
+{
+	private static final int MIN_CAPACITY = 8;
+
+	private int[] mKeys;
+	private Object[] mValues;
+	private int mSize = 0;
+	private int mMask;
+
+	public IntMap() {
+		this(MIN_CAPACITY);
+	}
+
+	public IntMap(int expectedSize) {
+		allocate(capacityFor(expectedSize));
+	}
+
+	/**
+	 * Creates a copy of another map.
+	 * <p>
+	 * This is considerably faster than re-inserting all entries, as the
+	 * underlying arrays are simply copied.
+	 */
+	public IntMap(IntMap<? extends V> other)
+	{
+		mKeys = other.mKeys.clone();
+		mValues = other.mValues.clone();
+		mSize = other.mSize;
+		mMask = other.mMask;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key)
+	{
+		int i = indexOf(key);
+		return i != -1 ? (V) mValues[i] : null;
+	}
+
+	public boolean containsKey(int key) {
+		return indexOf(key) != -1;
+	}
+
+	/**
+	 * Maps the key to the specified value.
+	 *
+	 * @return the previous value, or <code>null</code>.
+	 * @throws NullPointerException if <code>value</code> is <code>null</code>
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value)
+	{
+		if(value == null)
+			throw new NullPointerException();
+
+		int i = hash(key) & mMask;
+
+		while(mValues[i] != null)
+		{
+			if(mKeys[i] == key)
+			{
+				final V old = (V) mValues[i];
+				mValues[i] = value;
+				return old;
+			}
+
+			i = (i + 1) & mMask;
+		}
+
+		mKeys[i] = key;
+		mValues[i] = value;
+
+		// keep the load factor below 0.5
+		if(++mSize * 2 > mValues.length)
+			rehash(mValues.length * 2);
+
+		return null;
+	}
+
+	/**
+	 * Removes the mapping for the key.
+	 *
+	 * @return the removed value, or <code>null</code>.
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key)
+	{
+		int i = indexOf(key);
+		if(i == -1)
+			return null;
+
+		final V old = (V) mValues[i];
+		mValues[i] = null;
+		--mSize;
+
+		// Shift back any subsequent entries of the same probe sequence, so
+		// that lookups don't need tombstones.
+		int j = i;
+		while(true)
+		{
+			j = (j + 1) & mMask;
+			if(mValues[j] == null)
+				break;
+
+			final int home = hash(mKeys[j]) & mMask;
+			if(i <= j ? (i < home && home <= j) : (i < home || home <= j))
+				continue;
+
+			mKeys[i] = mKeys[j];
+			mValues[i] = mValues[j];
+			mValues[j] = null;
+			i = j;
+		}
+
+		return old;
+	}
+
+	public int size() {
+		return mSize;
+	}
+
+	public boolean isEmpty() {
+		return mSize == 0;
+	}
+
+	/**
+	 * Returns a copy of all values, in no particular order.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<V> values()
+	{
+		final ArrayList<V> values = new ArrayList<V>(mSize);
+
+		for(Object value : mValues)
+		{
+			if(value != null)
+				values.add((V) value);
+		}
+
+		return values;
+	}
+
+	public void clear()
+	{
+		for(int i = 0; i != mValues.length; ++i)
+			mValues[i] = null;
+
+		mSize = 0;
+	}
+
+	private int indexOf(int key)
+	{
+		int i = hash(key) & mMask;
+
+		while(mValues[i] != null)
+		{
+			if(mKeys[i] == key)
+				return i;
+
+			i = (i + 1) & mMask;
+		}
+
+		return -1;
+	}
+
+	private void rehash(int capacity)
+	{
+		final int[] oldKeys = mKeys;
+		final Object[] oldValues = mValues;
+
+		allocate(capacity);
+
+		for(int i = 0; i != oldValues.length; ++i)
+		{
+			if(oldValues[i] == null)
+				continue;
+
+			int j = hash(oldKeys[i]) & mMask;
+			while(mValues[j] != null)
+				j = (j + 1) & mMask;
+
+			mKeys[j] = oldKeys[i];
+			mValues[j] = oldValues[i];
+		}
+	}
+
+	private void allocate(int capacity)
+	{
+		mKeys = new int[capacity];
+		mValues = new Object[capacity];
+		mMask = capacity - 1;
+	}
+
+	private static int capacityFor(int expectedSize)
+	{
+		int capacity = MIN_CAPACITY;
+		while(capacity < expectedSize * 2)
+			capacity <<= 1;
+
+		return capacity;
+	}
+
+	private static int hash(int key)
+	{
+		// Fibonacci hashing; IDs are mostly sequential, so spread them out
+		final int h = key * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+}
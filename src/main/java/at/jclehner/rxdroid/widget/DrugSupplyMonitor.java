@@ -110,6 +110,11 @@ public class DrugSupplyMonitor extends TextView implements
 		updateTextIfApplicable(entry);
 	}
 
+	@Override
+	public void onEntriesChanged(Database.Changes changes, int flags) {
+		changes.dispatchTo(this, flags);
+	}
+
 	@Override
 	protected void onAttachedToWindow()
 	{
@@ -163,9 +168,8 @@ public class DrugSupplyMonitor extends TextView implements
 				final Date today = mToday != null ? mToday : DateTime.today();
 				if(date.after(today))
 				{
-					//Fraction doseInTimePeriod_smart = Entries.getTotalDoseInTimePeriod_smart(drug, today, date);
-					Fraction doseInTimePeriod_dumb = Entries.getTotalDoseInTimePeriod_dumb(drug, today, date, true);
-					currentSupply.subtract(doseInTimePeriod_dumb);
+					Fraction doseInTimePeriod = Entries.getTotalDoseInTimePeriod(drug, today, date, true);
+					currentSupply.subtract(doseInTimePeriod);
 				}
 				else if(date.equals(today) && (Entries.hasLowSupplies(drug, date) || Entries.willExpireSoon(drug, date)))
 				{